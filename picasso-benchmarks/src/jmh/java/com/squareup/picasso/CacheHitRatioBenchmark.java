@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+
+/**
+ * Hits and misses of a memory cache for a list which shows a small set of avatars next to a long
+ * stream of images seen only once, the way a fast fling through a gallery does. The cache could
+ * hold all of the avatars. Compare the {@code hits} and {@code misses} counters of the
+ * implementations rather than their throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheHitRatioBenchmark {
+  private static final int TRACE_LENGTH = 1 << 16;
+  private static final int HOT_KEY_COUNT = 64;
+  private static final int CACHE_ENTRIES = 96;
+  private static final int SIDE = 32;
+
+  @Param({ "lru", "tinylfu" })
+  String implementation;
+
+  /** The percentage of requests which are for one of the avatars. */
+  @Param({ "25", "50" })
+  int hotPercent;
+
+  final Bitmap bitmap = Bitmap.createBitmap(SIDE, SIDE, ARGB_8888);
+  final String[] trace = new String[TRACE_LENGTH];
+  Cache cache;
+  int index;
+
+  @Setup public void setUp() {
+    int maxSize = CACHE_ENTRIES * Utils.getBitmapBytes(bitmap);
+    switch (implementation) {
+      case "lru":
+        cache = new LruCache(maxSize);
+        break;
+      case "tinylfu":
+        cache = new TinyLfuCache(maxSize);
+        break;
+      default:
+        throw new IllegalArgumentException(implementation);
+    }
+    Random random = new Random(0);
+    int scanned = 0;
+    for (int i = 0; i < TRACE_LENGTH; i++) {
+      trace[i] = random.nextInt(100) < hotPercent
+          ? "https://example.com/avatars/" + random.nextInt(HOT_KEY_COUNT) + ".png"
+          : "https://example.com/gallery/" + scanned++ + ".jpg";
+    }
+  }
+
+  /** Counts per iteration, reported next to the throughput. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+    public long hits;
+    public long misses;
+
+    @Setup(Level.Iteration) public void reset() {
+      hits = 0;
+      misses = 0;
+    }
+  }
+
+  @Benchmark public Bitmap request(Counters counters) {
+    String key = trace[index++ & (TRACE_LENGTH - 1)];
+    Bitmap cached = cache.get(key);
+    if (cached == null) {
+      counters.misses++;
+      cache.set(key, bitmap);
+    } else {
+      counters.hits++;
+    }
+    return cached;
+  }
+}
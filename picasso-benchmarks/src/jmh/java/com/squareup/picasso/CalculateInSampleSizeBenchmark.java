@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Choosing the sample size of a 12 megapixel image for a resized request. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CalculateInSampleSizeBenchmark {
+  private static final int WIDTH = 4000;
+  private static final int HEIGHT = 3000;
+
+  @Param({ "centerCrop", "centerInside" })
+  String scaleType;
+
+  private final BitmapFactory.Options options = new BitmapFactory.Options();
+  private Request request;
+
+  @Setup public void setUp() {
+    Request.Builder builder =
+        new Request.Builder(Uri.parse("https://example.com/images/1234.jpg")).resize(320, 240);
+    switch (scaleType) {
+      case "centerCrop":
+        builder.centerCrop();
+        break;
+      case "centerInside":
+        builder.centerInside();
+        break;
+      default:
+        throw new IllegalArgumentException(scaleType);
+    }
+    request = builder.build();
+  }
+
+  @Benchmark public int calculateInSampleSize() {
+    RequestHandler.calculateInSampleSize(request.targetWidth, request.targetHeight, WIDTH, HEIGHT,
+        options, request);
+    return options.inSampleSize;
+  }
+}
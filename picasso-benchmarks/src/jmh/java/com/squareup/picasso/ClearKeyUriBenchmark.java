@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static android.graphics.Bitmap.Config.ALPHA_8;
+
+/**
+ * Invalidating one uri in a full {@link LruCache}. Each operation clears the two variants of a uri
+ * and puts them back so that the cache keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClearKeyUriBenchmark {
+  @Param({ "100", "10000" })
+  int entries;
+
+  private final Bitmap bitmap = Bitmap.createBitmap(1, 1, ALPHA_8);
+  private LruCache cache;
+  private String[] uris;
+  private String[] originalKeys;
+  private String[] resizedKeys;
+  private int next;
+
+  @Setup public void setUp() {
+    int uriCount = entries / 2;
+    cache = new LruCache(entries);
+    uris = new String[uriCount];
+    originalKeys = new String[uriCount];
+    resizedKeys = new String[uriCount];
+    for (int i = 0; i < uriCount; i++) {
+      uris[i] = "https://example.com/images/" + i + ".png";
+      originalKeys[i] = uris[i] + Utils.KEY_SEPARATOR;
+      resizedKeys[i] = uris[i] + Utils.KEY_SEPARATOR + "resize:100x100" + Utils.KEY_SEPARATOR;
+      cache.set(originalKeys[i], bitmap);
+      cache.set(resizedKeys[i], bitmap);
+    }
+  }
+
+  @Benchmark public int clearKeyUri() {
+    int i = next;
+    next = (i + 1) % uris.length;
+    cache.clearKeyUri(uris[i]);
+    cache.set(originalKeys[i], bitmap);
+    cache.set(resizedKeys[i], bitmap);
+    return cache.size();
+  }
+}
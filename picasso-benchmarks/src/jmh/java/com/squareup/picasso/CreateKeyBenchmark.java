@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building the memory cache key of a request. {@code createKey} is what the main thread pays on
+ * every load while {@code createKeyUncached} always builds the string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CreateKeyBenchmark {
+  @Param({ "plain", "resized", "transformed" })
+  String shape;
+
+  private final StringBuilder builder = new StringBuilder();
+  private Request request;
+
+  @Setup public void setUp() {
+    Request.Builder requestBuilder =
+        new Request.Builder(Uri.parse("https://example.com/images/1234.jpg"));
+    switch (shape) {
+      case "plain":
+        break;
+      case "resized":
+        requestBuilder.resize(320, 240).centerCrop();
+        break;
+      case "transformed":
+        requestBuilder.resize(320, 240).centerCrop().rotate(90).transform(new Transformation() {
+          @Override public Bitmap transform(Bitmap source) {
+            return source;
+          }
+
+          @Override public String key() {
+            return "rounded(8)";
+          }
+        });
+        break;
+      default:
+        throw new IllegalArgumentException(shape);
+    }
+    request = requestBuilder.build();
+  }
+
+  @Benchmark public String createKey() {
+    return Utils.createKey(request);
+  }
+
+  @Benchmark public String createKeyUncached() {
+    builder.setLength(0);
+    return Utils.createKey(request, builder);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import static android.graphics.Bitmap.Config.ALPHA_8;
+import static com.squareup.picasso.Picasso.LoadedFrom.NETWORK;
+
+/**
+ * Round trips through the dispatcher thread. Each operation submits a burst of actions, waits for
+ * the dispatcher to create their hunters, completes every hunter and waits for the dispatcher to
+ * batch them. Hunters are never run so only the message handling is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatcherBenchmark {
+  @Param({ "1", "32" })
+  int burst;
+
+  private final Bitmap bitmap = Bitmap.createBitmap(1, 1, ALPHA_8);
+  private Picasso picasso;
+  private Dispatcher dispatcher;
+  private Action[] actions;
+  private BitmapHunter[] hunters;
+
+  @Setup public void setUp() {
+    picasso = Fixtures.picasso(new Fixtures.IdleExecutorService());
+    dispatcher = picasso.dispatcher;
+    actions = new Action[burst];
+    hunters = new BitmapHunter[burst];
+    for (int i = 0; i < burst; i++) {
+      Request request =
+          new Request.Builder(Uri.parse("https://example.com/images/" + i + ".png")).build();
+      actions[i] = Fixtures.fetchAction(picasso, request);
+    }
+  }
+
+  @TearDown public void tearDown() {
+    picasso.shutdown();
+  }
+
+  @Benchmark public void submitAndComplete() throws InterruptedException {
+    for (Action action : actions) {
+      dispatcher.dispatchSubmit(action);
+    }
+    awaitDispatcher(true);
+    for (BitmapHunter hunter : hunters) {
+      hunter.result = bitmap;
+      hunter.loadedFrom = NETWORK;
+      dispatcher.dispatchComplete(hunter);
+    }
+    awaitDispatcher(false);
+  }
+
+  /**
+   * Waits for the dispatcher to handle every message sent so far, optionally copying the hunters
+   * it has created on its own thread.
+   */
+  private void awaitDispatcher(final boolean collectHunters) throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    dispatcher.handler.post(new Runnable() {
+      @Override public void run() {
+        if (collectHunters) {
+          dispatcher.hunterMap.values().toArray(hunters);
+        }
+        latch.countDown();
+      }
+    });
+    latch.await();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.content.Context;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Events per second which several threads can get handled by the dispatcher thread, with one
+ * handler message per event or through the lock free event queue. The events do no work of their
+ * own so only the hand over is measured. Producers wait while the dispatcher thread is more than
+ * a fixed number of events behind, so the score is the rate at which events are handled rather
+ * than queued.
+ * <p>
+ * Handler messages go through the JVM {@code MessageQueue} in {@code src/jvm}, which waits on a
+ * monitor where the framework queue waits on a native file descriptor. Scores are only
+ * comparable with each other, not with the cost of a message on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DispatcherEventsBenchmark {
+  private static final int MAX_BACKLOG = 1024;
+
+  @Param({ "handler", "queue" })
+  String core;
+
+  private final AtomicLong sent = new AtomicLong();
+  private Stats stats;
+  private CountingDispatcher dispatcher;
+
+  @Setup public void setUp() {
+    Cache cache = new LruCache(1024);
+    ExecutorService service = new Fixtures.IdleExecutorService();
+    stats = new Stats(cache, null, null, null, service, service, null, null);
+    EventQueue events;
+    switch (core) {
+      case "handler":
+        events = null;
+        break;
+      case "queue":
+        events = new EventQueue();
+        break;
+      default:
+        throw new IllegalArgumentException(core);
+    }
+    dispatcher = new CountingDispatcher(new JvmContext(), service, cache, stats, events);
+  }
+
+  @TearDown public void tearDown() {
+    dispatcher.shutdown();
+    stats.shutdown();
+  }
+
+  @Benchmark @Threads(4) public void dispatch() {
+    long count = sent.incrementAndGet();
+    while (count - dispatcher.handled > MAX_BACKLOG) {
+      Thread.yield();
+    }
+    dispatcher.dispatchAirplaneModeChange((count & 1) == 0);
+  }
+
+  /** Counts airplane mode changes instead of handling them. */
+  static final class CountingDispatcher extends Dispatcher {
+    /** Only written by the dispatcher thread. */
+    volatile long handled;
+
+    CountingDispatcher(Context context, ExecutorService service, Cache cache, Stats stats,
+        EventQueue events) {
+      super(context, service, service, service, Picasso.HANDLER, Fixtures.UNUSED_DOWNLOADER,
+          cache, null, stats, events, null, null, null);
+    }
+
+    @Override void performAirplaneModeChange(boolean airplaneMode) {
+      //noinspection NonAtomicOperationOnVolatileField
+      handled++;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Shared setup for benchmarks which need a {@link Picasso} instance. */
+final class Fixtures {
+  static final Downloader UNUSED_DOWNLOADER = new Downloader() {
+    @Override public Response load(Uri uri, int networkPolicy) throws IOException {
+      throw new IOException("Benchmarks do not load from the network.");
+    }
+
+    @Override public void shutdown() {
+    }
+  };
+
+  /** Returns an instance which runs hunters on {@code service} and never touches the network. */
+  static Picasso picasso(ExecutorService service) {
+    return new Picasso.Builder(new JvmContext())
+        .executor(service)
+        .downloader(UNUSED_DOWNLOADER)
+        .memoryCache(new LruCache(16 * 1024 * 1024))
+        .build();
+  }
+
+  /** Returns a fetch action for {@code request} which writes nothing to the memory cache. */
+  static Action fetchAction(Picasso picasso, Request request) {
+    int memoryPolicy = MemoryPolicy.NO_CACHE.index | MemoryPolicy.NO_STORE.index;
+    return new FetchAction(picasso, request, memoryPolicy, 0, null, Utils.createKey(request), null);
+  }
+
+  /**
+   * An executor which accepts hunters without ever running them, so that a benchmark can decide
+   * when a hunter completes.
+   */
+  static final class IdleExecutorService extends AbstractExecutorService {
+    private volatile boolean shutdown;
+
+    @Override public void execute(Runnable command) {
+    }
+
+    @Override public void shutdown() {
+      shutdown = true;
+    }
+
+    @Override public List<Runnable> shutdownNow() {
+      shutdown = true;
+      return Collections.emptyList();
+    }
+
+    @Override public boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override public boolean isTerminated() {
+      return shutdown;
+    }
+
+    @Override public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return shutdown;
+    }
+  }
+
+  private Fixtures() {
+    // No instances.
+  }
+}
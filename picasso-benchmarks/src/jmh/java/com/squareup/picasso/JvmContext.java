@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.util.DisplayMetrics;
+import java.lang.reflect.Constructor;
+
+/**
+ * The smallest {@link Context} which lets a {@link Picasso} instance be built on the JVM. It has
+ * no permissions, no content resolver and ignores broadcast receivers and component callbacks.
+ */
+final class JvmContext extends ContextWrapper {
+  private final DisplayMetrics displayMetrics = new DisplayMetrics();
+  private final Configuration configuration = new Configuration();
+  private final Resources resources = new Resources(JvmContext.class.getClassLoader()) {
+    @Override public float getDimension(int id) {
+      return 48 * displayMetrics.density;
+    }
+
+    @Override public DisplayMetrics getDisplayMetrics() {
+      return displayMetrics;
+    }
+
+    @Override public Configuration getConfiguration() {
+      return configuration;
+    }
+  };
+  private final ApplicationInfo applicationInfo = new ApplicationInfo();
+  private final ActivityManager activityManager;
+
+  JvmContext() {
+    super(null);
+    displayMetrics.setToDefaults();
+    try {
+      // The constructor is hidden on Android but the class itself has no native state.
+      Constructor<ActivityManager> constructor =
+          ActivityManager.class.getDeclaredConstructor(Context.class, Handler.class);
+      constructor.setAccessible(true);
+      activityManager = constructor.newInstance(this, null);
+    } catch (ReflectiveOperationException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public Context getApplicationContext() {
+    return this;
+  }
+
+  @Override public ApplicationInfo getApplicationInfo() {
+    return applicationInfo;
+  }
+
+  @Override public Resources getResources() {
+    return resources;
+  }
+
+  @Override public Object getSystemService(String name) {
+    return ACTIVITY_SERVICE.equals(name) ? activityManager : null;
+  }
+
+  @Override public PackageManager getPackageManager() {
+    return null;
+  }
+
+  @Override public ContentResolver getContentResolver() {
+    return null;
+  }
+
+  @Override public int checkCallingOrSelfPermission(String permission) {
+    return PackageManager.PERMISSION_DENIED;
+  }
+
+  @Override public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+    return null;
+  }
+
+  @Override public void unregisterReceiver(BroadcastReceiver receiver) {
+  }
+
+  @Override public void registerComponentCallbacks(ComponentCallbacks callback) {
+  }
+
+  @Override public void unregisterComponentCallbacks(ComponentCallbacks callback) {
+  }
+}
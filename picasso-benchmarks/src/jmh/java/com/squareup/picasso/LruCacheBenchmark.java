@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+
+/**
+ * A memory cache shared by several threads, the way the main thread, the dispatcher and the
+ * hunters share it. The cache holds half of the images so that puts keep trimming it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LruCacheBenchmark {
+  private static final int KEY_COUNT = 1024;
+  private static final int SIDE = 32;
+
+  @Param({ "lru", "striped", "tinylfu" })
+  String implementation;
+
+  final Bitmap bitmap = Bitmap.createBitmap(SIDE, SIDE, ARGB_8888);
+  final String[] keys = new String[KEY_COUNT];
+  Cache cache;
+
+  @Setup public void setUp() {
+    int maxSize = KEY_COUNT / 2 * Utils.getBitmapBytes(bitmap);
+    switch (implementation) {
+      case "lru":
+        cache = new LruCache(maxSize);
+        break;
+      case "striped":
+        cache = new StripedLruCache(maxSize);
+        break;
+      case "tinylfu":
+        cache = new TinyLfuCache(maxSize);
+        break;
+      default:
+        throw new IllegalArgumentException(implementation);
+    }
+    for (int i = 0; i < KEY_COUNT; i++) {
+      Request request = new Request.Builder(Uri.parse("https://example.com/images/" + i + ".png"))
+          .resize(SIDE, SIDE)
+          .build();
+      keys[i] = Utils.createKey(request, new StringBuilder());
+      if (i % 2 == 0) {
+        cache.set(keys[i], bitmap);
+      }
+    }
+  }
+
+  /** Each thread walks the keys with its own stride so that threads rarely touch the same key. */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private static int threads;
+
+    private final int stride = 2 * nextThread() + 1;
+    private int index;
+
+    private static synchronized int nextThread() {
+      return threads++;
+    }
+
+    String next(String[] keys) {
+      index = (index + stride) & (keys.length - 1);
+      return keys[index];
+    }
+  }
+
+  @Benchmark @Group("readWrite") @GroupThreads(3)
+  public Bitmap get(Cursor cursor) {
+    return cache.get(cursor.next(keys));
+  }
+
+  @Benchmark @Group("readWrite") @GroupThreads(1)
+  public void set(Cursor cursor) {
+    cache.set(cursor.next(keys), bitmap);
+  }
+
+  @Benchmark @Threads(4)
+  public void setAndTrim(Cursor cursor) {
+    cache.set(cursor.next(keys), bitmap);
+  }
+}
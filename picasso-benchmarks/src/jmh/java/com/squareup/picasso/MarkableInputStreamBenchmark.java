@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading a response through {@link MarkableInputStream} the way a decode does: mark, sniff the
+ * header, reset and then read the whole payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MarkableInputStreamBenchmark {
+  private static final int HEADER_SIZE = 30;
+
+  @Param({ "4096", "262144" })
+  int size;
+
+  private final byte[] header = new byte[HEADER_SIZE];
+  private final byte[] buffer = new byte[8192];
+  private byte[] payload;
+
+  @Setup public void setUp() {
+    payload = new byte[size];
+    new Random(0).nextBytes(payload);
+  }
+
+  @Benchmark public int markResetRead() throws IOException {
+    MarkableInputStream in = new MarkableInputStream(new ByteArrayInputStream(payload));
+    long mark = in.savePosition(1024);
+    readFully(in, header);
+    in.reset(mark);
+    int total = 0;
+    for (int read; (read = in.read(buffer)) != -1;) {
+      total += read;
+    }
+    return total;
+  }
+
+  @Benchmark public int markResetReadBytes() throws IOException {
+    MarkableInputStream in = new MarkableInputStream(new ByteArrayInputStream(payload));
+    in.mark(1024);
+    int sum = 0;
+    for (int i = 0; i < HEADER_SIZE; i++) {
+      sum += in.read();
+    }
+    in.reset();
+    for (int i = 0; i < HEADER_SIZE; i++) {
+      sum += in.read();
+    }
+    return sum;
+  }
+
+  private static void readFully(MarkableInputStream in, byte[] bytes) throws IOException {
+    for (int offset = 0; offset < bytes.length;) {
+      int read = in.read(bytes, offset, bytes.length - offset);
+      if (read == -1) {
+        throw new IOException("Unexpected end of stream.");
+      }
+      offset += read;
+    }
+  }
+}
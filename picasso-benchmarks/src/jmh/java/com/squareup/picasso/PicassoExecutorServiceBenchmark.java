@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import com.squareup.picasso.PicassoExecutorService.PicassoFutureTask;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Ordering queued hunters of mixed priority in the work queue of {@link PicassoExecutorService}.
+ * Each operation enqueues a backlog in submission order and takes it out in execution order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PicassoExecutorServiceBenchmark {
+  @Param({ "16", "256" })
+  int backlog;
+
+  private Picasso picasso;
+  private PicassoFutureTask[] tasks;
+
+  @Setup public void setUp() {
+    picasso = Fixtures.picasso(new Fixtures.IdleExecutorService());
+    Picasso.Priority[] priorities = Picasso.Priority.values();
+    List<PicassoFutureTask> list = new ArrayList<>(backlog);
+    for (int i = 0; i < backlog; i++) {
+      Request request = new Request.Builder(Uri.parse("https://example.com/images/" + i + ".png"))
+          .priority(priorities[i % priorities.length])
+          .build();
+      Action action = Fixtures.fetchAction(picasso, request);
+      list.add(new PicassoFutureTask(BitmapHunter.forRequest(picasso, picasso.dispatcher,
+          picasso.cache, picasso.stats, action)));
+    }
+    Collections.shuffle(list, new Random(0));
+    tasks = list.toArray(new PicassoFutureTask[backlog]);
+  }
+
+  @TearDown public void tearDown() {
+    picasso.shutdown();
+  }
+
+  @Benchmark public Runnable offerAndPoll() {
+    PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    for (PicassoFutureTask task : tasks) {
+      queue.offer(task);
+    }
+    Runnable last = null;
+    for (Runnable task; (task = queue.poll()) != null;) {
+      last = task;
+    }
+    return last;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * JVM version of the framework {@code Bitmap} which only tracks dimensions and config. Pixel data
+ * lives in native memory on Android so the real class cannot be used outside of it.
+ */
+public final class Bitmap {
+  public enum Config {
+    ALPHA_8,
+    RGB_565,
+    @Deprecated ARGB_4444,
+    ARGB_8888
+  }
+
+  private final int width;
+  private final int height;
+  private final Config config;
+  private final boolean mutable;
+  private boolean recycled;
+
+  private Bitmap(int width, int height, Config config, boolean mutable) {
+    this.width = width;
+    this.height = height;
+    this.config = config;
+    this.mutable = mutable;
+  }
+
+  public static Bitmap createBitmap(int width, int height, Config config) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("width and height must be > 0");
+    }
+    return new Bitmap(width, height, config, true);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public Config getConfig() {
+    return config;
+  }
+
+  public boolean isMutable() {
+    return mutable;
+  }
+
+  public boolean isRecycled() {
+    return recycled;
+  }
+
+  public void recycle() {
+    recycled = true;
+  }
+
+  public int getRowBytes() {
+    return width * bytesPerPixel(config);
+  }
+
+  public int getByteCount() {
+    return getRowBytes() * height;
+  }
+
+  public int getAllocationByteCount() {
+    return getByteCount();
+  }
+
+  private static int bytesPerPixel(Config config) {
+    if (config == null) {
+      return 4;
+    }
+    switch (config) {
+      case ALPHA_8:
+        return 1;
+      case RGB_565:
+      case ARGB_4444:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+}
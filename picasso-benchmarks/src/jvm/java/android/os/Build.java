@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * JVM version of the framework {@code Build} which describes a fixed platform version. The real
+ * class reads system properties through native code.
+ */
+public final class Build {
+  public static final String UNKNOWN = "unknown";
+  public static final String MANUFACTURER = "jvm";
+  public static final String MODEL = "jvm";
+
+  public static final class VERSION {
+    public static final String RELEASE = "7.1.1";
+    public static final int SDK_INT = VERSION_CODES.N_MR1;
+
+    private VERSION() {
+    }
+  }
+
+  public static final class VERSION_CODES {
+    public static final int BASE = 1;
+    public static final int ICE_CREAM_SANDWICH = 14;
+    public static final int ICE_CREAM_SANDWICH_MR1 = 15;
+    public static final int JELLY_BEAN = 16;
+    public static final int JELLY_BEAN_MR1 = 17;
+    public static final int JELLY_BEAN_MR2 = 18;
+    public static final int KITKAT = 19;
+    public static final int KITKAT_WATCH = 20;
+    public static final int LOLLIPOP = 21;
+    public static final int LOLLIPOP_MR1 = 22;
+    public static final int M = 23;
+    public static final int N = 24;
+    public static final int N_MR1 = 25;
+
+    private VERSION_CODES() {
+    }
+  }
+
+  private Build() {
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * JVM version of the framework {@code Looper} which loops over a {@link MessageQueue} without any
+ * native code.
+ * <p>
+ * There is no main thread on the JVM, so the first call to {@link #getMainLooper()} starts a
+ * daemon thread named "main" and prepares it as the main looper.
+ */
+public final class Looper {
+  static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<>();
+  private static Looper sMainLooper;
+
+  final MessageQueue mQueue;
+  final Thread mThread;
+
+  private Looper(boolean quitAllowed) {
+    mQueue = new MessageQueue(quitAllowed);
+    mThread = Thread.currentThread();
+  }
+
+  public static void prepare() {
+    prepare(true);
+  }
+
+  private static void prepare(boolean quitAllowed) {
+    if (sThreadLocal.get() != null) {
+      throw new RuntimeException("Only one Looper may be created per thread");
+    }
+    sThreadLocal.set(new Looper(quitAllowed));
+  }
+
+  public static void prepareMainLooper() {
+    prepare(false);
+    synchronized (Looper.class) {
+      if (sMainLooper != null) {
+        throw new IllegalStateException("The main Looper has already been prepared.");
+      }
+      sMainLooper = myLooper();
+      Looper.class.notifyAll();
+    }
+  }
+
+  public static Looper getMainLooper() {
+    synchronized (Looper.class) {
+      if (sMainLooper == null) {
+        Thread main = new Thread("main") {
+          @Override public void run() {
+            prepareMainLooper();
+            loop();
+          }
+        };
+        main.setDaemon(true);
+        main.start();
+      }
+      boolean interrupted = false;
+      while (sMainLooper == null) {
+        try {
+          Looper.class.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return sMainLooper;
+    }
+  }
+
+  public static void loop() {
+    Looper me = myLooper();
+    if (me == null) {
+      throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+    }
+    MessageQueue queue = me.mQueue;
+    for (;;) {
+      Message msg = queue.next();
+      if (msg == null) {
+        return;
+      }
+      msg.target.dispatchMessage(msg);
+      msg.recycleUnchecked();
+    }
+  }
+
+  public static Looper myLooper() {
+    return sThreadLocal.get();
+  }
+
+  public static MessageQueue myQueue() {
+    return myLooper().mQueue;
+  }
+
+  public boolean isCurrentThread() {
+    return Thread.currentThread() == mThread;
+  }
+
+  public void quit() {
+    mQueue.quit(false);
+  }
+
+  public void quitSafely() {
+    mQueue.quit(true);
+  }
+
+  public Thread getThread() {
+    return mThread;
+  }
+
+  public MessageQueue getQueue() {
+    return mQueue;
+  }
+
+  @Override public String toString() {
+    return "Looper (" + mThread.getName() + ", tid " + mThread.getId() + ") {"
+        + Integer.toHexString(System.identityHashCode(this)) + "}";
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import java.util.ArrayList;
+
+/**
+ * JVM version of the framework {@code MessageQueue} which waits on a monitor instead of polling a
+ * native file descriptor. Messages are kept in a singly linked list ordered by their due time.
+ */
+public final class MessageQueue {
+  private final boolean mQuitAllowed;
+  private final ArrayList<IdleHandler> mIdleHandlers = new ArrayList<>();
+  private Message mMessages;
+  private boolean mQuitting;
+
+  MessageQueue(boolean quitAllowed) {
+    mQuitAllowed = quitAllowed;
+  }
+
+  public interface IdleHandler {
+    boolean queueIdle();
+  }
+
+  public void addIdleHandler(IdleHandler handler) {
+    if (handler == null) {
+      throw new NullPointerException("Can't add a null IdleHandler");
+    }
+    synchronized (this) {
+      mIdleHandlers.add(handler);
+    }
+  }
+
+  public void removeIdleHandler(IdleHandler handler) {
+    synchronized (this) {
+      mIdleHandlers.remove(handler);
+    }
+  }
+
+  public boolean isIdle() {
+    synchronized (this) {
+      return mMessages == null || SystemClock.uptimeMillis() < mMessages.when;
+    }
+  }
+
+  Message next() {
+    boolean idled = false;
+    for (;;) {
+      IdleHandler[] idlers;
+      synchronized (this) {
+        long now = SystemClock.uptimeMillis();
+        Message msg = mMessages;
+        if (msg != null && now >= msg.when) {
+          mMessages = msg.next;
+          msg.next = null;
+          msg.markInUse();
+          return msg;
+        }
+        if (mQuitting) {
+          return null;
+        }
+        if (idled || mIdleHandlers.isEmpty()) {
+          try {
+            wait(msg == null ? 0 : msg.when - now);
+          } catch (InterruptedException ignored) {
+          }
+          continue;
+        }
+        idlers = mIdleHandlers.toArray(new IdleHandler[mIdleHandlers.size()]);
+      }
+
+      // Idle handlers run once per call and outside of the lock, like on Android.
+      idled = true;
+      for (IdleHandler idler : idlers) {
+        if (!idler.queueIdle()) {
+          removeIdleHandler(idler);
+        }
+      }
+    }
+  }
+
+  void quit(boolean safe) {
+    if (!mQuitAllowed) {
+      throw new IllegalStateException("Main thread not allowed to quit.");
+    }
+    synchronized (this) {
+      if (mQuitting) {
+        return;
+      }
+      mQuitting = true;
+      long now = safe ? SystemClock.uptimeMillis() : Long.MIN_VALUE;
+      Message p = mMessages;
+      Message prev = null;
+      while (p != null && p.when <= now) {
+        prev = p;
+        p = p.next;
+      }
+      if (prev == null) {
+        mMessages = null;
+      } else {
+        prev.next = null;
+      }
+      while (p != null) {
+        Message n = p.next;
+        p.recycleUnchecked();
+        p = n;
+      }
+      notifyAll();
+    }
+  }
+
+  boolean enqueueMessage(Message msg, long when) {
+    if (msg.target == null) {
+      throw new IllegalArgumentException("Message must have a target.");
+    }
+    if (msg.isInUse()) {
+      throw new IllegalStateException(msg + " This message is already in use.");
+    }
+    synchronized (this) {
+      if (mQuitting) {
+        msg.recycle();
+        return false;
+      }
+      msg.markInUse();
+      msg.when = when;
+      Message p = mMessages;
+      if (p == null || when == 0 || when < p.when) {
+        msg.next = p;
+        mMessages = msg;
+        notifyAll();
+      } else {
+        Message prev;
+        do {
+          prev = p;
+          p = p.next;
+        } while (p != null && when >= p.when);
+        msg.next = p;
+        prev.next = msg;
+      }
+    }
+    return true;
+  }
+
+  boolean hasMessages(Handler h, int what, Object object) {
+    synchronized (this) {
+      for (Message p = mMessages; p != null; p = p.next) {
+        if (p.target == h && p.what == what && (object == null || p.obj == object)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  boolean hasMessages(Handler h, Runnable r, Object object) {
+    synchronized (this) {
+      for (Message p = mMessages; p != null; p = p.next) {
+        if (p.target == h && p.callback == r && (object == null || p.obj == object)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  void removeMessages(Handler h, int what, Object object) {
+    removeMatching(h, true, what, null, object);
+  }
+
+  void removeMessages(Handler h, Runnable r, Object object) {
+    if (r != null) {
+      removeMatching(h, false, 0, r, object);
+    }
+  }
+
+  void removeCallbacksAndMessages(Handler h, Object object) {
+    removeMatching(h, false, 0, null, object);
+  }
+
+  private void removeMatching(Handler h, boolean matchWhat, int what, Runnable r, Object object) {
+    if (h == null) {
+      return;
+    }
+    synchronized (this) {
+      Message prev = null;
+      Message p = mMessages;
+      while (p != null) {
+        Message n = p.next;
+        if (p.target == h
+            && (!matchWhat || p.what == what)
+            && (r == null || p.callback == r)
+            && (object == null || p.obj == object)) {
+          if (prev == null) {
+            mMessages = n;
+          } else {
+            prev.next = n;
+          }
+          p.recycleUnchecked();
+        } else {
+          prev = p;
+        }
+        p = n;
+      }
+    }
+  }
+}
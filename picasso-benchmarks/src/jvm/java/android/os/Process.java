@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * JVM version of the framework {@code Process} with only the thread related methods. Thread
+ * priorities are ignored.
+ */
+public class Process {
+  public static final int THREAD_PRIORITY_DEFAULT = 0;
+  public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+  public static int myPid() {
+    return 1;
+  }
+
+  public static int myTid() {
+    return (int) Thread.currentThread().getId();
+  }
+
+  public static int myUid() {
+    return 10000;
+  }
+
+  public static void setThreadPriority(int priority) {
+  }
+
+  public static void setThreadPriority(int tid, int priority) {
+  }
+
+  public static int getThreadPriority(int tid) {
+    return THREAD_PRIORITY_DEFAULT;
+  }
+}
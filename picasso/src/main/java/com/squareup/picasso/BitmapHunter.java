@@ -21,8 +21,10 @@ import android.graphics.Matrix;
 import android.net.NetworkInfo;
 import android.os.Build;
 import android.view.Gravity;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
@@ -38,6 +40,10 @@ import static android.media.ExifInterface.ORIENTATION_ROTATE_90;
 import static android.media.ExifInterface.ORIENTATION_TRANSPOSE;
 import static android.media.ExifInterface.ORIENTATION_TRANSVERSE;
 import static com.squareup.picasso.MemoryPolicy.shouldReadFromMemoryCache;
+import static com.squareup.picasso.MemoryPolicy.shouldWriteToMemoryCache;
+import static com.squareup.picasso.NetworkPolicy.shouldReadFromDiskCache;
+import static com.squareup.picasso.NetworkPolicy.shouldWriteToDiskCache;
+import static com.squareup.picasso.Picasso.LoadedFrom.DISK;
 import static com.squareup.picasso.Picasso.LoadedFrom.MEMORY;
 import static com.squareup.picasso.Picasso.Priority;
 import static com.squareup.picasso.Picasso.Priority.LOW;
@@ -48,15 +54,21 @@ import static com.squareup.picasso.Utils.VERB_JOINED;
 import static com.squareup.picasso.Utils.VERB_REMOVED;
 import static com.squareup.picasso.Utils.VERB_TRANSFORMED;
 import static com.squareup.picasso.Utils.getLogIdsForHunter;
+import static com.squareup.picasso.Utils.getSourceKey;
 import static com.squareup.picasso.Utils.log;
 
 class BitmapHunter implements Runnable {
   /**
-   * Global lock for bitmap decoding to ensure that we are only are decoding one at a time. Since
-   * this will only ever happen in background threads we help avoid excessive memory thrashing as
-   * well as potential OOMs. Shamelessly stolen from Volley.
+   * Global lock for custom transformations which are not {@link Transformation.ThreadSafe}, since
+   * the same instance may be shared between requests running on different threads.
    */
-  private static final Object DECODE_LOCK = new Object();
+  private static final Object TRANSFORMATION_LOCK = new Object();
+
+  /**
+   * Buffers for images which have to be read into memory before they can be decoded. Images over
+   * 2 MB never reuse a buffer.
+   */
+  static final ByteArrayPool BYTE_ARRAY_POOL = new ByteArrayPool(2 * 1024 * 1024);
 
   private static final ThreadLocal<StringBuilder> NAME_BUILDER = new ThreadLocal<StringBuilder>() {
     @Override protected StringBuilder initialValue() {
@@ -90,12 +102,24 @@ class BitmapHunter implements Runnable {
   Action action;
   List<Action> actions;
   Bitmap result;
+  /** The result of the fetch stage, waiting for the decode stage. */
+  RequestHandler.Result fetched;
+  /** The bytes read by the fetch stage, which other variants of the same source may share. */
+  PooledByteArrayOutputStream fetchedBytes;
+  /** Hunters for other variants of the same source waiting on this hunter's fetch. */
+  List<BitmapHunter> followers;
   Future<?> future;
   Picasso.LoadedFrom loadedFrom;
   Exception exception;
   int exifOrientation; // Determined during decoding of original resource.
   int retryCount;
   Priority priority;
+  /** When the dispatcher batched this hunter for delivery, in uptime millis. */
+  long batchedMillis;
+  /** Aborts the download of the fetch stage once this hunter is canceled. */
+  final Downloader.Cancellation cancellation = new Downloader.Cancellation();
+  /** Set while the downloader owns this hunter, after the fetch stage enqueued its download. */
+  volatile boolean downloading;
 
   BitmapHunter(Picasso picasso, Dispatcher dispatcher, Cache cache, Stats stats, Action action,
       RequestHandler requestHandler) {
@@ -120,38 +144,101 @@ class BitmapHunter implements Runnable {
    * {@code inSampleSize}).
    */
   static Bitmap decodeStream(InputStream stream, Request request) throws IOException {
+    return decodeStream(stream, request, null, -1, false);
+  }
+
+  /**
+   * Decode a byte stream into a Bitmap, reusing the memory of a compatible bitmap from
+   * {@code bitmapPool} if there is one. If the stream has to be read into memory first, a buffer
+   * fitting {@code contentLength} bytes is taken from a pool when the length is known. With
+   * {@code automaticConfig} a request without a config decodes JPEG images, which are always
+   * opaque, as {@link Bitmap.Config#RGB_565}.
+   */
+  static Bitmap decodeStream(InputStream stream, Request request, BitmapPool bitmapPool,
+      long contentLength, boolean automaticConfig) throws IOException {
     MarkableInputStream markStream = new MarkableInputStream(stream);
     stream = markStream;
     markStream.allowMarksToExpire(false);
     long mark = markStream.savePosition(1024);
 
-    final BitmapFactory.Options options = RequestHandler.createBitmapOptions(request);
+    BitmapFactory.Options options = RequestHandler.createBitmapOptions(request, bitmapPool);
     final boolean calculateSize = RequestHandler.requiresInSampleSize(options);
 
     boolean isWebPFile = Utils.isWebPFile(stream);
+    markStream.reset(mark);
+    if (automaticConfig && request.config == null && Utils.isJpegFile(stream)) {
+      if (options == null) {
+        options = new BitmapFactory.Options();
+      }
+      options.inPreferredConfig = Bitmap.Config.RGB_565;
+    }
     boolean isPurgeable = request.purgeable && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP;
     markStream.reset(mark);
     // We decode from a byte array because, a) when decoding a WebP network stream, BitmapFactory
     // throws a JNI Exception, so we workaround by decoding a byte array, or b) user requested
     // purgeable, which only affects bitmaps decoded from byte arrays.
     if (isWebPFile || isPurgeable) {
-      byte[] bytes = Utils.toByteArray(stream);
       if (calculateSize) {
-        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
-        RequestHandler.calculateInSampleSize(request.targetWidth, request.targetHeight, options,
-            request);
+        // Only the header is needed for the bounds, so read it before buffering the whole image.
+        if (isWebPFile) {
+          Utils.decodeWebPBounds(stream, options);
+        } else {
+          BitmapFactory.decodeStream(stream, null, options);
+        }
+        markStream.reset(mark);
+      }
+      markStream.allowMarksToExpire(true);
+      PooledByteArrayOutputStream bytes =
+          new PooledByteArrayOutputStream(BYTE_ARRAY_POOL, contentLength);
+      try {
+        bytes.readFrom(stream);
+        byte[] buffer = bytes.buffer();
+        int length = bytes.size();
+        if (calculateSize) {
+          if (options.outWidth <= 0) {
+            // The header was not understood. Decode the bounds from the buffer instead.
+            BitmapFactory.decodeByteArray(buffer, 0, length, options);
+          }
+          calculateDecodeOptions(options, request, bitmapPool);
+        }
+        try {
+          return BitmapFactory.decodeByteArray(buffer, 0, length, options);
+        } catch (IllegalArgumentException e) {
+          if (options == null || options.inBitmap == null) {
+            throw e;
+          }
+          // The pooled bitmap turned out to be incompatible. Decode into a new bitmap instead.
+          options.inBitmap = null;
+          return BitmapFactory.decodeByteArray(buffer, 0, length, options);
+        }
+      } finally {
+        bytes.close();
       }
-      return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
     } else {
       if (calculateSize) {
         BitmapFactory.decodeStream(stream, null, options);
-        RequestHandler.calculateInSampleSize(request.targetWidth, request.targetHeight, options,
-            request);
+        calculateDecodeOptions(options, request, bitmapPool);
         markStream.reset(mark);
       }
-      markStream.allowMarksToExpire(true);
-      Bitmap bitmap = BitmapFactory.decodeStream(stream, null, options);
+      // Keep what a decode into a pooled bitmap reads, to start over without it if the bitmap
+      // turns out to be incompatible.
+      markStream.allowMarksToExpire(options == null || options.inBitmap == null);
+      Bitmap bitmap;
+      try {
+        bitmap = BitmapFactory.decodeStream(stream, null, options);
+      } catch (IllegalArgumentException e) {
+        if (options == null || options.inBitmap == null) {
+          throw e;
+        }
+        // The pooled bitmap turned out to be incompatible. Decode into a new bitmap instead.
+        options.inBitmap = null;
+        markStream.reset(mark);
+        bitmap = BitmapFactory.decodeStream(stream, null, options);
+      }
       if (bitmap == null) {
+        if (options != null && options.inBitmap != null) {
+          bitmapPool.put(options.inBitmap);
+        }
         // Treat null as an IO exception, we will eventually retry.
         throw new IOException("Failed to decode stream.");
       }
@@ -159,6 +246,20 @@ class BitmapHunter implements Runnable {
     }
   }
 
+  private static void calculateDecodeOptions(BitmapFactory.Options options, Request request,
+      BitmapPool bitmapPool) {
+    if (request.hasSize()) {
+      RequestHandler.calculateInSampleSize(request.targetWidth, request.targetHeight, options,
+          request);
+    } else {
+      // Bounds were only decoded to find a bitmap to reuse.
+      options.inJustDecodeBounds = false;
+    }
+    if (bitmapPool != null) {
+      RequestHandler.setInBitmap(options, bitmapPool);
+    }
+  }
+
   @Override public void run() {
     try {
       updateThreadName(data);
@@ -167,51 +268,215 @@ class BitmapHunter implements Runnable {
         log(OWNER_HUNTER, VERB_EXECUTING, getLogIdsForHunter(this));
       }
 
-      result = hunt();
+      if (fetched == null && !requestHandler.loadsLocally()) {
+        result = fetch();
+        if (result == null) {
+          // Handed over to the decode stage or to the downloader.
+          return;
+        }
+      } else {
+        result = hunt();
+      }
 
       if (result == null) {
         dispatcher.dispatchFailed(this);
       } else {
         dispatcher.dispatchComplete(this);
       }
-    } catch (Downloader.ResponseException e) {
-      if (!e.localCacheOnly || e.responseCode != 504) {
-        exception = e;
+    } catch (Exception e) {
+      dispatchFailure(e);
+    } catch (OutOfMemoryError e) {
+      dispatchFailure(e);
+    } finally {
+      Thread.currentThread().setName(Utils.THREAD_IDLE_NAME);
+    }
+  }
+
+  /** Tell the dispatcher about a failed hunt, to retry it if the failure may be temporary. */
+  private void dispatchFailure(Throwable e) {
+    if (e instanceof Downloader.ResponseException) {
+      Downloader.ResponseException responseException = (Downloader.ResponseException) e;
+      if (!responseException.localCacheOnly || responseException.responseCode != 504) {
+        exception = responseException;
       }
       dispatcher.dispatchFailed(this);
-    } catch (IOException e) {
-      exception = e;
+    } else if (e instanceof IOException) {
+      exception = (IOException) e;
       dispatcher.dispatchRetry(this);
-    } catch (OutOfMemoryError e) {
+    } else if (e instanceof OutOfMemoryError) {
       StringWriter writer = new StringWriter();
       stats.createSnapshot().dump(new PrintWriter(writer));
       exception = new RuntimeException(writer.toString(), e);
       dispatcher.dispatchFailed(this);
-    } catch (Exception e) {
-      exception = e;
+    } else {
+      exception = (Exception) e;
       dispatcher.dispatchFailed(this);
-    } finally {
-      Thread.currentThread().setName(Utils.THREAD_IDLE_NAME);
     }
   }
 
+  /**
+   * Run the I/O bound part of the hunt on the fetch stage. Returns the bitmap from the memory cache
+   * if there is one. Otherwise loads the image, reading any stream fully into memory, and hands the
+   * result in {@link #fetched} over to the decode stage. Returns null in that case, and also when
+   * the download was enqueued with an asynchronous downloader, which calls back later.
+   */
+  Bitmap fetch() throws IOException {
+    Bitmap bitmap = readMemoryCache();
+    if (bitmap != null) {
+      return bitmap;
+    }
+    bitmap = deriveFromMemoryCache();
+    if (bitmap != null) {
+      return bitmap;
+    }
+    bitmap = readThumbnailCache();
+    if (bitmap != null) {
+      return bitmap;
+    }
+
+    RequestHandler.Result result = readEncodedCache();
+    if (result == null) {
+      if (requestHandler instanceof NetworkRequestHandler
+          && ((NetworkRequestHandler) requestHandler).loadsAsynchronously()) {
+        enqueue((NetworkRequestHandler) requestHandler);
+        return null;
+      }
+      try {
+        result = load();
+      } catch (IOException e) {
+        onLoadFailed();
+        throw e;
+      }
+    }
+    handOver(result);
+    return null;
+  }
+
+  /**
+   * Let the downloader fetch the image without holding on to the thread of the fetch stage. Once
+   * the response arrived its stream is read into memory on a thread of the downloader.
+   */
+  private void enqueue(NetworkRequestHandler handler) {
+    data.networkPolicy = retryCount == 0 ? NetworkPolicy.OFFLINE.index : networkPolicy;
+    downloading = true;
+    handler.enqueue(data, cancellation, new NetworkRequestHandler.Callback() {
+      @Override public void onResult(RequestHandler.Result result) {
+        try {
+          handOver(result);
+        } catch (Exception e) {
+          downloading = false;
+          dispatchFailure(e);
+        } catch (OutOfMemoryError e) {
+          downloading = false;
+          dispatchFailure(e);
+        }
+      }
+
+      @Override public void onFailure(IOException e) {
+        onLoadFailed();
+        downloading = false;
+        dispatchFailure(e);
+      }
+    });
+  }
+
+  private void onLoadFailed() {
+    if (cancellation.isCanceled()) {
+      // Aborted before the response arrived, so the size of the image is not known.
+      stats.dispatchDownloadCanceled(0);
+    }
+  }
+
+  /** Read the loaded image into memory and hand it over to the decode stage. */
+  private void handOver(RequestHandler.Result result) throws IOException {
+    if (result != null && result.getStream() != null && !result.isEncodedCacheHit()) {
+      InputStream is = result.getStream();
+      PooledByteArrayOutputStream bytes =
+          new PooledByteArrayOutputStream(BYTE_ARRAY_POOL, result.getContentLength());
+      try {
+        bytes.readFrom(is);
+      } catch (IOException e) {
+        if (cancellation.isCanceled()) {
+          stats.dispatchDownloadCanceled(Math.max(0, result.getContentLength() - bytes.size()));
+        }
+        bytes.close();
+        throw e;
+      } finally {
+        cancellation.setOnCancel(null);
+        Utils.closeQuietly(is);
+      }
+      EncodedMemoryCache encodedCache = picasso.encodedCache;
+      if (encodedCache != null && shouldWriteToMemoryCache(memoryPolicy)) {
+        encodedCache.set(getSourceKey(key), bytes.buffer(), bytes.size());
+      }
+      result = new RequestHandler.Result(null, bytes.toInputStream(), result.getLoadedFrom(),
+          result.getExifOrientation(), bytes.size());
+      fetchedBytes = bytes;
+    }
+    fetched = result;
+    downloading = false;
+    if (result != null) {
+      dispatcher.dispatchDecode(this);
+    } else {
+      dispatcher.dispatchFailed(this);
+    }
+  }
+
+  /** Returns a result which reads the encoded image from memory, or null if it is not cached. */
+  private RequestHandler.Result readEncodedCache() {
+    EncodedMemoryCache encodedCache = picasso.encodedCache;
+    if (encodedCache == null || !shouldReadFromMemoryCache(memoryPolicy)) {
+      return null;
+    }
+    byte[] bytes = encodedCache.get(getSourceKey(key));
+    if (bytes == null) {
+      return null;
+    }
+    if (picasso.loggingEnabled) {
+      log(OWNER_HUNTER, VERB_DECODED, data.logId(), "from encoded cache");
+    }
+    return new RequestHandler.Result(null, new ByteArrayInputStream(bytes), MEMORY, 0,
+        bytes.length, true);
+  }
+
+  /**
+   * Returns a result which reads the same bytes as {@link #fetched}, or null if the fetch stage
+   * produced no bytes to share. Must be called before this hunter is submitted to the decode stage.
+   */
+  RequestHandler.Result shareFetched() {
+    if (fetchedBytes == null) {
+      return null;
+    }
+    return new RequestHandler.Result(null, fetchedBytes.toInputStream(), fetched.getLoadedFrom(),
+        fetched.getExifOrientation(), fetchedBytes.size());
+  }
+
+  /**
+   * Run the hunt up to a decoded and transformed bitmap. Starts from the result of the fetch stage
+   * if there is one.
+   */
   Bitmap hunt() throws IOException {
     Bitmap bitmap = null;
 
-    if (shouldReadFromMemoryCache(memoryPolicy)) {
-      bitmap = cache.get(key);
+    RequestHandler.Result result = fetched;
+    fetched = null;
+    fetchedBytes = null;
+    if (result == null) {
+      bitmap = readMemoryCache();
+      if (bitmap != null) {
+        return bitmap;
+      }
+      bitmap = deriveFromMemoryCache();
       if (bitmap != null) {
-        stats.dispatchCacheHit();
-        loadedFrom = MEMORY;
-        if (picasso.loggingEnabled) {
-          log(OWNER_HUNTER, VERB_DECODED, data.logId(), "from cache");
-        }
         return bitmap;
       }
+      bitmap = readThumbnailCache();
+      if (bitmap != null) {
+        return bitmap;
+      }
+      result = load();
     }
 
-    data.networkPolicy = retryCount == 0 ? NetworkPolicy.OFFLINE.index : networkPolicy;
-    RequestHandler.Result result = requestHandler.load(data, networkPolicy);
     if (result != null) {
       loadedFrom = result.getLoadedFrom();
       exifOrientation = result.getExifOrientation();
@@ -221,10 +486,15 @@ class BitmapHunter implements Runnable {
       if (bitmap == null) {
         InputStream is = result.getStream();
         try {
-          bitmap = decodeStream(is, data);
+          bitmap = decodeStream(is, data, picasso.bitmapPool, result.getContentLength(),
+              picasso.automaticBitmapConfig);
         } finally {
           Utils.closeQuietly(is);
         }
+        if (bitmap != null && picasso.automaticBitmapConfig && data.config == null
+            && bitmap.getConfig() == Bitmap.Config.RGB_565) {
+          stats.dispatchOpaqueBitmapDecoded(bitmap);
+        }
       }
     }
 
@@ -234,22 +504,17 @@ class BitmapHunter implements Runnable {
       }
       stats.dispatchBitmapDecoded(bitmap);
       if (data.needsTransformation() || exifOrientation != 0) {
-        synchronized (DECODE_LOCK) {
-          if (data.needsMatrixTransform() || exifOrientation != 0) {
-            bitmap = transformResult(data, bitmap, exifOrientation);
-            if (picasso.loggingEnabled) {
-              log(OWNER_HUNTER, VERB_TRANSFORMED, data.logId());
-            }
-          }
-          if (data.hasCustomTransformations()) {
-            bitmap = applyCustomTransformations(data.transformations, bitmap);
-            if (picasso.loggingEnabled) {
-              log(OWNER_HUNTER, VERB_TRANSFORMED, data.logId(), "from custom transformations");
-            }
-          }
+        // Budget for the source and a result of about the same size existing at once.
+        long transformationBytes = 2L * Utils.getBitmapBytes(bitmap);
+        acquireTransformation(transformationBytes);
+        try {
+          bitmap = transform(bitmap);
+        } finally {
+          releaseTransformation(transformationBytes);
         }
         if (bitmap != null) {
           stats.dispatchBitmapTransformed(bitmap);
+          writeThumbnailCache(bitmap);
         }
       }
     }
@@ -257,6 +522,146 @@ class BitmapHunter implements Runnable {
     return bitmap;
   }
 
+  /** Returns the processed bitmap from the thumbnail disk cache, or null if it is not cached. */
+  private Bitmap readThumbnailCache() {
+    if (!usesThumbnailCache() || !shouldReadFromDiskCache(networkPolicy)) {
+      return null;
+    }
+    Bitmap bitmap = picasso.thumbnailCache.get(key);
+    if (bitmap != null) {
+      loadedFrom = DISK;
+      if (picasso.loggingEnabled) {
+        log(OWNER_HUNTER, VERB_DECODED, data.logId(), "from thumbnail cache");
+      }
+    }
+    return bitmap;
+  }
+
+  private void writeThumbnailCache(Bitmap bitmap) {
+    if (usesThumbnailCache() && shouldWriteToDiskCache(networkPolicy)) {
+      dispatcher.dispatchThumbnailWrite(key, bitmap);
+    }
+  }
+
+  /**
+   * Only resized or transformed images are worth persisting, and only those identified by a uri.
+   * Resource ids are not stable across builds of the application.
+   */
+  private boolean usesThumbnailCache() {
+    return picasso.thumbnailCache != null && data.uri != null && data.needsTransformation();
+  }
+
+  private Bitmap readMemoryCache() {
+    if (shouldReadFromMemoryCache(memoryPolicy)) {
+      Bitmap bitmap = cache.get(key);
+      if (bitmap != null) {
+        stats.dispatchCacheHit();
+        loadedFrom = MEMORY;
+        if (picasso.loggingEnabled) {
+          log(OWNER_HUNTER, VERB_DECODED, data.logId(), "from cache");
+        }
+        return bitmap;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Derive the result from a larger variant of the same image in the memory cache, without any
+   * I/O. Returns null if no cached variant can be used.
+   */
+  private Bitmap deriveFromMemoryCache() throws InterruptedIOException {
+    if (!shouldReadFromMemoryCache(memoryPolicy) || !(cache instanceof VariantCache)) {
+      return null;
+    }
+    Bitmap variant = ((VariantCache) cache).getLargerVariant(key, data);
+    if (variant == null) {
+      return null;
+    }
+    // The cached variant is already counted by the cache, and the result is no larger than it.
+    long transformationBytes = Utils.getBitmapBytes(variant);
+    acquireTransformation(transformationBytes);
+    Bitmap bitmap;
+    try {
+      // The cached variant is already in its final orientation and must not be recycled or
+      // pooled.
+      bitmap = transformResult(data, variant, 0, null, false);
+      if (bitmap == variant) {
+        return null;
+      }
+      if (data.hasCustomTransformations()) {
+        bitmap = applyTransformations(bitmap);
+        if (bitmap == null) {
+          return null;
+        }
+      }
+    } finally {
+      releaseTransformation(transformationBytes);
+    }
+    stats.dispatchDerivedCacheHit();
+    loadedFrom = MEMORY;
+    if (picasso.loggingEnabled) {
+      log(OWNER_HUNTER, VERB_DECODED, data.logId(), "from larger variant in cache");
+    }
+    return bitmap;
+  }
+
+  /** Block until the transformation limiter admits a transformation needing {@code bytes}. */
+  private void acquireTransformation(long bytes) throws InterruptedIOException {
+    TransformationLimiter limiter = picasso.transformationLimiter;
+    if (limiter == null) {
+      return;
+    }
+    try {
+      limiter.acquire(bytes);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to transform.");
+    }
+  }
+
+  private void releaseTransformation(long bytes) {
+    TransformationLimiter limiter = picasso.transformationLimiter;
+    if (limiter != null) {
+      limiter.release(bytes);
+    }
+  }
+
+  private RequestHandler.Result load() throws IOException {
+    data.networkPolicy = retryCount == 0 ? NetworkPolicy.OFFLINE.index : networkPolicy;
+    if (requestHandler instanceof NetworkRequestHandler) {
+      return ((NetworkRequestHandler) requestHandler).load(data, networkPolicy, cancellation);
+    }
+    return requestHandler.load(data, networkPolicy);
+  }
+
+  private Bitmap transform(Bitmap bitmap) {
+    if (data.needsMatrixTransform() || exifOrientation != 0) {
+      bitmap = transformResult(data, bitmap, exifOrientation, picasso.bitmapPool);
+      if (picasso.loggingEnabled) {
+        log(OWNER_HUNTER, VERB_TRANSFORMED, data.logId());
+      }
+    }
+    if (data.hasCustomTransformations()) {
+      bitmap = applyTransformations(bitmap);
+    }
+    return bitmap;
+  }
+
+  private Bitmap applyTransformations(Bitmap bitmap) {
+    if (areThreadSafe(data.transformations)) {
+      bitmap = applyCustomTransformations(data.transformations, bitmap);
+    } else {
+      synchronized (TRANSFORMATION_LOCK) {
+        bitmap = applyCustomTransformations(data.transformations, bitmap);
+      }
+    }
+    if (picasso.loggingEnabled) {
+      log(OWNER_HUNTER, VERB_TRANSFORMED, data.logId(), "from custom transformations");
+    }
+    return bitmap;
+  }
+
   void attach(Action action) {
     boolean loggingEnabled = picasso.loggingEnabled;
     Request request = action.request;
@@ -338,14 +743,20 @@ class BitmapHunter implements Runnable {
   }
 
   boolean cancel() {
-    return action == null
+    if (action == null
         && (actions == null || actions.isEmpty())
         && future != null
-        && future.cancel(false);
+        && (future.cancel(false) || downloading)) {
+      // Canceling the future does not stop a fetch which is already running, and an enqueued
+      // download outlives the future of the fetch stage.
+      cancellation.cancel();
+      return true;
+    }
+    return false;
   }
 
   boolean isCancelled() {
-    return future != null && future.isCancelled();
+    return future != null && future.isCancelled() || cancellation.isCanceled();
   }
 
   boolean shouldRetry(boolean airplaneMode, NetworkInfo info) {
@@ -357,6 +768,11 @@ class BitmapHunter implements Runnable {
     return requestHandler.shouldRetry(airplaneMode, info);
   }
 
+  /** Returns how many times this hunter retried so far. */
+  int getRetryAttempts() {
+    return requestHandler.getRetryCount() - retryCount;
+  }
+
   boolean supportsReplay() {
     return requestHandler.supportsReplay();
   }
@@ -428,6 +844,16 @@ class BitmapHunter implements Runnable {
     return new BitmapHunter(picasso, dispatcher, cache, stats, action, ERRORING_HANDLER);
   }
 
+  static boolean areThreadSafe(List<Transformation> transformations) {
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, count = transformations.size(); i < count; i++) {
+      if (!(transformations.get(i) instanceof Transformation.ThreadSafe)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   static Bitmap applyCustomTransformations(List<Transformation> transformations, Bitmap result) {
     for (int i = 0, count = transformations.size(); i < count; i++) {
       final Transformation transformation = transformations.get(i);
@@ -491,6 +917,20 @@ class BitmapHunter implements Runnable {
   }
 
   static Bitmap transformResult(Request data, Bitmap result, int exifOrientation) {
+    return transformResult(data, result, exifOrientation, null);
+  }
+
+  static Bitmap transformResult(Request data, Bitmap result, int exifOrientation,
+      BitmapPool bitmapPool) {
+    return transformResult(data, result, exifOrientation, bitmapPool, true);
+  }
+
+  /**
+   * Apply the matrix transformations of {@code data} to {@code result}. Unless {@code ownsResult}
+   * is false the source is recycled, or offered to {@code bitmapPool}, once it has been replaced.
+   */
+  static Bitmap transformResult(Request data, Bitmap result, int exifOrientation,
+      BitmapPool bitmapPool, boolean ownsResult) {
     int inWidth = result.getWidth();
     int inHeight = result.getHeight();
     boolean onlyScaleDown = data.onlyScaleDown;
@@ -635,7 +1075,10 @@ class BitmapHunter implements Runnable {
     Bitmap newResult =
         Bitmap.createBitmap(result, drawX, drawY, drawWidth, drawHeight, matrix, true);
     if (newResult != result) {
-      result.recycle();
+      // The source is no longer needed so let the pool reuse it if possible.
+      if (ownsResult && (bitmapPool == null || !bitmapPool.put(result))) {
+        result.recycle();
+      }
       result = newResult;
     }
 
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.KITKAT;
+
+/**
+ * A pool of mutable bitmaps which are no longer in use and whose memory can be reused as
+ * {@link android.graphics.BitmapFactory.Options#inBitmap} when decoding other images.
+ * <p>
+ * Bitmaps are indexed by config and allocation size. When the pool grows beyond its maximum size
+ * the least recently added bitmaps are recycled.
+ *
+ * @see Picasso.Builder#bitmapPool(BitmapPool)
+ */
+public class BitmapPool {
+  /** The largest multiple of the requested size which is still handed out on KitKat and newer. */
+  private static final int MAX_SIZE_MULTIPLE = 4;
+
+  private final Map<Bitmap.Config, TreeMap<Integer, ArrayList<Bitmap>>> groups =
+      new EnumMap<>(Bitmap.Config.class);
+  private final LinkedHashSet<Bitmap> order = new LinkedHashSet<>();
+  private final int maxSize;
+
+  private int size;
+  private int putCount;
+  private int evictionCount;
+  private int hitCount;
+  private int missCount;
+
+  /** Create a pool with a given maximum size in bytes. */
+  public BitmapPool(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive.");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Offer a bitmap which is no longer referenced anywhere else to the pool. Returns false if the
+   * bitmap cannot be reused, in which case the caller remains responsible for it.
+   */
+  public boolean put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+      return false;
+    }
+    Bitmap.Config config = bitmap.getConfig();
+    if (config == null) {
+      return false;
+    }
+    int bitmapSize = Utils.getBitmapBytes(bitmap);
+    if (bitmapSize > maxSize) {
+      return false;
+    }
+
+    synchronized (this) {
+      if (!order.add(bitmap)) {
+        return true;
+      }
+      putCount++;
+      size += bitmapSize;
+      TreeMap<Integer, ArrayList<Bitmap>> sizes = groups.get(config);
+      if (sizes == null) {
+        sizes = new TreeMap<>();
+        groups.put(config, sizes);
+      }
+      ArrayList<Bitmap> bitmaps = sizes.get(bitmapSize);
+      if (bitmaps == null) {
+        bitmaps = new ArrayList<>(2);
+        sizes.put(bitmapSize, bitmaps);
+      }
+      bitmaps.add(bitmap);
+    }
+
+    trimToSize(maxSize);
+    return true;
+  }
+
+  /**
+   * Remove and return a bitmap which can be decoded into for an image of the given dimensions and
+   * config, or null if there is none.
+   */
+  @Nullable synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    if (config == null) {
+      config = Bitmap.Config.ARGB_8888;
+    }
+    TreeMap<Integer, ArrayList<Bitmap>> sizes = groups.get(config);
+    if (sizes != null) {
+      int requiredSize = width * height * bytesPerPixel(config);
+      if (SDK_INT >= KITKAT) {
+        // Any allocation which is large enough will do, but avoid pinning much larger bitmaps.
+        Integer bitmapSize = sizes.ceilingKey(requiredSize);
+        if (bitmapSize != null && bitmapSize <= requiredSize * MAX_SIZE_MULTIPLE) {
+          hitCount++;
+          return remove(sizes, bitmapSize, 0);
+        }
+      } else {
+        // Prior to KitKat the dimensions must match exactly.
+        ArrayList<Bitmap> bitmaps = sizes.get(requiredSize);
+        if (bitmaps != null) {
+          for (int i = 0, count = bitmaps.size(); i < count; i++) {
+            Bitmap candidate = bitmaps.get(i);
+            if (candidate.getWidth() == width && candidate.getHeight() == height) {
+              hitCount++;
+              return remove(sizes, requiredSize, i);
+            }
+          }
+        }
+      }
+    }
+    missCount++;
+    return null;
+  }
+
+  /** Recycle all bitmaps in the pool. */
+  public final void clear() {
+    trimToSize(-1); // -1 will evict 0-sized elements
+  }
+
+  /** Returns the sum of the sizes of the bitmaps in this pool. */
+  public final synchronized int size() {
+    return size;
+  }
+
+  /** Returns the maximum sum of the sizes of the bitmaps in this pool. */
+  public final synchronized int maxSize() {
+    return maxSize;
+  }
+
+  /** Returns the number of times a decode was able to reuse a pooled bitmap. */
+  public final synchronized int hitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of times a decode found no compatible bitmap in the pool. */
+  public final synchronized int missCount() {
+    return missCount;
+  }
+
+  /** Returns the number of bitmaps that have been added to the pool. */
+  public final synchronized int putCount() {
+    return putCount;
+  }
+
+  /** Returns the number of bitmaps that have been evicted and recycled. */
+  public final synchronized int evictionCount() {
+    return evictionCount;
+  }
+
+  private void trimToSize(int maxSize) {
+    while (true) {
+      Bitmap toEvict;
+      synchronized (this) {
+        if (size <= maxSize || order.isEmpty()) {
+          break;
+        }
+        toEvict = order.iterator().next();
+        int bitmapSize = Utils.getBitmapBytes(toEvict);
+        TreeMap<Integer, ArrayList<Bitmap>> sizes = groups.get(toEvict.getConfig());
+        remove(sizes, bitmapSize, sizes.get(bitmapSize).indexOf(toEvict));
+        evictionCount++;
+      }
+      toEvict.recycle();
+    }
+  }
+
+  private Bitmap remove(TreeMap<Integer, ArrayList<Bitmap>> sizes, int bitmapSize, int index) {
+    ArrayList<Bitmap> bitmaps = sizes.get(bitmapSize);
+    Bitmap bitmap = bitmaps.remove(index);
+    if (bitmaps.isEmpty()) {
+      sizes.remove(bitmapSize);
+    }
+    order.remove(bitmap);
+    size -= bitmapSize;
+    return bitmap;
+  }
+
+  static int bytesPerPixel(Bitmap.Config config) {
+    switch (config) {
+      case ALPHA_8:
+        return 1;
+      case RGB_565:
+      case ARGB_4444:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+}
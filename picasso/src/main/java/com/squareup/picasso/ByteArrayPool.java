@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A pool of byte arrays used to buffer encoded images which have to be decoded from memory.
+ * Buffers are handed out smallest fit first and the least recently returned ones are dropped once
+ * the pool holds more than its maximum size. A buffer larger than the maximum size is never kept,
+ * so every image which needs one allocates a new buffer.
+ */
+final class ByteArrayPool {
+  private final List<byte[]> buffersByLastUse = new LinkedList<>();
+  private final List<byte[]> buffersBySize = new ArrayList<>(64);
+  private final int maxSize;
+
+  private int size;
+
+  ByteArrayPool(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** Returns a buffer from the pool which is at least {@code length} bytes long. */
+  synchronized byte[] get(int length) {
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, count = buffersBySize.size(); i < count; i++) {
+      byte[] buffer = buffersBySize.get(i);
+      if (buffer.length >= length) {
+        size -= buffer.length;
+        buffersBySize.remove(i);
+        buffersByLastUse.remove(buffer);
+        return buffer;
+      }
+    }
+    return new byte[length];
+  }
+
+  /**
+   * Returns a buffer to the pool, dropping the oldest buffers if the pool is too large. A buffer
+   * larger than the maximum size of the pool is dropped right away.
+   */
+  synchronized void put(byte[] buffer) {
+    if (buffer == null || buffer.length > maxSize) {
+      return;
+    }
+    buffersByLastUse.add(buffer);
+    int index = 0;
+    while (index < buffersBySize.size() && buffersBySize.get(index).length < buffer.length) {
+      index++;
+    }
+    buffersBySize.add(index, buffer);
+    size += buffer.length;
+    trim();
+  }
+
+  /** Drops all buffers from the pool. */
+  synchronized void clear() {
+    buffersByLastUse.clear();
+    buffersBySize.clear();
+    size = 0;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  private void trim() {
+    while (size > maxSize) {
+      byte[] buffer = buffersByLastUse.remove(0);
+      buffersBySize.remove(buffer);
+      size -= buffer.length;
+    }
+  }
+}
@@ -43,6 +43,18 @@ public interface Cache {
   /** Remove items whose key is prefixed with {@code keyPrefix}. */
   void clearKeyUri(String keyPrefix);
 
+  /**
+   * A cache which can release part of its memory. When the system is low on memory a cache which
+   * does not implement this is cleared instead.
+   */
+  interface Trimmable {
+    /**
+     * Evict the least valuable images until the cache holds at most {@code size} bytes. The
+     * maximum size is unchanged, so the cache may grow again afterwards.
+     */
+    void trimToSize(int size);
+  }
+
   /** A cache which does not store any values. */
   Cache NONE = new Cache() {
     @Override public Bitmap get(String key) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.List;
+
+/**
+ * The parts of a {@link Request} which make up its memory cache key, together with a precomputed
+ * 64-bit hash of them. A key can be checked against a request without building the key string,
+ * which lets repeated requests for the same image share one canonical key instance.
+ *
+ * @see Utils#createKey(Request)
+ */
+final class CacheKey {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final String[] NO_TRANSFORMATIONS = new String[0];
+
+  final long hash;
+  private final String source;
+  private final int resourceId;
+  private final float rotationDegrees;
+  private final boolean hasRotationPivot;
+  private final float rotationPivotX;
+  private final float rotationPivotY;
+  private final int targetWidth;
+  private final int targetHeight;
+  private final boolean centerCrop;
+  private final int centerCropGravity;
+  private final boolean centerInside;
+  private final String[] transformationKeys;
+  private final String key;
+
+  CacheKey(Request data, long hash, String key) {
+    this.hash = hash;
+    this.source = source(data);
+    this.resourceId = data.resourceId;
+    this.rotationDegrees = data.rotationDegrees;
+    this.hasRotationPivot = data.hasRotationPivot;
+    this.rotationPivotX = data.rotationPivotX;
+    this.rotationPivotY = data.rotationPivotY;
+    this.targetWidth = data.targetWidth;
+    this.targetHeight = data.targetHeight;
+    this.centerCrop = data.centerCrop;
+    this.centerCropGravity = data.centerCropGravity;
+    this.centerInside = data.centerInside;
+    List<Transformation> transformations = data.transformations;
+    if (transformations == null || transformations.isEmpty()) {
+      this.transformationKeys = NO_TRANSFORMATIONS;
+    } else {
+      this.transformationKeys = new String[transformations.size()];
+      for (int i = 0; i < transformationKeys.length; i++) {
+        transformationKeys[i] = transformations.get(i).key();
+      }
+    }
+    this.key = key;
+  }
+
+  /** Hash the parts of {@code data} which are part of its key without allocating. */
+  static long hash(Request data) {
+    long hash = FNV_OFFSET_BASIS;
+    String source = source(data);
+    if (source != null) {
+      hash = hash(hash, source);
+    } else {
+      hash = hash(hash, data.resourceId);
+    }
+    hash = hash(hash, Float.floatToIntBits(data.rotationDegrees));
+    if (data.rotationDegrees != 0 && data.hasRotationPivot) {
+      hash = hash(hash, Float.floatToIntBits(data.rotationPivotX));
+      hash = hash(hash, Float.floatToIntBits(data.rotationPivotY));
+    }
+    hash = hash(hash, data.targetWidth);
+    hash = hash(hash, data.targetHeight);
+    if (data.centerCrop) {
+      hash = hash(hash, data.centerCropGravity);
+    } else if (data.centerInside) {
+      hash = hash(hash, -1);
+    }
+    List<Transformation> transformations = data.transformations;
+    if (transformations != null) {
+      //noinspection ForLoopReplaceableByForEach
+      for (int i = 0, count = transformations.size(); i < count; i++) {
+        hash = hash(hash, transformations.get(i).key());
+      }
+    }
+    return hash;
+  }
+
+  /** Returns true if {@code data} has this key. */
+  boolean matches(Request data) {
+    String source = source(data);
+    if (source != null ? !source.equals(this.source)
+        : this.source != null || data.resourceId != resourceId) {
+      return false;
+    }
+    if (data.rotationDegrees != rotationDegrees
+        || (rotationDegrees != 0 && (data.hasRotationPivot != hasRotationPivot || (hasRotationPivot
+            && (data.rotationPivotX != rotationPivotX || data.rotationPivotY != rotationPivotY))))
+        || data.targetWidth != targetWidth
+        || data.targetHeight != targetHeight
+        || data.centerCrop != centerCrop
+        || (centerCrop && data.centerCropGravity != centerCropGravity)
+        || (!centerCrop && data.centerInside != centerInside)) {
+      return false;
+    }
+    List<Transformation> transformations = data.transformations;
+    int count = transformations != null ? transformations.size() : 0;
+    if (count != transformationKeys.length) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (!transformations.get(i).key().equals(transformationKeys[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the key string used by the memory cache. */
+  @Override public String toString() {
+    return key;
+  }
+
+  private static String source(Request data) {
+    if (data.stableKey != null) {
+      return data.stableKey;
+    }
+    return data.uri != null ? data.uri.toString() : null;
+  }
+
+  private static long hash(long hash, int value) {
+    return (hash ^ value) * FNV_PRIME;
+  }
+
+  private static long hash(long hash, String value) {
+    for (int i = 0, length = value.length(); i < length; i++) {
+      hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+}
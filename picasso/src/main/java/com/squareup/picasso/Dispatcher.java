@@ -20,13 +20,19 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.view.View;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -45,13 +51,17 @@ import static com.squareup.picasso.MemoryPolicy.shouldWriteToMemoryCache;
 import static com.squareup.picasso.Utils.OWNER_DISPATCHER;
 import static com.squareup.picasso.Utils.VERB_BATCHED;
 import static com.squareup.picasso.Utils.VERB_CANCELED;
+import static com.squareup.picasso.Utils.VERB_CHANGED;
 import static com.squareup.picasso.Utils.VERB_DELIVERED;
 import static com.squareup.picasso.Utils.VERB_ENQUEUED;
 import static com.squareup.picasso.Utils.VERB_IGNORED;
+import static com.squareup.picasso.Utils.VERB_JOINED;
 import static com.squareup.picasso.Utils.VERB_PAUSED;
 import static com.squareup.picasso.Utils.VERB_REPLAYING;
 import static com.squareup.picasso.Utils.VERB_RETRYING;
+import static com.squareup.picasso.Utils.createKey;
 import static com.squareup.picasso.Utils.getLogIdsForHunter;
+import static com.squareup.picasso.Utils.getSourceKey;
 import static com.squareup.picasso.Utils.getService;
 import static com.squareup.picasso.Utils.hasPermission;
 import static com.squareup.picasso.Utils.log;
@@ -74,45 +84,80 @@ class Dispatcher {
   static final int TAG_PAUSE = 11;
   static final int TAG_RESUME = 12;
   static final int REQUEST_BATCH_RESUME = 13;
+  static final int HUNTER_DECODE = 14;
+  static final int THUMBNAIL_INVALIDATE = 15;
+  static final int WARM_START = 16;
+  static final int WARM_START_SAVE = 17;
+  static final int EVENTS_DRAIN = 18;
+  static final int REPLAY_NEXT = 19;
+  static final int HUNTER_RESUBMIT = 20;
 
   private static final String DISPATCHER_THREAD_NAME = "Dispatcher";
   private static final int BATCH_DELAY = 200; // ms
+  private static final int WARM_START_SAVE_DELAY = 30000; // ms
+  /** Events handled per drain before other messages of the dispatcher thread get a turn. */
+  private static final int EVENTS_PER_DRAIN = 64;
+  /** Orders failed actions for a paced replay, the highest priority first. */
+  private static final Comparator<Action> REPLAY_ORDER = new Comparator<Action>() {
+    @Override public int compare(Action lhs, Action rhs) {
+      return rhs.getPriority().ordinal() - lhs.getPriority().ordinal();
+    }
+  };
 
   final DispatcherThread dispatcherThread;
   final Context context;
   final ExecutorService service;
+  final ExecutorService decodeService;
+  /** Runs file work on behalf of the dispatcher thread, one task at a time. */
+  final ExecutorService diskService;
   final Downloader downloader;
   final Map<String, BitmapHunter> hunterMap;
+  final Map<String, BitmapHunter> fetchMap;
   final Map<Object, Action> failedActions;
   final Map<Object, Action> pausedActions;
   final Set<Object> pausedTags;
   final Handler handler;
+  final EventQueue events;
   final Handler mainThreadHandler;
   final Cache cache;
+  final ThumbnailDiskCache thumbnailCache;
   final Stats stats;
   final List<BitmapHunter> batch;
+  final FrameBatcher frameBatcher;
+  final HostScheduler hostScheduler;
+  final RetryPolicy retryPolicy;
   final NetworkBroadcastReceiver receiver;
   final boolean scansNetworkChanges;
 
   boolean airplaneMode;
 
-  Dispatcher(Context context, ExecutorService service, Handler mainThreadHandler,
-      Downloader downloader, Cache cache, Stats stats) {
+  Dispatcher(Context context, ExecutorService service, ExecutorService decodeService,
+      ExecutorService diskService, Handler mainThreadHandler, Downloader downloader, Cache cache,
+      ThumbnailDiskCache thumbnailCache, Stats stats, EventQueue events,
+      FrameBatcher frameBatcher, HostScheduler hostScheduler, RetryPolicy retryPolicy) {
     this.dispatcherThread = new DispatcherThread();
     this.dispatcherThread.start();
     Utils.flushStackLocalLeaks(dispatcherThread.getLooper());
     this.context = context;
     this.service = service;
+    this.decodeService = decodeService;
+    this.diskService = diskService;
     this.hunterMap = new LinkedHashMap<>();
+    this.fetchMap = new HashMap<>();
     this.failedActions = new WeakHashMap<>();
     this.pausedActions = new WeakHashMap<>();
     this.pausedTags = new HashSet<>();
     this.handler = new DispatcherHandler(dispatcherThread.getLooper(), this);
+    this.events = events;
     this.downloader = downloader;
     this.mainThreadHandler = mainThreadHandler;
     this.cache = cache;
+    this.thumbnailCache = thumbnailCache;
     this.stats = stats;
     this.batch = new ArrayList<>(4);
+    this.frameBatcher = frameBatcher;
+    this.hostScheduler = hostScheduler;
+    this.retryPolicy = retryPolicy;
     this.airplaneMode = Utils.isAirplaneModeOn(this.context);
     this.scansNetworkChanges = hasPermission(context, Manifest.permission.ACCESS_NETWORK_STATE);
     this.receiver = new NetworkBroadcastReceiver(this);
@@ -124,6 +169,8 @@ class Dispatcher {
     if (service instanceof PicassoExecutorService) {
       service.shutdown();
     }
+    decodeService.shutdown();
+    diskService.shutdown();
     downloader.shutdown();
     dispatcherThread.quit();
     // Unregister network broadcast receiver on the main thread.
@@ -135,40 +182,99 @@ class Dispatcher {
   }
 
   void dispatchSubmit(Action action) {
-    handler.sendMessage(handler.obtainMessage(REQUEST_SUBMIT, action));
+    send(REQUEST_SUBMIT, action);
   }
 
   void dispatchCancel(Action action) {
-    handler.sendMessage(handler.obtainMessage(REQUEST_CANCEL, action));
+    send(REQUEST_CANCEL, action);
   }
 
   void dispatchPauseTag(Object tag) {
-    handler.sendMessage(handler.obtainMessage(TAG_PAUSE, tag));
+    send(TAG_PAUSE, tag);
   }
 
   void dispatchResumeTag(Object tag) {
-    handler.sendMessage(handler.obtainMessage(TAG_RESUME, tag));
+    send(TAG_RESUME, tag);
   }
 
   void dispatchComplete(BitmapHunter hunter) {
-    handler.sendMessage(handler.obtainMessage(HUNTER_COMPLETE, hunter));
+    send(HUNTER_COMPLETE, hunter);
   }
 
   void dispatchRetry(BitmapHunter hunter) {
-    handler.sendMessageDelayed(handler.obtainMessage(HUNTER_RETRY, hunter), RETRY_DELAY);
+    send(HUNTER_RETRY, hunter);
+  }
+
+  void dispatchDecode(BitmapHunter hunter) {
+    send(HUNTER_DECODE, hunter);
   }
 
   void dispatchFailed(BitmapHunter hunter) {
-    handler.sendMessage(handler.obtainMessage(HUNTER_DECODE_FAILED, hunter));
+    send(HUNTER_DECODE_FAILED, hunter);
+  }
+
+  void dispatchThumbnailInvalidate(String sourceKey) {
+    send(THUMBNAIL_INVALIDATE, sourceKey);
+  }
+
+  void dispatchThumbnailWrite(final String key, final Bitmap bitmap) {
+    if (thumbnailCache == null || diskService.isShutdown()) {
+      return;
+    }
+    // The hunter delivers its result without waiting for the file to be written.
+    diskService.execute(new Runnable() {
+      @Override public void run() {
+        thumbnailCache.set(key, bitmap);
+      }
+    });
+  }
+
+  void dispatchWarmStart(final Picasso picasso) {
+    // Only the loaded requests reach the dispatcher thread, which must not wait for the file.
+    diskService.execute(new Runnable() {
+      @Override public void run() {
+        List<Request> requests = picasso.warmStart.load();
+        List<Action> actions = new ArrayList<>(requests.size());
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0, n = requests.size(); i < n; i++) {
+          Request request = requests.get(i);
+          // Only decode images which are already on disk, without delaying requests for the
+          // network.
+          actions.add(new FetchAction(picasso, request, 0, NetworkPolicy.OFFLINE.index, null,
+              createKey(request, new StringBuilder()), null));
+        }
+        send(WARM_START, actions);
+      }
+    });
+  }
+
+  void dispatchWarmStartSave(WarmStart warmStart) {
+    handler.sendMessageDelayed(handler.obtainMessage(WARM_START_SAVE, warmStart),
+        WARM_START_SAVE_DELAY);
   }
 
   void dispatchNetworkStateChange(NetworkInfo info) {
-    handler.sendMessage(handler.obtainMessage(NETWORK_STATE_CHANGE, info));
+    send(NETWORK_STATE_CHANGE, info);
   }
 
   void dispatchAirplaneModeChange(boolean airplaneMode) {
-    handler.sendMessage(handler.obtainMessage(AIRPLANE_MODE_CHANGE,
-        airplaneMode ? AIRPLANE_MODE_ON : AIRPLANE_MODE_OFF, 0));
+    send(AIRPLANE_MODE_CHANGE, airplaneMode ? AIRPLANE_MODE_ON : AIRPLANE_MODE_OFF, null);
+  }
+
+  private void send(int what, Object obj) {
+    send(what, 0, obj);
+  }
+
+  /**
+   * Send an event to the dispatcher thread, through the lock free event queue when there is one.
+   * Delayed messages always go through the handler.
+   */
+  private void send(int what, int arg, Object obj) {
+    if (events == null) {
+      handler.sendMessage(handler.obtainMessage(what, arg, 0, obj));
+    } else if (events.offer(what, arg, obj)) {
+      handler.sendEmptyMessage(EVENTS_DRAIN);
+    }
   }
 
   void performSubmit(Action action) {
@@ -187,7 +293,11 @@ class Dispatcher {
 
     BitmapHunter hunter = hunterMap.get(action.getKey());
     if (hunter != null) {
+      Picasso.Priority priority = hunter.getPriority();
       hunter.attach(action);
+      if (hunter.getPriority() != priority) {
+        raisePriority(hunter);
+      }
       return;
     }
 
@@ -199,7 +309,9 @@ class Dispatcher {
     }
 
     hunter = forRequest(action.getPicasso(), this, cache, stats, action);
-    hunter.future = service.submit(hunter);
+    if (!coalesce(hunter)) {
+      submit(hunter);
+    }
     hunterMap.put(action.getKey(), hunter);
     if (dismissFailed) {
       failedActions.remove(action.getTarget());
@@ -217,6 +329,7 @@ class Dispatcher {
       hunter.detach(action);
       if (hunter.cancel()) {
         hunterMap.remove(key);
+        finishFetch(hunter);
         if (action.getPicasso().loggingEnabled) {
           log(OWNER_DISPATCHER, VERB_CANCELED, action.getRequest().logId());
         }
@@ -287,6 +400,7 @@ class Dispatcher {
       // had the tag being paused here.
       if (hunter.cancel()) {
         it.remove();
+        finishFetch(hunter);
         if (loggingEnabled) {
           log(OWNER_DISPATCHER, VERB_CANCELED, getLogIdsForHunter(hunter), "all actions paused");
         }
@@ -317,6 +431,10 @@ class Dispatcher {
     }
   }
 
+  /**
+   * Decide whether a failed hunter retries. One which does leaves the fetch stage right away, so it
+   * holds no slot of its host while it backs off, and is only submitted again after the delay.
+   */
   void performRetry(BitmapHunter hunter) {
     if (hunter.isCancelled()) return;
 
@@ -325,20 +443,36 @@ class Dispatcher {
       return;
     }
 
+    int attempts = hunter.getRetryAttempts();
     NetworkInfo networkInfo = null;
     if (scansNetworkChanges) {
       ConnectivityManager connectivityManager = getService(context, CONNECTIVITY_SERVICE);
       networkInfo = connectivityManager.getActiveNetworkInfo();
     }
 
-    if (hunter.shouldRetry(airplaneMode, networkInfo)) {
+    boolean shouldRetry = hunter.shouldRetry(airplaneMode, networkInfo);
+    if (shouldRetry && retryPolicy != null
+        && !retryPolicy.tryAcquire(SystemClock.uptimeMillis())) {
+      shouldRetry = false;
+      stats.dispatchRetryThrottled();
+      if (hunter.getPicasso().loggingEnabled) {
+        log(OWNER_DISPATCHER, VERB_IGNORED, getLogIdsForHunter(hunter),
+            "retry because the retry budget is spent");
+      }
+    }
+
+    if (shouldRetry) {
+      stats.dispatchRetry(hunter.requestHandler);
       if (hunter.getPicasso().loggingEnabled) {
         log(OWNER_DISPATCHER, VERB_RETRYING, getLogIdsForHunter(hunter));
       }
       if (hunter.getException() instanceof NetworkRequestHandler.ContentLengthException) {
         hunter.networkPolicy |= NetworkPolicy.NO_CACHE.index;
       }
-      hunter.future = service.submit(hunter);
+      // Hunters waiting on its fetch go on without it.
+      finishFetch(hunter);
+      long delay = retryPolicy != null ? retryPolicy.delayMillis(attempts) : RETRY_DELAY;
+      handler.sendMessageDelayed(handler.obtainMessage(HUNTER_RESUBMIT, hunter), delay);
     } else {
       // Mark for replay only if we observe network info changes and support replay.
       boolean willReplay = scansNetworkChanges && hunter.supportsReplay();
@@ -349,11 +483,58 @@ class Dispatcher {
     }
   }
 
+  /** Submit a hunter again once it backed off from a failure. */
+  void performResubmit(BitmapHunter hunter) {
+    List<Action> actions = hunter.getActions();
+    if (hunter.getAction() == null && (actions == null || actions.isEmpty())) {
+      // Every action was detached while backing off.
+      hunterMap.remove(hunter.getKey());
+      return;
+    }
+    if (service.isShutdown()) {
+      performError(hunter, false);
+      return;
+    }
+    // Only network hunters retry so they always start over on the fetch stage, behind the hunters
+    // already waiting for a slot.
+    if (!coalesce(hunter)) {
+      submitFetch(hunter);
+    }
+  }
+
+  void performDecode(BitmapHunter hunter) {
+    if (decodeService.isShutdown()) {
+      return;
+    }
+    if (hunter.isCancelled()) {
+      // Canceled and cleaned up while fetching, so only the fetched bytes are left.
+      Utils.closeQuietly(hunter.fetched.getStream());
+      return;
+    }
+    releaseHost(hunter, true);
+    List<Action> actions = hunter.getActions();
+    if (hunter.getAction() == null && (actions == null || actions.isEmpty())) {
+      // Every action was detached while fetching. Followers still get the fetched bytes, which
+      // are only closed here since the hunter never reaches the decode service.
+      hunterMap.remove(hunter.getKey());
+      finishFetch(hunter);
+      Utils.closeQuietly(hunter.fetched.getStream());
+      if (hunter.getPicasso().loggingEnabled) {
+        log(OWNER_DISPATCHER, VERB_CANCELED, getLogIdsForHunter(hunter), "before decoding");
+      }
+      return;
+    }
+    // Share the fetched bytes before the hunter gets a chance to release them.
+    finishFetch(hunter);
+    hunter.future = decodeService.submit(hunter);
+  }
+
   void performComplete(BitmapHunter hunter) {
     if (shouldWriteToMemoryCache(hunter.getMemoryPolicy())) {
       cache.set(hunter.getKey(), hunter.getResult());
     }
     hunterMap.remove(hunter.getKey());
+    finishFetch(hunter);
     batch(hunter);
     if (hunter.getPicasso().loggingEnabled) {
       log(OWNER_DISPATCHER, VERB_BATCHED, getLogIdsForHunter(hunter), "for completion");
@@ -363,7 +544,11 @@ class Dispatcher {
   void performBatchComplete() {
     List<BitmapHunter> copy = new ArrayList<>(batch);
     batch.clear();
-    mainThreadHandler.sendMessage(mainThreadHandler.obtainMessage(HUNTER_BATCH_COMPLETE, copy));
+    if (frameBatcher != null) {
+      frameBatcher.deliver(copy);
+    } else {
+      mainThreadHandler.sendMessage(mainThreadHandler.obtainMessage(HUNTER_BATCH_COMPLETE, copy));
+    }
     logBatch(copy);
   }
 
@@ -373,9 +558,42 @@ class Dispatcher {
           "for error" + (willReplay ? " (will replay)" : ""));
     }
     hunterMap.remove(hunter.getKey());
+    finishFetch(hunter);
     batch(hunter);
   }
 
+  void performThumbnailInvalidate(final String sourceKey) {
+    if (thumbnailCache == null || diskService.isShutdown()) {
+      return;
+    }
+    // Hunters submitted after the invalidation are handled after this, so they cannot read a
+    // removed thumbnail even before its files are deleted.
+    thumbnailCache.hide(sourceKey);
+    diskService.execute(new Runnable() {
+      @Override public void run() {
+        thumbnailCache.remove(sourceKey);
+      }
+    });
+  }
+
+  void performWarmStart(List<Action> actions) {
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, n = actions.size(); i < n; i++) {
+      performSubmit(actions.get(i));
+    }
+  }
+
+  void performWarmStartSave(final WarmStart warmStart) {
+    if (diskService.isShutdown()) {
+      return;
+    }
+    diskService.execute(new Runnable() {
+      @Override public void run() {
+        warmStart.save();
+      }
+    });
+  }
+
   void performAirplaneModeChange(boolean airplaneMode) {
     this.airplaneMode = airplaneMode;
   }
@@ -387,10 +605,191 @@ class Dispatcher {
     // Intentionally check only if isConnected() here before we flush out failed actions.
     if (info != null && info.isConnected()) {
       flushFailedActions();
+    } else {
+      // A paced replay goes on once the network is back.
+      handler.removeMessages(REPLAY_NEXT);
+    }
+  }
+
+  /**
+   * Replay the next batch of failed actions, the ones of the highest priority first, and schedule
+   * the batch after it. Actions which can no longer show their image are dropped instead.
+   */
+  void performReplayNext() {
+    List<Action> replays = new ArrayList<>(failedActions.size());
+    for (Iterator<Action> it = failedActions.values().iterator(); it.hasNext();) {
+      Action action = it.next();
+      if (isTargetGone(action)) {
+        it.remove();
+        if (action.getPicasso().loggingEnabled) {
+          log(OWNER_DISPATCHER, VERB_IGNORED, action.getRequest().logId(),
+              "from replaying because its target is gone");
+        }
+      } else {
+        replays.add(action);
+      }
+    }
+    Collections.sort(replays, REPLAY_ORDER);
+    for (int i = 0, n = Math.min(replays.size(), retryPolicy.maxReplays); i < n; i++) {
+      Action action = replays.get(i);
+      failedActions.values().remove(action);
+      if (action.getPicasso().loggingEnabled) {
+        log(OWNER_DISPATCHER, VERB_REPLAYING, action.getRequest().logId());
+      }
+      performSubmit(action, false);
+    }
+    if (!failedActions.isEmpty()) {
+      handler.sendEmptyMessageDelayed(REPLAY_NEXT, retryPolicy.replayIntervalMillis);
+    }
+  }
+
+  /**
+   * Submit a hunter to the first stage of its pipeline. Hunters which load over the network start
+   * on the fetch stage and everything else goes straight to the decode stage.
+   */
+  private void submit(BitmapHunter hunter) {
+    if (hunter.requestHandler.loadsLocally()) {
+      hunter.future = decodeService.submit(hunter);
+    } else {
+      submitFetch(hunter);
+    }
+  }
+
+  /**
+   * Submit a network hunter to the fetch stage, or leave it waiting without a future until its
+   * host has a free slot.
+   */
+  private void submitFetch(BitmapHunter hunter) {
+    if (hostScheduler != null
+        && !hostScheduler.tryAcquire(hunter, SystemClock.uptimeMillis())) {
+      hunter.future = null;
+      if (hunter.getPicasso().loggingEnabled) {
+        log(OWNER_DISPATCHER, VERB_PAUSED, getLogIdsForHunter(hunter),
+            "until its host has a free slot");
+      }
+      return;
+    }
+    hunter.future = service.submit(hunter);
+  }
+
+  /** Give the slot of a hunter leaving the fetch stage to the next waiting hunter, if any. */
+  private void releaseHost(BitmapHunter hunter, boolean fetched) {
+    if (hostScheduler == null
+        || !hostScheduler.release(hunter, SystemClock.uptimeMillis(), fetched)) {
+      return;
+    }
+    BitmapHunter next;
+    while ((next = hostScheduler.poll(SystemClock.uptimeMillis())) != null) {
+      List<Action> joined = next.getActions();
+      if (next.getAction() == null && (joined == null || joined.isEmpty())) {
+        // Every action was detached while waiting. Pass the slot on.
+        hostScheduler.release(next, SystemClock.uptimeMillis(), false);
+        hunterMap.remove(next.getKey());
+        finishFetch(next);
+        continue;
+      }
+      next.future = service.submit(next);
+    }
+  }
+
+  /**
+   * Move a queued hunter forward after an action of higher priority joined it. A hunter waiting on
+   * the fetch of another hunter moves that one forward instead.
+   */
+  private void raisePriority(BitmapHunter hunter) {
+    BitmapHunter queued = hunter;
+    if (hunter.future == null) {
+      queued = fetchMap.get(getSourceKey(hunter.getKey()));
+      if (queued == null || queued.future == null) {
+        return;
+      }
+    }
+    Picasso.Priority priority = hunter.getPriority();
+    boolean raised = false;
+    if (service instanceof PicassoExecutorService) {
+      raised = ((PicassoExecutorService) service).raisePriority(queued.future, priority);
+    }
+    if (!raised && decodeService instanceof PicassoExecutorService) {
+      raised = ((PicassoExecutorService) decodeService).raisePriority(queued.future, priority);
+    }
+    if (raised && hunter.getPicasso().loggingEnabled) {
+      log(OWNER_DISPATCHER, VERB_CHANGED, getLogIdsForHunter(queued),
+          "to priority " + priority);
+    }
+  }
+
+  /**
+   * Attach a hunter which loads over the network to the hunter already fetching the same source,
+   * if there is one. Returns false if the hunter has to fetch on its own.
+   */
+  private boolean coalesce(BitmapHunter hunter) {
+    if (hunter.requestHandler.loadsLocally()) {
+      return false;
+    }
+    String sourceKey = getSourceKey(hunter.getKey());
+    BitmapHunter fetching = fetchMap.get(sourceKey);
+    if (fetching == null) {
+      fetchMap.put(sourceKey, hunter);
+      return false;
+    }
+    // A different network policy may allow or forbid a response the other hunter can't use.
+    if (fetching.networkPolicy != hunter.networkPolicy) {
+      return false;
+    }
+    if (fetching.followers == null) {
+      fetching.followers = new ArrayList<>(2);
+    }
+    fetching.followers.add(hunter);
+    if (hunter.getPicasso().loggingEnabled) {
+      log(OWNER_DISPATCHER, VERB_JOINED, getLogIdsForHunter(hunter),
+          "to fetch of " + getLogIdsForHunter(fetching));
+    }
+    return true;
+  }
+
+  /**
+   * Called when a hunter leaves the fetch stage. Hunters waiting on its fetch go on to decode the
+   * same bytes or, if the fetch produced none, fetch again on their own.
+   */
+  private void finishFetch(BitmapHunter hunter) {
+    String sourceKey = getSourceKey(hunter.getKey());
+    if (fetchMap.get(sourceKey) == hunter) {
+      fetchMap.remove(sourceKey);
+    }
+    releaseHost(hunter, false);
+    List<BitmapHunter> followers = hunter.followers;
+    if (followers == null) {
+      return;
+    }
+    hunter.followers = null;
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, n = followers.size(); i < n; i++) {
+      BitmapHunter follower = followers.get(i);
+      List<Action> joined = follower.getActions();
+      if (follower.getAction() == null && (joined == null || joined.isEmpty())) {
+        // Every action was detached while waiting.
+        hunterMap.remove(follower.getKey());
+        continue;
+      }
+      RequestHandler.Result fetched = hunter.shareFetched();
+      if (fetched != null) {
+        follower.fetched = fetched;
+        follower.future = decodeService.submit(follower);
+        stats.dispatchFetchCoalesced();
+      } else if (!coalesce(follower)) {
+        submitFetch(follower);
+      }
     }
   }
 
   private void flushFailedActions() {
+    if (retryPolicy != null && retryPolicy.maxReplays > 0) {
+      // A replay already under way keeps its pace.
+      if (!failedActions.isEmpty() && !handler.hasMessages(REPLAY_NEXT)) {
+        performReplayNext();
+      }
+      return;
+    }
     if (!failedActions.isEmpty()) {
       Iterator<Action> iterator = failedActions.values().iterator();
       while (iterator.hasNext()) {
@@ -404,6 +803,15 @@ class Dispatcher {
     }
   }
 
+  /** Returns true if the target of {@code action} was collected, canceled or left its window. */
+  private static boolean isTargetGone(Action action) {
+    Object target = action.getTarget();
+    if (target == null || action.isCancelled()) {
+      return true;
+    }
+    return target instanceof View && ((View) target).getWindowToken() == null;
+  }
+
   private void markForReplay(BitmapHunter hunter) {
     Action action = hunter.getAction();
     if (action != null) {
@@ -431,9 +839,11 @@ class Dispatcher {
     if (hunter.isCancelled()) {
       return;
     }
+    hunter.batchedMillis = SystemClock.uptimeMillis();
     batch.add(hunter);
     if (!handler.hasMessages(HUNTER_DELAY_NEXT_BATCH)) {
-      handler.sendEmptyMessageDelayed(HUNTER_DELAY_NEXT_BATCH, BATCH_DELAY);
+      int delay = frameBatcher != null ? frameBatcher.batchDelayMillis() : BATCH_DELAY;
+      handler.sendEmptyMessageDelayed(HUNTER_DELAY_NEXT_BATCH, delay);
     }
   }
 
@@ -451,7 +861,7 @@ class Dispatcher {
     }
   }
 
-  private static class DispatcherHandler extends Handler {
+  private static class DispatcherHandler extends Handler implements EventQueue.Consumer {
     private final Dispatcher dispatcher;
 
     public DispatcherHandler(Looper looper, Dispatcher dispatcher) {
@@ -459,40 +869,60 @@ class Dispatcher {
       this.dispatcher = dispatcher;
     }
 
-    @Override public void handleMessage(final Message msg) {
-      switch (msg.what) {
+    @Override public void handleMessage(Message msg) {
+      if (msg.what == EVENTS_DRAIN) {
+        if (dispatcher.events.drain(this, EVENTS_PER_DRAIN)) {
+          sendEmptyMessage(EVENTS_DRAIN);
+        }
+      } else {
+        onEvent(msg.what, msg.arg1, msg.obj);
+      }
+    }
+
+    @Override public void onEvent(final int what, int arg, Object obj) {
+      switch (what) {
         case REQUEST_SUBMIT: {
-          Action action = (Action) msg.obj;
+          Action action = (Action) obj;
           dispatcher.performSubmit(action);
           break;
         }
         case REQUEST_CANCEL: {
-          Action action = (Action) msg.obj;
+          Action action = (Action) obj;
           dispatcher.performCancel(action);
           break;
         }
         case TAG_PAUSE: {
-          Object tag = msg.obj;
+          Object tag = obj;
           dispatcher.performPauseTag(tag);
           break;
         }
         case TAG_RESUME: {
-          Object tag = msg.obj;
+          Object tag = obj;
           dispatcher.performResumeTag(tag);
           break;
         }
         case HUNTER_COMPLETE: {
-          BitmapHunter hunter = (BitmapHunter) msg.obj;
+          BitmapHunter hunter = (BitmapHunter) obj;
           dispatcher.performComplete(hunter);
           break;
         }
+        case HUNTER_DECODE: {
+          BitmapHunter hunter = (BitmapHunter) obj;
+          dispatcher.performDecode(hunter);
+          break;
+        }
         case HUNTER_RETRY: {
-          BitmapHunter hunter = (BitmapHunter) msg.obj;
+          BitmapHunter hunter = (BitmapHunter) obj;
           dispatcher.performRetry(hunter);
           break;
         }
+        case HUNTER_RESUBMIT: {
+          BitmapHunter hunter = (BitmapHunter) obj;
+          dispatcher.performResubmit(hunter);
+          break;
+        }
         case HUNTER_DECODE_FAILED: {
-          BitmapHunter hunter = (BitmapHunter) msg.obj;
+          BitmapHunter hunter = (BitmapHunter) obj;
           dispatcher.performError(hunter, false);
           break;
         }
@@ -500,19 +930,38 @@ class Dispatcher {
           dispatcher.performBatchComplete();
           break;
         }
+        case THUMBNAIL_INVALIDATE: {
+          String sourceKey = (String) obj;
+          dispatcher.performThumbnailInvalidate(sourceKey);
+          break;
+        }
+        case WARM_START: {
+          @SuppressWarnings("unchecked") List<Action> actions = (List<Action>) obj;
+          dispatcher.performWarmStart(actions);
+          break;
+        }
+        case WARM_START_SAVE: {
+          WarmStart warmStart = (WarmStart) obj;
+          dispatcher.performWarmStartSave(warmStart);
+          break;
+        }
         case NETWORK_STATE_CHANGE: {
-          NetworkInfo info = (NetworkInfo) msg.obj;
+          NetworkInfo info = (NetworkInfo) obj;
           dispatcher.performNetworkStateChange(info);
           break;
         }
         case AIRPLANE_MODE_CHANGE: {
-          dispatcher.performAirplaneModeChange(msg.arg1 == AIRPLANE_MODE_ON);
+          dispatcher.performAirplaneModeChange(arg == AIRPLANE_MODE_ON);
+          break;
+        }
+        case REPLAY_NEXT: {
+          dispatcher.performReplayNext();
           break;
         }
         default:
           Picasso.HANDLER.post(new Runnable() {
             @Override public void run() {
-              throw new AssertionError("Unknown handler message received: " + msg.what);
+              throw new AssertionError("Unknown handler message received: " + what);
             }
           });
       }
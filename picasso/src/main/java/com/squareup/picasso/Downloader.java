@@ -43,6 +43,92 @@ public interface Downloader {
    */
   void shutdown();
 
+  /**
+   * A {@link Downloader} which can abort a download in progress, such as when every request
+   * waiting for the image was canceled. Picasso calls {@link #load(Uri, int, Cancellation)}
+   * instead of {@link #load(Uri, int)} for downloaders of this type.
+   */
+  interface Cancelable extends Downloader {
+    /**
+     * Like {@link #load(Uri, int)}, but aborts the download once {@code cancellation} is
+     * canceled, including while the returned stream is being read. Reads of an aborted download
+     * may throw an {@link IOException}.
+     */
+    @Nullable Response load(@NonNull Uri uri, int networkPolicy,
+        @NonNull Cancellation cancellation) throws IOException;
+  }
+
+  /**
+   * A {@link Downloader} which can download without blocking the calling thread. Picasso hands
+   * downloads of this type over with {@link #enqueue} instead of waiting for them on one of its
+   * own threads, so far more downloads can be in flight than Picasso has threads.
+   */
+  interface Async extends Cancelable {
+    /**
+     * Start downloading the specified image {@code uri} and return right away. The outcome is
+     * passed to {@code callback} exactly once, on a thread of the downloader. The download is
+     * aborted once {@code cancellation} is canceled, like with
+     * {@link #load(Uri, int, Cancellation)}.
+     */
+    void enqueue(@NonNull Uri uri, int networkPolicy, @NonNull Cancellation cancellation,
+        @NonNull Callback callback);
+  }
+
+  /** Receives the outcome of a download started with {@link Async#enqueue}. */
+  interface Callback {
+    /**
+     * Called once the response arrived. The stream of {@code response} may be read on the calling
+     * thread, which is one of the downloader.
+     */
+    void onResponse(@NonNull Response response);
+
+    /** Called when the image cannot successfully be loaded. */
+    void onFailure(@NonNull IOException e);
+  }
+
+  /** Tells a download that the request waiting for it was canceled. */
+  final class Cancellation {
+    private boolean canceled;
+    private Runnable onCancel;
+
+    /**
+     * Run {@code onCancel} once the request is canceled, or right away if it already was. Replaces
+     * the action registered by an earlier download of the same request.
+     */
+    public void setOnCancel(@Nullable Runnable onCancel) {
+      synchronized (this) {
+        if (!canceled) {
+          this.onCancel = onCancel;
+          return;
+        }
+      }
+      if (onCancel != null) {
+        onCancel.run();
+      }
+    }
+
+    /** Returns true if the request waiting for the download was canceled. */
+    public synchronized boolean isCanceled() {
+      return canceled;
+    }
+
+    void cancel() {
+      Runnable onCancel;
+      synchronized (this) {
+        if (canceled) {
+          return;
+        }
+        canceled = true;
+        onCancel = this.onCancel;
+        this.onCancel = null;
+      }
+      // Outside the lock since aborting a download may take a while.
+      if (onCancel != null) {
+        onCancel.run();
+      }
+    }
+  }
+
   /** Thrown for non-2XX responses. */
   class ResponseException extends IOException {
     final boolean localCacheOnly;
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A memory cache of the encoded bytes of downloaded images, keyed by their uri or stable key.
+ * Encoded images take a fraction of the memory of decoded bitmaps, so this keeps many more of
+ * them than the bitmap cache. A bitmap cache miss can then decode from memory instead of going
+ * through the {@link Downloader} again. Entries are evicted least recently used first.
+ */
+final class EncodedMemoryCache {
+  private final LinkedHashMap<String, byte[]> map = new LinkedHashMap<>(0, 0.75f, true);
+  private final int maxSize;
+
+  private int size;
+  private int hitCount;
+  private int missCount;
+
+  EncodedMemoryCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive.");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /** Returns the encoded image for {@code sourceKey}, or null. The array must not be modified. */
+  synchronized byte[] get(String sourceKey) {
+    byte[] bytes = map.get(sourceKey);
+    if (bytes != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return bytes;
+  }
+
+  /** Store {@code length} bytes of {@code buffer} as the encoded image for {@code sourceKey}. */
+  void set(String sourceKey, byte[] buffer, int length) {
+    if (length > maxSize) {
+      return;
+    }
+    byte[] bytes = new byte[length];
+    System.arraycopy(buffer, 0, bytes, 0, length);
+
+    synchronized (this) {
+      byte[] previous = map.put(sourceKey, bytes);
+      size += length;
+      if (previous != null) {
+        size -= previous.length;
+      }
+      trimToSize(maxSize);
+    }
+  }
+
+  /** Remove the encoded image for {@code sourceKey}. */
+  synchronized void remove(String sourceKey) {
+    byte[] previous = map.remove(sourceKey);
+    if (previous != null) {
+      size -= previous.length;
+    }
+  }
+
+  synchronized void clear() {
+    trimToSize(-1);
+  }
+
+  /** Evict least recently used images until the cache holds at most {@code maxSize} bytes. */
+  synchronized void trimToSize(int maxSize) {
+    Iterator<Map.Entry<String, byte[]>> iterator = map.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      size -= iterator.next().getValue().length;
+      iterator.remove();
+    }
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  int maxSize() {
+    return maxSize;
+  }
+
+  synchronized int hitCount() {
+    return hitCount;
+  }
+
+  synchronized int missCount() {
+    return missCount;
+  }
+}
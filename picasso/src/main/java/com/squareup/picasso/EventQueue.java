@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock free queue of events which any number of threads may add to and a single thread drains.
+ * Adding an event takes one atomic swap and never blocks, unlike sending a {@code Message} which
+ * locks the target {@code MessageQueue}.
+ * <p>
+ * The queue tracks whether its consumer has been scheduled to drain it, so that a burst of events
+ * needs only a single wake up of the consumer thread. {@link #offer} returns true for the event
+ * which has to schedule it, and {@link #drain} hands events over in the order they were added.
+ */
+final class EventQueue {
+  interface Consumer {
+    void onEvent(int what, int arg, Object obj);
+  }
+
+  private final AtomicReference<Event> tail;
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  /** The last event handed to the consumer, or the initial stub. Only used by the consumer. */
+  private Event head;
+
+  EventQueue() {
+    Event stub = new Event(0, 0, null);
+    head = stub;
+    tail = new AtomicReference<>(stub);
+  }
+
+  /**
+   * Add an event from any thread. Returns true if the consumer is not scheduled yet and the caller
+   * has to schedule it.
+   */
+  boolean offer(int what, int arg, Object obj) {
+    Event event = new Event(what, arg, obj);
+    Event previous = tail.getAndSet(event);
+    // Until this link is written the consumer sees the queue end at the previous event. It will
+    // be scheduled again below if it already finished draining.
+    previous.next = event;
+    return scheduled.compareAndSet(false, true);
+  }
+
+  /**
+   * Hand up to {@code maxEvents} events to {@code consumer} on the consumer thread. Returns true
+   * if events may be left over and the caller has to schedule the consumer again.
+   */
+  boolean drain(Consumer consumer, int maxEvents) {
+    // Events added from now on schedule another drain, even if this one already handles them.
+    scheduled.set(false);
+    for (int i = 0; i < maxEvents; i++) {
+      Event event = head.next;
+      if (event == null) {
+        return false;
+      }
+      head = event;
+      Object obj = event.obj;
+      // The event becomes the new stub, so it must not keep its object reachable.
+      event.obj = null;
+      consumer.onEvent(event.what, event.arg, obj);
+    }
+    return head.next != null && scheduled.compareAndSet(false, true);
+  }
+
+  /** Returns true if no events are waiting. Only accurate on the consumer thread. */
+  boolean isEmpty() {
+    return head.next == null;
+  }
+
+  private static final class Event {
+    final int what;
+    final int arg;
+    Object obj;
+    volatile Event next;
+
+    Event(int what, int arg, Object obj) {
+      this.what = what;
+      this.arg = arg;
+      this.obj = obj;
+    }
+  }
+}
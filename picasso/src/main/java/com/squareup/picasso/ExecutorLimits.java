@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/**
+ * Limits for the default executors which adapt to measurements instead of the network type. The
+ * fetch stage is I/O bound and the decode stage is CPU bound, so each has its own limit.
+ * <p>
+ * The fetch limit follows the ratio of the time hunters spend waiting to the time they spend
+ * computing: {@code cores * (1 + wait / compute)}. It grows one thread at a time, and only while
+ * work is queued. If a step up does not raise the download throughput, the network is saturated
+ * and the limit stays below that step until the network changes. The decode stage leaves one core
+ * for the main thread.
+ */
+final class ExecutorLimits {
+  static final int MAX_FETCH_CONCURRENCY = 16;
+  private static final int INITIAL_FETCH_CONCURRENCY = 3;
+  /** The number of finished hunters between two adjustments. */
+  static final int SAMPLE_SIZE = 16;
+  /** The relative throughput gain which justifies one more fetching thread. */
+  private static final double MIN_THROUGHPUT_GAIN = 0.05;
+
+  private final int cores;
+  private final int decodeConcurrency;
+
+  private int fetchConcurrency = INITIAL_FETCH_CONCURRENCY;
+  private int fetchCeiling = MAX_FETCH_CONCURRENCY;
+
+  private long windowStart;
+  private int samples;
+  private int backloggedSamples;
+  private long wallMillis;
+  private long cpuMillis;
+  private long downloadedBytes;
+
+  private int previousFetchConcurrency;
+  private double previousThroughput;
+
+  ExecutorLimits(int cores, long nowMillis) {
+    this.cores = Math.max(1, cores);
+    this.decodeConcurrency = Math.max(1, this.cores - 1);
+    this.windowStart = nowMillis;
+  }
+
+  /** The number of threads of the fetch stage. */
+  synchronized int fetchConcurrency() {
+    return fetchConcurrency;
+  }
+
+  /** The number of threads of the decode stage. */
+  synchronized int decodeConcurrency() {
+    return decodeConcurrency;
+  }
+
+  /**
+   * Record a finished hunter which took {@code wallMillis} of which {@code cpuMillis} were spent
+   * on its thread. {@code backlogged} is whether other hunters were waiting for a thread.
+   */
+  synchronized void hunterFinished(long wallMillis, long cpuMillis, boolean backlogged,
+      long nowMillis) {
+    this.wallMillis += Math.max(0, wallMillis);
+    this.cpuMillis += Math.max(0, cpuMillis);
+    if (backlogged) {
+      backloggedSamples++;
+    }
+    if (++samples >= SAMPLE_SIZE) {
+      adjust(nowMillis);
+    }
+  }
+
+  /** Record bytes received from the network. */
+  synchronized void bytesDownloaded(long bytes) {
+    downloadedBytes += bytes;
+  }
+
+  /** Forget the throughput of the previous network since the new one may be faster. */
+  synchronized void networkChanged() {
+    fetchCeiling = MAX_FETCH_CONCURRENCY;
+    previousThroughput = 0;
+    previousFetchConcurrency = 0;
+  }
+
+  private void adjust(long nowMillis) {
+    long elapsedMillis = Math.max(1, nowMillis - windowStart);
+    double throughput = downloadedBytes * 1000d / elapsedMillis;
+    boolean backlogged = backloggedSamples * 2 >= samples;
+
+    // Only a window in which the pool was busy says anything about the network.
+    if (backlogged && downloadedBytes > 0) {
+      if (previousThroughput > 0 && fetchConcurrency > previousFetchConcurrency
+          && throughput < previousThroughput * (1 + MIN_THROUGHPUT_GAIN)) {
+        fetchCeiling = previousFetchConcurrency;
+      }
+      previousThroughput = throughput;
+      previousFetchConcurrency = fetchConcurrency;
+    }
+
+    long compute = Math.max(1, cpuMillis);
+    long wait = Math.max(0, wallMillis - cpuMillis);
+    long target = Math.min(fetchCeiling, cores + cores * wait / compute);
+    if (target < fetchConcurrency) {
+      fetchConcurrency = (int) Math.max(1, target);
+    } else if (target > fetchConcurrency && backlogged) {
+      fetchConcurrency++;
+    }
+
+    windowStart = nowMillis;
+    samples = 0;
+    backloggedSamples = 0;
+    wallMillis = 0;
+    cpuMillis = 0;
+    downloadedBytes = 0;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.annotation.TargetApi;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN;
+
+/**
+ * Delivers completed hunters to the main thread in step with its frames instead of after a fixed
+ * delay. The dispatcher collects hunters for about one recent frame time, so images show up on
+ * the next frame when the main thread keeps up and in fewer, larger batches when it does not.
+ * <p>
+ * On the main thread each frame only spends part of the recent frame time on delivery. Hunters
+ * which do not fit are delivered on the following frames, so a large batch never causes a long
+ * frame of its own. Frame times are measured between consecutive frames with pending hunters.
+ */
+final class FrameBatcher {
+  static final int DEFAULT_FRAME_MILLIS = 16;
+  /** The longest frame taken into account and the longest batch delay. */
+  static final int MAX_FRAME_MILLIS = 200;
+  /** The share of a frame which may be spent delivering hunters. */
+  private static final int BUDGET_PERCENT = 50;
+
+  private static final int BATCH = 1;
+  private static final int FRAME = 2;
+
+  private final Handler handler;
+  private final Object frameCallback;
+  /** Hunters waiting for a frame. Only used on the main thread. */
+  private final ArrayDeque<BitmapHunter> pending = new ArrayDeque<>();
+
+  /** Written on the main thread, read by the dispatcher thread. */
+  private volatile int frameMillis = DEFAULT_FRAME_MILLIS;
+  private long lastFrameMillis;
+  private boolean scheduled;
+
+  FrameBatcher(Looper mainLooper) {
+    this.handler = new Handler(mainLooper, new Handler.Callback() {
+      @Override public boolean handleMessage(Message msg) {
+        switch (msg.what) {
+          case BATCH: {
+            @SuppressWarnings("unchecked") List<BitmapHunter> batch = (List<BitmapHunter>) msg.obj;
+            enqueue(batch);
+            return true;
+          }
+          case FRAME:
+            doFrame();
+            return true;
+          default:
+            throw new AssertionError("Unknown handler message received: " + msg.what);
+        }
+      }
+    });
+    this.frameCallback = SDK_INT >= JELLY_BEAN ? ChoreographerCallback.create(this) : null;
+  }
+
+  /** How long the dispatcher should collect hunters before handing them over. */
+  int batchDelayMillis() {
+    return frameMillis;
+  }
+
+  /** Hand a batch to the main thread. Called on the dispatcher thread. */
+  void deliver(List<BitmapHunter> batch) {
+    handler.sendMessage(handler.obtainMessage(BATCH, batch));
+  }
+
+  /** Queue a batch for the next frame. Called on the main thread. */
+  void enqueue(List<BitmapHunter> batch) {
+    pending.addAll(batch);
+    scheduleFrame();
+  }
+
+  /**
+   * Deliver pending hunters until the budget of this frame is spent, at least one of them. Called
+   * on the main thread.
+   */
+  void doFrame() {
+    scheduled = false;
+    long start = SystemClock.uptimeMillis();
+    if (lastFrameMillis != 0) {
+      // The previous frame left hunters behind, so this one followed it directly.
+      long sample = Math.min(MAX_FRAME_MILLIS, Math.max(1, start - lastFrameMillis));
+      frameMillis = (int) ((frameMillis * 3 + sample) / 4);
+      lastFrameMillis = 0;
+    }
+
+    long deadline = start + frameMillis * BUDGET_PERCENT / 100;
+    do {
+      BitmapHunter hunter = pending.poll();
+      if (hunter == null) {
+        return;
+      }
+      hunter.getPicasso().complete(hunter);
+    } while (SystemClock.uptimeMillis() < deadline);
+
+    if (!pending.isEmpty()) {
+      lastFrameMillis = start;
+      scheduleFrame();
+    }
+  }
+
+  /** Hunters waiting for a frame. Only accurate on the main thread. */
+  int pendingCount() {
+    return pending.size();
+  }
+
+  private void scheduleFrame() {
+    if (scheduled) {
+      return;
+    }
+    scheduled = true;
+    if (frameCallback != null) {
+      ChoreographerCallback.post(frameCallback);
+    } else {
+      handler.sendEmptyMessageDelayed(FRAME, DEFAULT_FRAME_MILLIS);
+    }
+  }
+
+  /** Kept apart so that {@link Choreographer} is only loaded where it exists. */
+  @TargetApi(JELLY_BEAN)
+  private static final class ChoreographerCallback implements Choreographer.FrameCallback {
+    private final FrameBatcher batcher;
+
+    private ChoreographerCallback(FrameBatcher batcher) {
+      this.batcher = batcher;
+    }
+
+    static Object create(FrameBatcher batcher) {
+      return new ChoreographerCallback(batcher);
+    }
+
+    static void post(Object callback) {
+      Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) callback);
+    }
+
+    @Override public void doFrame(long frameTimeNanos) {
+      batcher.doFrame();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/**
+ * An approximate count of how often each key was accessed recently, in a count-min sketch of
+ * 4-bit counters. Each key maps to one counter in each of four rows and its frequency is the
+ * smallest of them, so collisions can only overestimate it. Once the number of increments reaches
+ * ten times the capacity every counter is halved, so keys which were popular long ago fade out.
+ * <p>
+ * Not thread safe.
+ */
+final class FrequencySketch {
+  static final int MAX_FREQUENCY = 15;
+
+  private static final int MIN_CAPACITY = 64;
+  private static final int SAMPLE_MULTIPLE = 10;
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  /** Sixteen counters per long, in four groups of four, one counter of a group per row. */
+  private long[] table;
+  private int tableMask;
+  private int sampleSize;
+  private int size;
+
+  FrequencySketch() {
+    ensureCapacity(MIN_CAPACITY);
+  }
+
+  /**
+   * Grow the sketch to track about {@code capacity} keys without many collisions. Growing forgets
+   * all frequencies counted so far.
+   */
+  void ensureCapacity(int capacity) {
+    capacity = Math.max(Math.min(capacity, 1 << 30), MIN_CAPACITY);
+    if (table != null && table.length >= capacity) {
+      return;
+    }
+    table = new long[Integer.highestOneBit(capacity - 1) << 1];
+    tableMask = table.length - 1;
+    sampleSize = SAMPLE_MULTIPLE * capacity;
+    size = 0;
+  }
+
+  /** Returns the estimated number of recent accesses of {@code key}, at most 15. */
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int group = (hash & 3) << 2;
+    int frequency = MAX_FREQUENCY;
+    for (int row = 0; row < 4; row++) {
+      int shift = (group + row) << 2;
+      int count = (int) ((table[indexOf(hash, row)] >>> shift) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /** Record an access of {@code key}. */
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    int group = (hash & 3) << 2;
+    boolean added = false;
+    for (int row = 0; row < 4; row++) {
+      added |= incrementAt(indexOf(hash, row), (group + row) << 2);
+    }
+    if (added && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int index, int shift) {
+    long mask = 0xfL << shift;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << shift;
+      return true;
+    }
+    return false;
+  }
+
+  /** Halve every counter. */
+  void reset() {
+    int odd = 0;
+    for (int i = 0; i < table.length; i++) {
+      odd += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    // Halving an odd counter drops half an increment.
+    size = (size - odd / 2) / 2;
+  }
+
+  private int indexOf(int hash, int row) {
+    long index = (hash + SEEDS[row]) * SEEDS[row];
+    index += index >>> 32;
+    return (int) index & tableMask;
+  }
+
+  private static int spread(int hash) {
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    return (hash >>> 16) ^ hash;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limits how many network hunters are on the fetch stage at once, in total and for a single host.
+ * A hunter holds a slot from its submission to the fetch stage until it leaves it. Hunters over
+ * either limit wait in a queue of their host. When a slot frees up the hosts with waiting hunters
+ * take turns, so a slow host cannot hold every slot while hunters for other hosts wait behind it.
+ * Within a host the waiting hunter of the highest priority goes first.
+ * <p>
+ * Only used on the dispatcher thread, apart from {@link #createSnapshot()}.
+ */
+final class HostScheduler {
+  private final int maxRequests;
+  private final int maxRequestsPerHost;
+
+  private final Map<String, Host> hosts = new LinkedHashMap<>();
+  /** Hosts with waiting hunters in the order they take turns. */
+  private final ArrayDeque<Host> turns = new ArrayDeque<>();
+  /** Hunters holding a slot, with the uptime at which they got it. */
+  private final Map<BitmapHunter, Long> inFlight = new IdentityHashMap<>();
+
+  HostScheduler(int maxRequests, int maxRequestsPerHost) {
+    this.maxRequests = maxRequests;
+    this.maxRequestsPerHost = maxRequestsPerHost;
+  }
+
+  /**
+   * Give {@code hunter} a slot and return true if both limits allow it. Otherwise queue it until
+   * {@link #poll} returns it.
+   */
+  synchronized boolean tryAcquire(BitmapHunter hunter, long nowMillis) {
+    Host host = host(hunter);
+    if (inFlight.size() < maxRequests && host.inFlight < maxRequestsPerHost) {
+      start(host, hunter, nowMillis);
+      return true;
+    }
+    host.waiting.add(hunter);
+    if (host.waiting.size() == 1) {
+      turns.add(host);
+    }
+    return false;
+  }
+
+  /**
+   * Free the slot of {@code hunter}, counting the time it held it towards the latency of its host
+   * if it {@code fetched} the image. Returns false if the hunter held no slot.
+   */
+  synchronized boolean release(BitmapHunter hunter, long nowMillis, boolean fetched) {
+    Long startMillis = inFlight.remove(hunter);
+    if (startMillis == null) {
+      return false;
+    }
+    Host host = host(hunter);
+    host.inFlight--;
+    if (fetched) {
+      long latency = Math.max(0, nowMillis - startMillis);
+      host.fetchCount++;
+      host.totalFetchLatency += latency;
+      host.maxFetchLatency = Math.max(host.maxFetchLatency, latency);
+    }
+    return true;
+  }
+
+  /**
+   * Returns a waiting hunter which may start now and gives it a slot, or null if there is none.
+   * The hosts with waiting hunters take turns.
+   */
+  synchronized BitmapHunter poll(long nowMillis) {
+    if (inFlight.size() >= maxRequests) {
+      return null;
+    }
+    for (int i = 0, n = turns.size(); i < n; i++) {
+      Host host = turns.poll();
+      if (host.inFlight >= maxRequestsPerHost) {
+        turns.add(host);
+        continue;
+      }
+      BitmapHunter hunter = host.removeNext();
+      if (!host.waiting.isEmpty()) {
+        turns.add(host);
+      }
+      start(host, hunter, nowMillis);
+      return hunter;
+    }
+    return null;
+  }
+
+  /** Returns the queue depth and fetch latency of every host, keyed by host name. */
+  synchronized Map<String, StatsSnapshot.HostStats> createSnapshot() {
+    if (hosts.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, StatsSnapshot.HostStats> snapshot = new LinkedHashMap<>(hosts.size());
+    for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+      Host host = entry.getValue();
+      long averageFetchLatency = host.fetchCount > 0 ? host.totalFetchLatency / host.fetchCount : 0;
+      snapshot.put(entry.getKey(), new StatsSnapshot.HostStats(host.inFlight, host.waiting.size(),
+          host.fetchCount, averageFetchLatency, host.maxFetchLatency));
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  private void start(Host host, BitmapHunter hunter, long nowMillis) {
+    host.inFlight++;
+    inFlight.put(hunter, nowMillis);
+  }
+
+  private Host host(BitmapHunter hunter) {
+    Uri uri = hunter.getData().uri;
+    String name = uri != null ? uri.getHost() : null;
+    if (name == null) {
+      name = "";
+    }
+    Host host = hosts.get(name);
+    if (host == null) {
+      host = new Host();
+      hosts.put(name, host);
+    }
+    return host;
+  }
+
+  private static final class Host {
+    final List<BitmapHunter> waiting = new ArrayList<>();
+    int inFlight;
+    int fetchCount;
+    long totalFetchLatency;
+    long maxFetchLatency;
+
+    /** Remove the waiting hunter of the highest priority, the one which waited longest on a tie. */
+    BitmapHunter removeNext() {
+      int next = 0;
+      //noinspection ForLoopReplaceableByForEach
+      for (int i = 1, n = waiting.size(); i < n; i++) {
+        if (waiting.get(i).getPriority().ordinal() > waiting.get(next).getPriority().ordinal()) {
+          next = i;
+        }
+      }
+      return waiting.remove(next);
+    }
+  }
+}
@@ -18,16 +18,22 @@ package com.squareup.picasso;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.squareup.picasso.Utils.KEY_SEPARATOR;
+import static com.squareup.picasso.Utils.canDeriveVariant;
 
 /** A memory cache which uses a least-recently used eviction policy. */
-public class LruCache implements Cache {
+public class LruCache implements Cache, Cache.Trimmable, VariantCache {
   final LinkedHashMap<String, Bitmap> map;
+  /** The keys in {@link #map} for each uri, so that {@link #clearKeyUri} need not scan it. */
+  final HashMap<String, List<String>> uriKeys;
   private final int maxSize;
 
   private int size;
@@ -48,6 +54,7 @@ public class LruCache implements Cache {
     }
     this.maxSize = maxSize;
     this.map = new LinkedHashMap<>(0, 0.75f, true);
+    this.uriKeys = new HashMap<>();
   }
 
   @Override public Bitmap get(@NonNull String key) {
@@ -84,13 +91,16 @@ public class LruCache implements Cache {
       Bitmap previous = map.put(key, bitmap);
       if (previous != null) {
         size -= Utils.getBitmapBytes(previous);
+      } else {
+        addUriKey(key);
       }
     }
 
     trimToSize(maxSize);
   }
 
-  private void trimToSize(int maxSize) {
+  /** Evict least recently used images until the size fits. */
+  @Override public final void trimToSize(int maxSize) {
     while (true) {
       String key;
       Bitmap value;
@@ -108,6 +118,7 @@ public class LruCache implements Cache {
         key = toEvict.getKey();
         value = toEvict.getValue();
         map.remove(key);
+        removeUriKey(key);
         size -= Utils.getBitmapBytes(value);
         evictionCount++;
       }
@@ -132,17 +143,70 @@ public class LruCache implements Cache {
   }
 
   @Override public final synchronized void clearKeyUri(String uri) {
-    int uriLength = uri.length();
-    for (Iterator<Map.Entry<String, Bitmap>> i = map.entrySet().iterator(); i.hasNext();) {
-      Map.Entry<String, Bitmap> entry = i.next();
-      String key = entry.getKey();
-      Bitmap value = entry.getValue();
-      int newlineIndex = key.indexOf(KEY_SEPARATOR);
-      if (newlineIndex == uriLength && key.substring(0, newlineIndex).equals(uri)) {
-        i.remove();
-        size -= Utils.getBitmapBytes(value);
+    List<String> keys = uriKeys.remove(uri);
+    if (keys == null) {
+      return;
+    }
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, count = keys.size(); i < count; i++) {
+      Bitmap value = map.remove(keys.get(i));
+      size -= Utils.getBitmapBytes(value);
+    }
+  }
+
+  @Nullable @Override public final synchronized Bitmap getLargerVariant(String key, Request data) {
+    if (!data.hasSize() || data.purgeable) {
+      return null;
+    }
+    int newlineIndex = key.indexOf(KEY_SEPARATOR);
+    if (newlineIndex == -1) {
+      return null;
+    }
+    List<String> keys = uriKeys.get(key.substring(0, newlineIndex));
+    if (keys == null) {
+      return null;
+    }
+    Bitmap smallest = null;
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, count = keys.size(); i < count; i++) {
+      String variantKey = keys.get(i);
+      if (variantKey.equals(key)) {
+        continue;
+      }
+      Bitmap variant = map.get(variantKey);
+      if (canDeriveVariant(variantKey, newlineIndex + 1, variant, data)
+          && (smallest == null
+          || Utils.getBitmapBytes(variant) < Utils.getBitmapBytes(smallest))) {
+        smallest = variant;
       }
     }
+    return smallest;
+  }
+
+  private void addUriKey(String key) {
+    int newlineIndex = key.indexOf(KEY_SEPARATOR);
+    if (newlineIndex == -1) {
+      return;
+    }
+    String uri = key.substring(0, newlineIndex);
+    List<String> keys = uriKeys.get(uri);
+    if (keys == null) {
+      keys = new ArrayList<>(2);
+      uriKeys.put(uri, keys);
+    }
+    keys.add(key);
+  }
+
+  private void removeUriKey(String key) {
+    int newlineIndex = key.indexOf(KEY_SEPARATOR);
+    if (newlineIndex == -1) {
+      return;
+    }
+    String uri = key.substring(0, newlineIndex);
+    List<String> keys = uriKeys.get(uri);
+    if (keys != null && keys.remove(key) && keys.isEmpty()) {
+      uriKeys.remove(uri);
+    }
   }
 
   /** Returns the number of times {@link #get} returned a value. */
@@ -16,6 +16,7 @@
 package com.squareup.picasso;
 
 import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -44,7 +45,53 @@ class NetworkRequestHandler extends RequestHandler {
   }
 
   @Override @Nullable public Result load(Request request, int networkPolicy) throws IOException {
-    Response response = downloader.load(request.uri, request.networkPolicy);
+    return load(request, networkPolicy, null);
+  }
+
+  /**
+   * Like {@link #load(Request, int)}, but aborts the download once {@code cancellation} is
+   * canceled if the downloader supports it.
+   */
+  @Nullable Result load(Request request, int networkPolicy,
+      @Nullable Downloader.Cancellation cancellation) throws IOException {
+    Response response = cancellation != null && downloader instanceof Downloader.Cancelable
+        ? ((Downloader.Cancelable) downloader).load(request.uri, request.networkPolicy,
+            cancellation)
+        : downloader.load(request.uri, request.networkPolicy);
+    return toResult(response);
+  }
+
+  /** Returns true if {@link #enqueue} can be used instead of the blocking loads. */
+  boolean loadsAsynchronously() {
+    return downloader instanceof Downloader.Async;
+  }
+
+  /**
+   * Like {@link #load(Request, int, Downloader.Cancellation)}, but returns right away and passes
+   * the outcome to {@code callback} on a thread of the downloader. Only valid if
+   * {@link #loadsAsynchronously()}.
+   */
+  void enqueue(Request request, Downloader.Cancellation cancellation, final Callback callback) {
+    ((Downloader.Async) downloader).enqueue(request.uri, request.networkPolicy, cancellation,
+        new Downloader.Callback() {
+          @Override public void onResponse(@NonNull Response response) {
+            Result result;
+            try {
+              result = toResult(response);
+            } catch (IOException e) {
+              callback.onFailure(e);
+              return;
+            }
+            callback.onResult(result);
+          }
+
+          @Override public void onFailure(@NonNull IOException e) {
+            callback.onFailure(e);
+          }
+        });
+  }
+
+  @Nullable private Result toResult(@Nullable Response response) throws IOException {
     if (response == null) {
       return null;
     }
@@ -61,13 +108,17 @@ class NetworkRequestHandler extends RequestHandler {
     if (loadedFrom == NETWORK && response.getContentLength() > 0) {
       stats.dispatchDownloadFinished(response.getContentLength());
     }
-    return new Result(is, loadedFrom);
+    return new Result(null, is, loadedFrom, 0, response.getContentLength());
   }
 
   @Override int getRetryCount() {
     return RETRY_COUNT;
   }
 
+  @Override boolean loadsLocally() {
+    return false;
+  }
+
   @Override boolean shouldRetry(boolean airplaneMode, NetworkInfo info) {
     return info == null || info.isConnected();
   }
@@ -76,6 +127,13 @@ class NetworkRequestHandler extends RequestHandler {
     return true;
   }
 
+  /** Receives the outcome of {@link #enqueue}. */
+  interface Callback {
+    void onResult(@Nullable Result result);
+
+    void onFailure(IOException e);
+  }
+
   static class ContentLengthException extends IOException {
     public ContentLengthException(String message) {
       super(message);
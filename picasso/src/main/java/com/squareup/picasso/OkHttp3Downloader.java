@@ -29,8 +29,12 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.ResponseBody;
 
-/** A {@link Downloader} which uses OkHttp to download images. */
-public final class OkHttp3Downloader implements Downloader {
+/**
+ * A {@link Downloader} which uses OkHttp to download images. Downloads are aborted by canceling
+ * their {@link Call} once no request is waiting for them. Enqueued downloads run on the threads of
+ * the OkHttp dispatcher, which also limits how many of them are in flight.
+ */
+public final class OkHttp3Downloader implements Downloader.Async {
   private final Call.Factory client;
   private final Cache cache;
   private boolean sharedClient = true;
@@ -95,6 +99,47 @@ public final class OkHttp3Downloader implements Downloader {
   }
 
   @Override public Response load(@NonNull Uri uri, int networkPolicy) throws IOException {
+    return execute(newCall(uri, networkPolicy), networkPolicy);
+  }
+
+  @Override public Response load(@NonNull Uri uri, int networkPolicy,
+      @NonNull Cancellation cancellation) throws IOException {
+    final Call call = newCall(uri, networkPolicy);
+    cancellation.setOnCancel(new Runnable() {
+      @Override public void run() {
+        call.cancel();
+      }
+    });
+    return execute(call, networkPolicy);
+  }
+
+  @Override public void enqueue(@NonNull Uri uri, final int networkPolicy,
+      @NonNull Cancellation cancellation, @NonNull final Callback callback) {
+    final Call call = newCall(uri, networkPolicy);
+    cancellation.setOnCancel(new Runnable() {
+      @Override public void run() {
+        call.cancel();
+      }
+    });
+    call.enqueue(new okhttp3.Callback() {
+      @Override public void onResponse(Call call, okhttp3.Response response) {
+        Response result;
+        try {
+          result = toResponse(response, networkPolicy);
+        } catch (IOException e) {
+          callback.onFailure(e);
+          return;
+        }
+        callback.onResponse(result);
+      }
+
+      @Override public void onFailure(Call call, IOException e) {
+        callback.onFailure(e);
+      }
+    });
+  }
+
+  private Call newCall(Uri uri, int networkPolicy) {
     CacheControl cacheControl = null;
     if (networkPolicy != 0) {
       if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
@@ -116,7 +161,15 @@ public final class OkHttp3Downloader implements Downloader {
       builder.cacheControl(cacheControl);
     }
 
-    okhttp3.Response response = client.newCall(builder.build()).execute();
+    return client.newCall(builder.build());
+  }
+
+  private static Response execute(Call call, int networkPolicy) throws IOException {
+    return toResponse(call.execute(), networkPolicy);
+  }
+
+  private static Response toResponse(okhttp3.Response response, int networkPolicy)
+      throws IOException {
     int responseCode = response.code();
     if (responseCode >= 300) {
       response.body().close();
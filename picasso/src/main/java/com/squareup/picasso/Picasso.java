@@ -15,7 +15,9 @@
  */
 package com.squareup.picasso;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.net.Uri;
@@ -23,6 +25,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.IdRes;
 import android.support.annotation.NonNull;
@@ -36,9 +39,19 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.WeakHashMap;
 import java.util.concurrent.ExecutorService;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
 import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
 import static com.squareup.picasso.Action.RequestWeakReference;
 import static com.squareup.picasso.Dispatcher.HUNTER_BATCH_COMPLETE;
@@ -155,30 +168,59 @@ public class Picasso {
   private final RequestTransformer requestTransformer;
   private final CleanupThread cleanupThread;
   private final List<RequestHandler> requestHandlers;
+  private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+    @Override public void onTrimMemory(int level) {
+      trimMemory(level);
+    }
+
+    @Override public void onLowMemory() {
+      trimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override public void onConfigurationChanged(Configuration newConfig) {
+    }
+  };
 
   final Context context;
   final Dispatcher dispatcher;
   final Cache cache;
+  final BitmapPool bitmapPool;
+  final EncodedMemoryCache encodedCache;
+  final ThumbnailDiskCache thumbnailCache;
+  final WarmStart warmStart;
+  final TransformationLimiter transformationLimiter;
+  final ExecutorLimits executorLimits;
   final Stats stats;
   final Map<Object, Action> targetToAction;
   final Map<ImageView, DeferredRequestCreator> targetToDeferredRequestCreator;
   final ReferenceQueue<Object> referenceQueue;
   final Bitmap.Config defaultBitmapConfig;
+  final boolean automaticBitmapConfig;
 
   boolean indicatorsEnabled;
   volatile boolean loggingEnabled;
 
   boolean shutdown;
 
-  Picasso(Context context, Dispatcher dispatcher, Cache cache, Listener listener,
+  Picasso(Context context, Dispatcher dispatcher, Cache cache, BitmapPool bitmapPool,
+      EncodedMemoryCache encodedCache, ThumbnailDiskCache thumbnailCache, WarmStart warmStart,
+      TransformationLimiter transformationLimiter, ExecutorLimits executorLimits, Listener listener,
       RequestTransformer requestTransformer, List<RequestHandler> extraRequestHandlers, Stats stats,
-      Bitmap.Config defaultBitmapConfig, boolean indicatorsEnabled, boolean loggingEnabled) {
+      Bitmap.Config defaultBitmapConfig, boolean automaticBitmapConfig, boolean indicatorsEnabled,
+      boolean loggingEnabled) {
     this.context = context;
     this.dispatcher = dispatcher;
     this.cache = cache;
+    this.bitmapPool = bitmapPool;
+    this.encodedCache = encodedCache;
+    this.thumbnailCache = thumbnailCache;
+    this.warmStart = warmStart;
+    this.transformationLimiter = transformationLimiter;
+    this.executorLimits = executorLimits;
     this.listener = listener;
     this.requestTransformer = requestTransformer;
     this.defaultBitmapConfig = defaultBitmapConfig;
+    this.automaticBitmapConfig = automaticBitmapConfig;
 
     int builtInHandlers = 7; // Adjust this as internal handlers are added or removed.
     int extraCount = (extraRequestHandlers != null ? extraRequestHandlers.size() : 0);
@@ -208,6 +250,7 @@ public class Picasso {
     this.referenceQueue = new ReferenceQueue<>();
     this.cleanupThread = new CleanupThread(referenceQueue, HANDLER);
     this.cleanupThread.start();
+    context.registerComponentCallbacks(memoryCallbacks);
   }
 
   /** Cancel any existing requests for the specified target {@link ImageView}. */
@@ -375,7 +418,9 @@ public class Picasso {
   }
 
   /**
-   * Invalidate all memory cached images for the specified {@code uri}.
+   * Invalidate all memory cached images for the specified {@code uri}. Images in the
+   * {@linkplain Builder#thumbnailCache(File, long) thumbnail cache} are removed asynchronously,
+   * before any request made after this call is handled.
    *
    * @see #invalidate(String)
    * @see #invalidate(File)
@@ -383,6 +428,12 @@ public class Picasso {
   public void invalidate(@Nullable Uri uri) {
     if (uri != null) {
       cache.clearKeyUri(uri.toString());
+      if (encodedCache != null) {
+        encodedCache.remove(uri.toString());
+      }
+      if (thumbnailCache != null) {
+        dispatcher.dispatchThumbnailInvalidate(uri.toString());
+      }
     }
   }
 
@@ -457,6 +508,13 @@ public class Picasso {
       return;
     }
     cache.clear();
+    if (bitmapPool != null) {
+      bitmapPool.clear();
+    }
+    if (encodedCache != null) {
+      encodedCache.clear();
+    }
+    context.unregisterComponentCallbacks(memoryCallbacks);
     cleanupThread.shutdown();
     stats.shutdown();
     dispatcher.shutdown();
@@ -467,6 +525,66 @@ public class Picasso {
     shutdown = true;
   }
 
+  /**
+   * Release memory in proportion to how much the system needs. The memory caches are trimmed to a
+   * fraction of their maximum size for the trim {@code level} and the pools of reusable bitmaps and
+   * buffers are emptied. A memory cache which is not {@link Cache.Trimmable} is cleared instead.
+   */
+  void trimMemory(int level) {
+    int retainedPercent = retainedPercent(level);
+    if (retainedPercent >= 100) {
+      return;
+    }
+    long sizeBefore = releasableSize();
+    if (cache instanceof Cache.Trimmable) {
+      ((Cache.Trimmable) cache).trimToSize((int) ((long) cache.maxSize() * retainedPercent / 100));
+    } else {
+      cache.clear();
+    }
+    if (encodedCache != null) {
+      encodedCache.trimToSize((int) ((long) encodedCache.maxSize() * retainedPercent / 100));
+    }
+    if (bitmapPool != null) {
+      bitmapPool.clear();
+    }
+    BitmapHunter.BYTE_ARRAY_POOL.clear();
+    stats.dispatchMemoryTrimmed(sizeBefore - releasableSize());
+  }
+
+  /** The percentage of the memory caches to keep for a {@link ComponentCallbacks2} trim level. */
+  static int retainedPercent(int level) {
+    if (level >= TRIM_MEMORY_MODERATE) {
+      return 0; // Likely to be killed soon. The cache is cheap to refill after a restart.
+    }
+    if (level >= TRIM_MEMORY_BACKGROUND) {
+      return 25;
+    }
+    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+      return 50;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+      return 25;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      return 50;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+      return 75;
+    }
+    return 100;
+  }
+
+  private long releasableSize() {
+    long size = cache.size() + BitmapHunter.BYTE_ARRAY_POOL.size();
+    if (encodedCache != null) {
+      size += encodedCache.size();
+    }
+    if (bitmapPool != null) {
+      size += bitmapPool.size();
+    }
+    return size;
+  }
+
   List<RequestHandler> getRequestHandlers() {
     return requestHandlers;
   }
@@ -514,7 +632,18 @@ public class Picasso {
     return cached;
   }
 
+  /** Count a use of the image for {@code request} when warm start is enabled. */
+  void recordUse(String key, Request request) {
+    if (warmStart != null && warmStart.record(key, request)) {
+      dispatcher.dispatchWarmStartSave(warmStart);
+    }
+  }
+
   void complete(BitmapHunter hunter) {
+    if (hunter.batchedMillis != 0) {
+      stats.dispatchBatchDelivered(SystemClock.uptimeMillis() - hunter.batchedMillis);
+    }
+
     Action single = hunter.getAction();
     List<Action> joined = hunter.getActions();
 
@@ -580,6 +709,9 @@ public class Picasso {
         throw new AssertionError("LoadedFrom cannot be null.");
       }
       action.complete(result, from);
+      if (!(action instanceof FetchAction)) {
+        recordUse(action.getKey(), action.getRequest());
+      }
       if (loggingEnabled) {
         log(OWNER_MAIN, VERB_COMPLETED, action.request.logId(), "from " + from);
       }
@@ -717,10 +849,29 @@ public class Picasso {
     private Downloader downloader;
     private ExecutorService service;
     private Cache cache;
+    private BitmapPool bitmapPool;
     private Listener listener;
     private RequestTransformer transformer;
     private List<RequestHandler> requestHandlers;
     private Bitmap.Config defaultBitmapConfig;
+    private boolean automaticBitmapConfig;
+    private int transformationConcurrency;
+    private int maxNetworkRequests;
+    private int maxNetworkRequestsPerHost;
+    private long initialRetryDelayMillis = RetryPolicy.DEFAULT_INITIAL_DELAY;
+    private long maxRetryDelayMillis = RetryPolicy.DEFAULT_MAX_DELAY;
+    private int maxRetries;
+    private long retryPeriodMillis;
+    private int maxReplays;
+    private long replayIntervalMillis;
+    private int encodedMemoryCacheSize;
+    private File thumbnailCacheDir;
+    private long thumbnailCacheSize;
+    private File warmStartFile;
+    private int warmStartMaxRequests;
+    private boolean adaptiveConcurrencyEnabled;
+    private boolean lockFreeDispatcherEnabled;
+    private boolean adaptiveDeliveryEnabled;
 
     private boolean indicatorsEnabled;
     private boolean loggingEnabled;
@@ -745,6 +896,21 @@ public class Picasso {
       return this;
     }
 
+    /**
+     * Toggle whether JPEG images, which are always opaque, are decoded as
+     * {@link Bitmap.Config#RGB_565} instead of the platform default. This halves the memory they
+     * take in the memory cache at the cost of color depth. Images in other formats are decoded as
+     * usual, so images with alpha keep it.
+     * <p>
+     * Only applies to requests without a {@link RequestCreator#config(Bitmap.Config) config} when
+     * no {@link #defaultBitmapConfig(Bitmap.Config) default config} is set. The number of images
+     * decoded this way and the bytes saved are reported in {@link StatsSnapshot}.
+     */
+    public Builder automaticBitmapConfig(boolean enabled) {
+      this.automaticBitmapConfig = enabled;
+      return this;
+    }
+
     /** Specify the {@link Downloader} that will be used for downloading images. */
     public Builder downloader(@NonNull Downloader downloader) {
       if (downloader == null) {
@@ -758,7 +924,8 @@ public class Picasso {
     }
 
     /**
-     * Specify the executor service for loading images in the background.
+     * Specify the executor service for loading images in the background. Images which are fetched
+     * over the network are still decoded on a separate executor owned by Picasso.
      * <p>
      * Note: Calling {@link Picasso#shutdown() shutdown()} will not shutdown supplied executors.
      */
@@ -773,7 +940,13 @@ public class Picasso {
       return this;
     }
 
-    /** Specify the memory cache used for the most recent images. */
+    /**
+     * Specify the memory cache used for the most recent images.
+     * <p>
+     * Use a {@link StripedLruCache} to reduce lock contention when many threads hit the cache, or
+     * a {@link TinyLfuCache} to keep frequently used images cached while scrolling through images
+     * which are only seen once.
+     */
     public Builder memoryCache(@NonNull Cache memoryCache) {
       if (memoryCache == null) {
         throw new IllegalArgumentException("Memory cache must not be null.");
@@ -785,6 +958,235 @@ public class Picasso {
       return this;
     }
 
+    /**
+     * Specify a pool of bitmaps to decode into instead of allocating a new bitmap for every image.
+     * Only bitmaps which Picasso knows are unreferenced are returned to it: intermediate bitmaps
+     * released while transforming an image, and bitmaps a failed decode did not use. Images
+     * evicted from the memory cache are never pooled since they may still be displayed.
+     */
+    public Builder bitmapPool(@NonNull BitmapPool bitmapPool) {
+      if (bitmapPool == null) {
+        throw new IllegalArgumentException("Bitmap pool must not be null.");
+      }
+      if (this.bitmapPool != null) {
+        throw new IllegalStateException("Bitmap pool already set.");
+      }
+      this.bitmapPool = bitmapPool;
+      return this;
+    }
+
+    /**
+     * Specify the maximum size in bytes of the memory cache for encoded images fetched over the
+     * network. A miss in the memory cache for decoded images then decodes from memory instead of
+     * loading the image again. Its memory comes on top of the memory cache, so it is disabled by
+     * default. Pass 0 to disable it again.
+     */
+    public Builder encodedMemoryCacheSize(int maxSize) {
+      if (maxSize < 0) {
+        throw new IllegalArgumentException("Encoded memory cache size must not be negative.");
+      }
+      this.encodedMemoryCacheSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Enable a disk cache of resized and transformed images in {@code directory}, bounded to
+     * {@code maxSize} bytes. A request which hits it skips downloading, decoding and transforming
+     * the original image. Images are stored uncompressed so that they load quickly, so this suits
+     * thumbnails much better than full size images. The directory must not be shared with any
+     * other cache.
+     * <p>
+     * Disabled by default. Requests with {@link NetworkPolicy#NO_CACHE} or
+     * {@link NetworkPolicy#NO_STORE} skip reading from or writing to it respectively.
+     */
+    public Builder thumbnailCache(@NonNull File directory, long maxSize) {
+      if (directory == null) {
+        throw new IllegalArgumentException("Thumbnail cache directory must not be null.");
+      }
+      if (maxSize <= 0) {
+        throw new IllegalArgumentException("Thumbnail cache size must be positive.");
+      }
+      if (this.thumbnailCacheDir != null) {
+        throw new IllegalStateException("Thumbnail cache already set.");
+      }
+      this.thumbnailCacheDir = directory;
+      this.thumbnailCacheSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Enable warm start, which records the requests whose images are displayed most often in
+     * {@code file} and loads up to {@code maxRequests} of them into the memory cache when a new
+     * instance is built in a later process. The images are loaded with {@link Priority#LOW} and
+     * only from the disk cache, so they never wait on or compete with the network. The file is
+     * written periodically in the background.
+     * <p>
+     * Disabled by default. Requests with custom transformations, a rotation pivot or a resource
+     * id are not recorded.
+     */
+    public Builder warmStart(@NonNull File file, int maxRequests) {
+      if (file == null) {
+        throw new IllegalArgumentException("Warm start file must not be null.");
+      }
+      if (maxRequests <= 0) {
+        throw new IllegalArgumentException("Warm start max requests must be positive.");
+      }
+      if (this.warmStartFile != null) {
+        throw new IllegalStateException("Warm start already set.");
+      }
+      this.warmStartFile = file;
+      this.warmStartMaxRequests = maxRequests;
+      return this;
+    }
+
+    /**
+     * Specify how many images may be transformed at the same time. Fewer will run when the
+     * transformations would need more memory than the memory cache has to spare. Defaults to the
+     * number of available processors.
+     *
+     * @see Transformation.ThreadSafe
+     */
+    public Builder transformationConcurrency(int maxConcurrent) {
+      if (maxConcurrent <= 0) {
+        throw new IllegalArgumentException("Transformation concurrency must be positive.");
+      }
+      this.transformationConcurrency = maxConcurrent;
+      return this;
+    }
+
+    /**
+     * Limit how many requests load over the network at once, in total and from a single host.
+     * Requests over either limit wait for their host, and hosts with waiting requests take turns
+     * whenever a request finishes loading. A slow host then cannot hold up requests for other
+     * hosts. Requests waiting for and loading from each host, and their latency, are reported in
+     * {@link StatsSnapshot#hostStats}.
+     * <p>
+     * Unlimited by default, apart from the threads of the executor and the limits of the
+     * {@link Downloader}.
+     */
+    public Builder networkConcurrency(int maxRequests, int maxRequestsPerHost) {
+      if (maxRequests <= 0) {
+        throw new IllegalArgumentException("Max network requests must be positive.");
+      }
+      if (maxRequestsPerHost <= 0 || maxRequestsPerHost > maxRequests) {
+        throw new IllegalArgumentException(
+            "Max network requests per host must be positive and at most max network requests.");
+      }
+      this.maxNetworkRequests = maxRequests;
+      this.maxNetworkRequestsPerHost = maxRequestsPerHost;
+      return this;
+    }
+
+    /**
+     * Specify how long failed requests wait before they retry. The first retry waits up to
+     * {@code initialDelay} and every further one up to twice as long as the one before, but at most
+     * {@code maxDelay}. A random part of up to half of each delay keeps requests which failed
+     * together from retrying together. How often a request retries is up to its
+     * {@link RequestHandler}. Defaults to 500 milliseconds, growing to at most 8 seconds.
+     */
+    public Builder retryBackoff(long initialDelay, long maxDelay, @NonNull TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("Unit must not be null.");
+      }
+      if (initialDelay <= 0) {
+        throw new IllegalArgumentException("Initial retry delay must be positive.");
+      }
+      if (maxDelay < initialDelay) {
+        throw new IllegalArgumentException(
+            "Max retry delay must be at least the initial retry delay.");
+      }
+      this.initialRetryDelayMillis = unit.toMillis(initialDelay);
+      this.maxRetryDelayMillis = unit.toMillis(maxDelay);
+      return this;
+    }
+
+    /**
+     * Allow at most {@code maxRetries} retries of all requests together in each {@code period}.
+     * The budget refills evenly over the period. Requests which cannot retry because it is spent
+     * fail right away, and are replayed once the network comes back if their
+     * {@link RequestHandler} supports that. Retries of each {@link RequestHandler} and the retries
+     * given up on are reported in {@link StatsSnapshot#retryCounts} and
+     * {@link StatsSnapshot#throttledRetryCount}.
+     * <p>
+     * Unlimited by default.
+     */
+    public Builder retryBudget(int maxRetries, long period, @NonNull TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("Unit must not be null.");
+      }
+      if (maxRetries <= 0) {
+        throw new IllegalArgumentException("Max retries must be positive.");
+      }
+      if (period <= 0) {
+        throw new IllegalArgumentException("Retry budget period must be positive.");
+      }
+      this.maxRetries = maxRetries;
+      this.retryPeriodMillis = unit.toMillis(period);
+      return this;
+    }
+
+    /**
+     * Replay requests which failed while the network was down at most {@code maxRequests} at a
+     * time, one batch every {@code interval}, instead of all at once as soon as it comes back.
+     * Each batch takes the requests of the highest {@link Priority} first. Requests whose target
+     * was garbage collected, or whose view left its window, are dropped instead of replayed.
+     * <p>
+     * All requests are replayed at once by default.
+     */
+    public Builder replayPacing(int maxRequests, long interval, @NonNull TimeUnit unit) {
+      if (unit == null) {
+        throw new IllegalArgumentException("Unit must not be null.");
+      }
+      if (maxRequests <= 0) {
+        throw new IllegalArgumentException("Max replayed requests must be positive.");
+      }
+      if (interval <= 0) {
+        throw new IllegalArgumentException("Replay interval must be positive.");
+      }
+      this.maxReplays = maxRequests;
+      this.replayIntervalMillis = unit.toMillis(interval);
+      return this;
+    }
+
+    /**
+     * Toggle whether the default executor adapts its thread count to the measured latency and
+     * download throughput of requests instead of the type of the active network. The decode stage
+     * then runs one less thread than the number of available processors. Has no effect when an
+     * {@link #executor(ExecutorService) executor} is specified.
+     * <p>
+     * Only a {@link Downloader} which blocks the fetch thread for the whole download lets the fetch
+     * stage adapt. A {@link Downloader.Async} downloader, such as the default
+     * {@link OkHttp3Downloader}, returns right away, so the fetch stage keeps following the type of
+     * the active network and only the decode stage is sized as above.
+     */
+    public Builder adaptiveConcurrencyEnabled(boolean enabled) {
+      this.adaptiveConcurrencyEnabled = enabled;
+      return this;
+    }
+
+    /**
+     * Toggle whether requests, completions and other events reach the dispatcher thread through a
+     * lock free queue instead of one handler message each. Sending an event then never blocks, and
+     * the dispatcher thread handles a burst of events, such as when a list binds many images at
+     * once, in batches from a single wake up. Events are handled in the same order either way.
+     */
+    public Builder lockFreeDispatcherEnabled(boolean enabled) {
+      this.lockFreeDispatcherEnabled = enabled;
+      return this;
+    }
+
+    /**
+     * Toggle whether completed images are delivered in step with the frames of the main thread
+     * instead of in batches every 200 milliseconds. Batches are then collected for about one
+     * recent frame time, and a batch which would take too long to deliver is spread over several
+     * frames. The delay between completion and delivery is reported in {@link StatsSnapshot}
+     * either way.
+     */
+    public Builder adaptiveDeliveryEnabled(boolean enabled) {
+      this.adaptiveDeliveryEnabled = enabled;
+      return this;
+    }
+
     /** Specify a listener for interesting events. */
     public Builder listener(@NonNull Listener listener) {
       if (listener == null) {
@@ -856,19 +1258,65 @@ public class Picasso {
       if (cache == null) {
         cache = new LruCache(context);
       }
+      EncodedMemoryCache encodedCache =
+          encodedMemoryCacheSize > 0 ? new EncodedMemoryCache(encodedMemoryCacheSize) : null;
+      ThumbnailDiskCache thumbnailCache = thumbnailCacheDir != null
+          ? new ThumbnailDiskCache(thumbnailCacheDir, thumbnailCacheSize)
+          : null;
+      WarmStart warmStart =
+          warmStartFile != null ? new WarmStart(warmStartFile, warmStartMaxRequests) : null;
+      ExecutorLimits executorLimits = null;
       if (service == null) {
-        service = new PicassoExecutorService();
+        if (adaptiveConcurrencyEnabled) {
+          executorLimits = new ExecutorLimits(Runtime.getRuntime().availableProcessors(),
+              SystemClock.uptimeMillis());
+        }
+        // Asynchronous downloads finish after the fetch thread is released, so timing that thread
+        // would measure nothing but the time to start them.
+        service = executorLimits != null && !(downloader instanceof Downloader.Async)
+            ? new PicassoExecutorService(executorLimits)
+            : new PicassoExecutorService();
       }
+      ExecutorService decodeService = new PicassoExecutorService(executorLimits != null
+          ? executorLimits.decodeConcurrency()
+          : Runtime.getRuntime().availableProcessors());
       if (transformer == null) {
         transformer = RequestTransformer.IDENTITY;
       }
+      if (transformationConcurrency == 0) {
+        transformationConcurrency = Runtime.getRuntime().availableProcessors();
+      }
 
-      Stats stats = new Stats(cache);
-
-      Dispatcher dispatcher = new Dispatcher(context, service, HANDLER, downloader, cache, stats);
-
-      return new Picasso(context, dispatcher, cache, listener, transformer, requestHandlers, stats,
-          defaultBitmapConfig, indicatorsEnabled, loggingEnabled);
+      HostScheduler hostScheduler = maxNetworkRequests > 0
+          ? new HostScheduler(maxNetworkRequests, maxNetworkRequestsPerHost)
+          : null;
+
+      RetryPolicy retryPolicy = new RetryPolicy(initialRetryDelayMillis, maxRetryDelayMillis,
+          maxRetries, retryPeriodMillis, maxReplays, replayIntervalMillis,
+          SystemClock.uptimeMillis(), new Random());
+
+      Stats stats = new Stats(cache, bitmapPool, encodedCache, thumbnailCache, service,
+          decodeService, executorLimits, hostScheduler);
+
+      ExecutorService diskService =
+          Executors.newSingleThreadExecutor(new Utils.PicassoThreadFactory());
+      Dispatcher dispatcher = new Dispatcher(context, service, decodeService, diskService, HANDLER,
+          downloader, cache, thumbnailCache, stats,
+          lockFreeDispatcherEnabled ? new EventQueue() : null,
+          adaptiveDeliveryEnabled ? new FrameBatcher(Looper.getMainLooper()) : null,
+          hostScheduler, retryPolicy);
+
+      TransformationLimiter transformationLimiter =
+          new TransformationLimiter(cache, transformationConcurrency);
+
+      Picasso picasso = new Picasso(context, dispatcher, cache, bitmapPool, encodedCache,
+          thumbnailCache, warmStart, transformationLimiter, executorLimits, listener, transformer,
+          requestHandlers, stats, defaultBitmapConfig, automaticBitmapConfig, indicatorsEnabled,
+          loggingEnabled);
+      if (warmStart != null) {
+        dispatcher.dispatchWarmStart(picasso);
+      }
+      return picasso;
     }
   }
 
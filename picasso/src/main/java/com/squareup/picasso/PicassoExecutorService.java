@@ -17,28 +17,69 @@ package com.squareup.picasso;
 
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.SystemClock;
 import android.telephony.TelephonyManager;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The default {@link java.util.concurrent.ExecutorService} used for new {@link Picasso} instances.
  * <p>
  * Exists as a custom type so that we can differentiate the use of defaults versus a user-supplied
  * instance.
+ * <p>
+ * Hunters run in two stages which are both instances of this type unless an executor is supplied
+ * for the fetch stage. The thread count of the fetch stage follows the type of the active network
+ * or, when created with {@link ExecutorLimits}, the measured latency and throughput of hunters. The
+ * decode stage has a fixed number of threads.
+ * <p>
+ * Queued hunters are ordered by priority, and among equal priorities by the order they were
+ * submitted. Every {@link #PRIORITY_AGING_MILLIS} a hunter waits counts as one step of priority,
+ * so a steady stream of high priority requests cannot starve low priority ones.
  */
 class PicassoExecutorService extends ThreadPoolExecutor {
   private static final int DEFAULT_THREAD_COUNT = 3;
+  /** The wait which moves a queued hunter ahead of new hunters one priority above it. */
+  static final long PRIORITY_AGING_MILLIS = 2000;
 
+  final ExecutorLimits limits;
+  private final AtomicInteger maxQueueSize = new AtomicInteger();
+
+  /** Create a fetch stage whose thread count follows the network type. */
   PicassoExecutorService() {
-    super(DEFAULT_THREAD_COUNT, DEFAULT_THREAD_COUNT, 0, TimeUnit.MILLISECONDS,
+    this(DEFAULT_THREAD_COUNT, null);
+  }
+
+  /** Create a fetch stage whose thread count follows {@code limits}. */
+  PicassoExecutorService(ExecutorLimits limits) {
+    this(limits.fetchConcurrency(), limits);
+  }
+
+  /** Create a stage with a fixed number of threads. */
+  PicassoExecutorService(int threadCount) {
+    this(threadCount, null);
+  }
+
+  private PicassoExecutorService(int threadCount, ExecutorLimits limits) {
+    super(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
         new PriorityBlockingQueue<Runnable>(), new Utils.PicassoThreadFactory());
+    this.limits = limits;
+  }
+
+  /** Returns the largest number of hunters which have been waiting for a thread at once. */
+  int maxQueueSize() {
+    return maxQueueSize.get();
   }
 
   void adjustThreadCount(NetworkInfo info) {
+    if (limits != null) {
+      limits.networkChanged();
+      return;
+    }
     if (info == null || !info.isConnectedOrConnecting()) {
       setThreadCount(DEFAULT_THREAD_COUNT);
       return;
@@ -77,34 +118,101 @@ class PicassoExecutorService extends ThreadPoolExecutor {
   }
 
   private void setThreadCount(int threadCount) {
-    setCorePoolSize(threadCount);
-    setMaximumPoolSize(threadCount);
+    // The core size may never exceed the maximum size.
+    if (threadCount > getMaximumPoolSize()) {
+      setMaximumPoolSize(threadCount);
+      setCorePoolSize(threadCount);
+    } else {
+      setCorePoolSize(threadCount);
+      setMaximumPoolSize(threadCount);
+    }
+  }
+
+  @Override protected void beforeExecute(Thread t, Runnable r) {
+    if (limits != null && r instanceof PicassoFutureTask) {
+      PicassoFutureTask task = (PicassoFutureTask) r;
+      task.startMillis = SystemClock.uptimeMillis();
+      task.startThreadMillis = SystemClock.currentThreadTimeMillis();
+    }
+  }
+
+  @Override protected void afterExecute(Runnable r, Throwable t) {
+    if (limits != null && r instanceof PicassoFutureTask) {
+      PicassoFutureTask task = (PicassoFutureTask) r;
+      long now = SystemClock.uptimeMillis();
+      limits.hunterFinished(now - task.startMillis,
+          SystemClock.currentThreadTimeMillis() - task.startThreadMillis, !getQueue().isEmpty(),
+          now);
+      int threadCount = limits.fetchConcurrency();
+      if (threadCount != getMaximumPoolSize()) {
+        setThreadCount(threadCount);
+      }
+    }
   }
 
   @Override
   public Future<?> submit(Runnable task) {
     PicassoFutureTask ftask = new PicassoFutureTask((BitmapHunter) task);
+    ftask.queuedMillis = SystemClock.uptimeMillis();
+    ftask.rank = rank(ftask.hunter.getPriority(), ftask.queuedMillis);
     execute(ftask);
+    int queueSize = getQueue().size();
+    for (int max; queueSize > (max = maxQueueSize.get());) {
+      if (maxQueueSize.compareAndSet(max, queueSize)) {
+        break;
+      }
+    }
     return ftask;
   }
 
-  private static final class PicassoFutureTask extends FutureTask<BitmapHunter>
+  /**
+   * Move a hunter which is still waiting in this executor's queue forward to {@code priority},
+   * keeping the credit its wait has earned so far. Returns false if it already left the queue or
+   * belongs to another executor.
+   */
+  boolean raisePriority(Future<?> future, Picasso.Priority priority) {
+    if (!(future instanceof PicassoFutureTask)) {
+      return false;
+    }
+    PicassoFutureTask task = (PicassoFutureTask) future;
+    long rank = rank(priority, task.queuedMillis);
+    if (rank >= task.rank) {
+      return false;
+    }
+    // The queue must never see the order of a task change while it holds the task.
+    if (!getQueue().remove(task)) {
+      return false;
+    }
+    task.rank = rank;
+    getQueue().offer(task);
+    return true;
+  }
+
+  private static long rank(Picasso.Priority priority, long queuedMillis) {
+    return queuedMillis - priority.ordinal() * PRIORITY_AGING_MILLIS;
+  }
+
+  static final class PicassoFutureTask extends FutureTask<BitmapHunter>
       implements Comparable<PicassoFutureTask> {
-    private final BitmapHunter hunter;
+    final BitmapHunter hunter;
+    long queuedMillis;
+    /** The time the task would have been queued at had it no priority. Lower runs first. */
+    long rank;
+    long startMillis;
+    long startThreadMillis;
 
-    public PicassoFutureTask(BitmapHunter hunter) {
+    PicassoFutureTask(BitmapHunter hunter) {
       super(hunter, null);
       this.hunter = hunter;
     }
 
     @Override
     public int compareTo(PicassoFutureTask other) {
-      Picasso.Priority p1 = hunter.getPriority();
-      Picasso.Priority p2 = other.hunter.getPriority();
-
-      // High-priority requests are "lesser" so they are sorted to the front.
-      // Equal priorities are sorted by sequence number to provide FIFO ordering.
-      return (p1 == p2 ? hunter.sequence - other.hunter.sequence : p2.ordinal() - p1.ordinal());
+      // High-priority and long waiting requests are "lesser" so they are sorted to the front.
+      // Equal ranks are sorted by sequence number to provide FIFO ordering.
+      return rank == other.rank
+          ? hunter.sequence - other.hunter.sequence
+          : (rank < other.rank ? -1 : 1);
     }
   }
 }
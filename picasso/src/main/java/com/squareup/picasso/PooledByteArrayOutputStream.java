@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} which takes its buffers from a {@link ByteArrayPool} and returns
+ * them when it grows or is closed. The buffer is only valid until {@link #close()} is called.
+ */
+final class PooledByteArrayOutputStream extends ByteArrayOutputStream {
+  private static final int DEFAULT_SIZE = 16 * 1024;
+
+  private final ByteArrayPool pool;
+  private int readers;
+
+  /** Create a stream whose initial buffer fits {@code expectedSize} bytes, if it is known. */
+  PooledByteArrayOutputStream(ByteArrayPool pool, long expectedSize) {
+    this.pool = pool;
+    // The super constructor allocated a small buffer we will never use.
+    this.buf = pool.get(expectedSize > 0 && expectedSize < Integer.MAX_VALUE
+        ? (int) expectedSize
+        : DEFAULT_SIZE);
+  }
+
+  /** Read {@code stream} until it is exhausted. */
+  void readFrom(InputStream stream) throws IOException {
+    while (true) {
+      if (count == buf.length) {
+        expand(count + 1);
+      }
+      int read = stream.read(buf, count, buf.length - count);
+      if (read == -1) {
+        return;
+      }
+      count += read;
+    }
+  }
+
+  /** Returns the buffer holding the first {@link #size()} bytes written to this stream. */
+  byte[] buffer() {
+    return buf;
+  }
+
+  /**
+   * Returns a stream over the bytes written so far. Closing every stream returned by this method
+   * closes this stream, returning the buffer to the pool, so nothing may be written meanwhile.
+   */
+  synchronized InputStream toInputStream() {
+    readers++;
+    return new ByteArrayInputStream(buf, 0, count) {
+      private boolean closed;
+
+      @Override public void close() {
+        if (!closed) {
+          closed = true;
+          releaseReader();
+        }
+      }
+    };
+  }
+
+  @Override public synchronized void write(byte[] buffer, int offset, int length) {
+    expand(count + length);
+    super.write(buffer, offset, length);
+  }
+
+  @Override public synchronized void write(int oneByte) {
+    expand(count + 1);
+    super.write(oneByte);
+  }
+
+  @Override public void close() {
+    if (buf != null) {
+      pool.put(buf);
+      buf = null;
+    }
+  }
+
+  private synchronized void releaseReader() {
+    if (--readers == 0) {
+      close();
+    }
+  }
+
+  private void expand(int required) {
+    if (required <= buf.length) {
+      return;
+    }
+    byte[] expanded = pool.get(Math.max(required, buf.length * 2));
+    System.arraycopy(buf, 0, expanded, 0, count);
+    pool.put(buf);
+    buf = expanded;
+  }
+}
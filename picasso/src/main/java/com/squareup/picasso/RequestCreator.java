@@ -549,6 +549,7 @@ public class RequestCreator {
       Bitmap bitmap = picasso.quickMemoryCacheCheck(requestKey);
       if (bitmap != null) {
         picasso.cancelRequest(target);
+        picasso.recordUse(requestKey, request);
         target.onBitmapLoaded(bitmap, MEMORY);
         return;
       }
@@ -711,6 +712,7 @@ public class RequestCreator {
       Bitmap bitmap = picasso.quickMemoryCacheCheck(requestKey);
       if (bitmap != null) {
         picasso.cancelRequest(target);
+        picasso.recordUse(requestKey, request);
         setBitmap(target, picasso.context, bitmap, MEMORY, noFade, picasso.indicatorsEnabled);
         if (picasso.loggingEnabled) {
           log(OWNER_MAIN, VERB_COMPLETED, request.plainId(), "from " + MEMORY);
@@ -772,6 +774,7 @@ public class RequestCreator {
     if (shouldReadFromMemoryCache(memoryPolicy)) {
       Bitmap bitmap = picasso.quickMemoryCacheCheck(action.getKey());
       if (bitmap != null) {
+        picasso.recordUse(action.getKey(), action.getRequest());
         action.complete(bitmap, MEMORY);
         return;
       }
@@ -24,6 +24,8 @@ import android.support.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.KITKAT;
 import static com.squareup.picasso.Utils.checkNotNull;
 
 /**
@@ -56,6 +58,8 @@ public abstract class RequestHandler {
     private final Bitmap bitmap;
     private final InputStream stream;
     private final int exifOrientation;
+    private final long contentLength;
+    private final boolean encodedCacheHit;
 
     public Result(@NonNull Bitmap bitmap, @NonNull Picasso.LoadedFrom loadedFrom) {
       this(checkNotNull(bitmap, "bitmap == null"), null, loadedFrom, 0);
@@ -70,6 +74,25 @@ public abstract class RequestHandler {
         @Nullable InputStream stream,
         @NonNull Picasso.LoadedFrom loadedFrom,
         int exifOrientation) {
+      this(bitmap, stream, loadedFrom, exifOrientation, -1);
+    }
+
+    Result(
+        @Nullable Bitmap bitmap,
+        @Nullable InputStream stream,
+        @NonNull Picasso.LoadedFrom loadedFrom,
+        int exifOrientation,
+        long contentLength) {
+      this(bitmap, stream, loadedFrom, exifOrientation, contentLength, false);
+    }
+
+    Result(
+        @Nullable Bitmap bitmap,
+        @Nullable InputStream stream,
+        @NonNull Picasso.LoadedFrom loadedFrom,
+        int exifOrientation,
+        long contentLength,
+        boolean encodedCacheHit) {
       if ((bitmap != null) == (stream != null)) {
         throw new AssertionError();
       }
@@ -77,6 +100,8 @@ public abstract class RequestHandler {
       this.stream = stream;
       this.loadedFrom = checkNotNull(loadedFrom, "loadedFrom == null");
       this.exifOrientation = exifOrientation;
+      this.contentLength = contentLength;
+      this.encodedCacheHit = encodedCacheHit;
     }
 
     /** The loaded {@link Bitmap}. Mutually exclusive with {@link #getStream()}. */
@@ -104,6 +129,22 @@ public abstract class RequestHandler {
     int getExifOrientation() {
       return exifOrientation;
     }
+
+    /**
+     * Returns the length of {@link #getStream()} in bytes, or -1 if it is not known. This is only
+     * accessible to built-in RequestHandlers.
+     */
+    long getContentLength() {
+      return contentLength;
+    }
+
+    /**
+     * Returns true if {@link #getStream()} reads bytes held by the encoded memory cache rather than
+     * bytes which were just loaded. This is only accessible to built-in RequestHandlers.
+     */
+    boolean isEncodedCacheHit() {
+      return encodedCacheHit;
+    }
   }
 
   /**
@@ -123,6 +164,14 @@ public abstract class RequestHandler {
     return 0;
   }
 
+  /**
+   * Whether {@link #load} is quick enough to run on the decode stage. Otherwise the hunter first
+   * runs on the fetch stage, which reads the image into memory, and then moves to the decode stage.
+   */
+  boolean loadsLocally() {
+    return true;
+  }
+
   boolean shouldRetry(boolean airplaneMode, NetworkInfo info) {
     return false;
   }
@@ -136,7 +185,18 @@ public abstract class RequestHandler {
    * {@link Request}, only instantiating them if needed.
    */
   static BitmapFactory.Options createBitmapOptions(Request data) {
-    final boolean justBounds = data.hasSize();
+    return createBitmapOptions(data, null);
+  }
+
+  /**
+   * Lazily create {@link BitmapFactory.Options} based in given {@link Request}. When decoding into
+   * a bitmap from {@code bitmapPool} the bounds are always decoded first so that a compatible
+   * bitmap can be picked with {@link #setInBitmap}.
+   */
+  static BitmapFactory.Options createBitmapOptions(Request data, @Nullable BitmapPool bitmapPool) {
+    // Purgeable bitmaps cannot be decoded into an existing bitmap.
+    final boolean reuseBitmap = bitmapPool != null && !data.purgeable;
+    final boolean justBounds = data.hasSize() || reuseBitmap;
     final boolean hasConfig = data.config != null;
     BitmapFactory.Options options = null;
     if (justBounds || hasConfig || data.purgeable) {
@@ -144,6 +204,7 @@ public abstract class RequestHandler {
       options.inJustDecodeBounds = justBounds;
       options.inInputShareable = data.purgeable;
       options.inPurgeable = data.purgeable;
+      options.inMutable = reuseBitmap;
       if (hasConfig) {
         options.inPreferredConfig = data.config;
       }
@@ -151,6 +212,26 @@ public abstract class RequestHandler {
     return options;
   }
 
+  /**
+   * Take a bitmap which the image described by the decoded bounds in {@code options} fits into
+   * from {@code bitmapPool} and use it as {@link BitmapFactory.Options#inBitmap}.
+   */
+  static void setInBitmap(BitmapFactory.Options options, BitmapPool bitmapPool) {
+    if (!options.inMutable || options.outWidth <= 0 || options.outHeight <= 0) {
+      return;
+    }
+    // Decoders may round the sample size down to a power of two, so assume the larger result.
+    int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+    if (SDK_INT < KITKAT && (sampleSize != 1 || !("image/jpeg".equals(options.outMimeType)
+        || "image/png".equals(options.outMimeType)))) {
+      // Prior to KitKat only unscaled JPEG and PNG images can be decoded into an existing bitmap.
+      return;
+    }
+    int width = (options.outWidth + sampleSize - 1) / sampleSize;
+    int height = (options.outHeight + sampleSize - 1) / sampleSize;
+    options.inBitmap = bitmapPool.get(width, height, options.inPreferredConfig);
+  }
+
   static boolean requiresInSampleSize(BitmapFactory.Options options) {
     return options != null && options.inJustDecodeBounds;
   }
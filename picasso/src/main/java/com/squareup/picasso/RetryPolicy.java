@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.Random;
+
+/**
+ * Decides when failed hunters retry. Every retry waits twice as long as the one before, up to a
+ * maximum, and a random part of each delay spreads out the retries of hunters which failed at the
+ * same time. An optional budget limits the retries of all hunters together, refilling evenly over
+ * its period, so a flaky network cannot cause a storm of them.
+ * <p>
+ * Actions which failed for good are replayed once the network comes back. Those replays are
+ * optionally paced, a few of the highest priority at a time, instead of all at once while the
+ * network is still coming up.
+ * <p>
+ * Only used on the dispatcher thread.
+ */
+final class RetryPolicy {
+  static final long DEFAULT_INITIAL_DELAY = 500; // ms
+  static final long DEFAULT_MAX_DELAY = 8000; // ms
+
+  private final long initialDelayMillis;
+  private final long maxDelayMillis;
+  private final int maxRetries;
+  private final long periodMillis;
+  private final Random random;
+  /** The most failed actions replayed at once, or 0 to replay all of them at once. */
+  final int maxReplays;
+  /** How long to wait between replaying the batches of {@link #maxReplays} actions. */
+  final long replayIntervalMillis;
+
+  /** Retries left in the budget, in fractions since it refills evenly. */
+  private double tokens;
+  private long refilledMillis;
+
+  /**
+   * @param maxRetries The most retries of all hunters in {@code periodMillis}, or 0 for no limit.
+   * @param maxReplays The most failed actions replayed every {@code replayIntervalMillis}, or 0 to
+   * replay all of them at once.
+   */
+  RetryPolicy(long initialDelayMillis, long maxDelayMillis, int maxRetries, long periodMillis,
+      int maxReplays, long replayIntervalMillis, long nowMillis, Random random) {
+    this.initialDelayMillis = initialDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.maxRetries = maxRetries;
+    this.periodMillis = periodMillis;
+    this.random = random;
+    this.maxReplays = maxReplays;
+    this.replayIntervalMillis = replayIntervalMillis;
+    this.tokens = maxRetries;
+    this.refilledMillis = nowMillis;
+  }
+
+  /**
+   * Returns how long to wait before the retry after {@code attempts} earlier retries. That is a
+   * random value between half and all of the exponential delay.
+   */
+  long delayMillis(int attempts) {
+    double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(2, attempts));
+    return (long) (delay / 2 + random.nextDouble() * delay / 2);
+  }
+
+  /** Take one retry from the budget and return true, or return false if it is spent. */
+  boolean tryAcquire(long nowMillis) {
+    if (maxRetries == 0) {
+      return true;
+    }
+    long elapsed = Math.max(0, nowMillis - refilledMillis);
+    tokens = Math.min(maxRetries, tokens + (double) elapsed * maxRetries / periodMillis);
+    refilledMillis = nowMillis;
+    if (tokens < 1) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+}
@@ -20,6 +20,12 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
 
@@ -29,15 +35,34 @@ class Stats {
   private static final int BITMAP_DECODE_FINISHED = 2;
   private static final int BITMAP_TRANSFORMED_FINISHED = 3;
   private static final int DOWNLOAD_FINISHED = 4;
+  private static final int FETCH_COALESCED = 5;
+  private static final int DERIVED_CACHE_HIT = 6;
+  private static final int MEMORY_TRIMMED = 7;
+  private static final int OPAQUE_BITMAP_DECODED = 8;
+  private static final int BATCH_DELIVERED = 9;
+  private static final int DOWNLOAD_CANCELED = 10;
+  private static final int RETRY = 11;
+  private static final int RETRY_THROTTLED = 12;
+
+  /** The number of recent deliveries the latency percentiles are taken from. */
+  static final int DELIVERY_LATENCY_SAMPLES = 256;
 
   private static final String STATS_THREAD_NAME = Utils.THREAD_PREFIX + "Stats";
 
   final HandlerThread statsThread;
   final Cache cache;
+  final BitmapPool bitmapPool;
+  final EncodedMemoryCache encodedCache;
+  final ThumbnailDiskCache thumbnailCache;
+  final ExecutorService fetchService;
+  final ExecutorService decodeService;
+  final ExecutorLimits executorLimits;
+  final HostScheduler hostScheduler;
   final Handler handler;
 
   long cacheHits;
   long cacheMisses;
+  long derivedCacheHits;
   long totalDownloadSize;
   long totalOriginalBitmapSize;
   long totalTransformedBitmapSize;
@@ -47,9 +72,33 @@ class Stats {
   int downloadCount;
   int originalBitmapCount;
   int transformedBitmapCount;
+  int coalescedFetchCount;
+  int canceledDownloadCount;
+  long totalCanceledDownloadSavings;
+  /** Retries of each request handler, keyed by its simple class name. Guarded by itself. */
+  final Map<String, Integer> retryCounts = new LinkedHashMap<>();
+  int throttledRetryCount;
+  int trimCount;
+  long totalTrimmedSize;
+  int opaqueBitmapCount;
+  long totalOpaqueBitmapSavings;
+  int deliveryCount;
+  long totalDeliveryLatency;
+  long maxDeliveryLatency;
+  final int[] recentDeliveryLatencies = new int[DELIVERY_LATENCY_SAMPLES];
 
-  Stats(Cache cache) {
+  Stats(Cache cache, BitmapPool bitmapPool, EncodedMemoryCache encodedCache,
+      ThumbnailDiskCache thumbnailCache, ExecutorService fetchService,
+      ExecutorService decodeService, ExecutorLimits executorLimits,
+      HostScheduler hostScheduler) {
     this.cache = cache;
+    this.bitmapPool = bitmapPool;
+    this.encodedCache = encodedCache;
+    this.thumbnailCache = thumbnailCache;
+    this.fetchService = fetchService;
+    this.decodeService = decodeService;
+    this.executorLimits = executorLimits;
+    this.hostScheduler = hostScheduler;
     this.statsThread = new HandlerThread(STATS_THREAD_NAME, THREAD_PRIORITY_BACKGROUND);
     this.statsThread.start();
     Utils.flushStackLocalLeaks(statsThread.getLooper());
@@ -64,18 +113,56 @@ class Stats {
     processBitmap(bitmap, BITMAP_TRANSFORMED_FINISHED);
   }
 
+  /** Count a bitmap decoded as {@link Bitmap.Config#RGB_565} because the image is opaque. */
+  void dispatchOpaqueBitmapDecoded(Bitmap bitmap) {
+    processBitmap(bitmap, OPAQUE_BITMAP_DECODED);
+  }
+
   void dispatchDownloadFinished(long size) {
     handler.sendMessage(handler.obtainMessage(DOWNLOAD_FINISHED, size));
   }
 
+  /** Count a download aborted because its hunter was canceled, and the bytes left unread. */
+  void dispatchDownloadCanceled(long savedBytes) {
+    handler.sendMessage(handler.obtainMessage(DOWNLOAD_CANCELED, savedBytes));
+  }
+
+  /** Count a retry of a hunter which failed to load with {@code requestHandler}. */
+  void dispatchRetry(RequestHandler requestHandler) {
+    handler.sendMessage(handler.obtainMessage(RETRY, requestHandler));
+  }
+
+  /** Count a retry which did not happen because the retry budget was spent. */
+  void dispatchRetryThrottled() {
+    handler.sendEmptyMessage(RETRY_THROTTLED);
+  }
+
+  void dispatchFetchCoalesced() {
+    handler.sendEmptyMessage(FETCH_COALESCED);
+  }
+
   void dispatchCacheHit() {
     handler.sendEmptyMessage(CACHE_HIT);
   }
 
+  void dispatchDerivedCacheHit() {
+    handler.sendEmptyMessage(DERIVED_CACHE_HIT);
+  }
+
   void dispatchCacheMiss() {
     handler.sendEmptyMessage(CACHE_MISS);
   }
 
+  /** Record the time from batching a completed hunter to delivering it on the main thread. */
+  void dispatchBatchDelivered(long latencyMillis) {
+    int latency = (int) Math.max(0, Math.min(Integer.MAX_VALUE, latencyMillis));
+    handler.sendMessage(handler.obtainMessage(BATCH_DELIVERED, latency, 0));
+  }
+
+  void dispatchMemoryTrimmed(long trimmedSize) {
+    handler.sendMessage(handler.obtainMessage(MEMORY_TRIMMED, trimmedSize));
+  }
+
   void shutdown() {
     statsThread.quit();
   }
@@ -88,10 +175,43 @@ class Stats {
     cacheMisses++;
   }
 
+  void performDerivedCacheHit() {
+    derivedCacheHits++;
+  }
+
   void performDownloadFinished(Long size) {
     downloadCount++;
     totalDownloadSize += size;
     averageDownloadSize = getAverage(downloadCount, totalDownloadSize);
+    if (executorLimits != null) {
+      executorLimits.bytesDownloaded(size);
+    }
+  }
+
+  void performFetchCoalesced() {
+    coalescedFetchCount++;
+  }
+
+  void performDownloadCanceled(Long savedBytes) {
+    canceledDownloadCount++;
+    totalCanceledDownloadSavings += savedBytes;
+  }
+
+  void performRetry(RequestHandler requestHandler) {
+    String name = requestHandler.getClass().getSimpleName();
+    synchronized (retryCounts) {
+      Integer count = retryCounts.get(name);
+      retryCounts.put(name, count != null ? count + 1 : 1);
+    }
+  }
+
+  void performRetryThrottled() {
+    throttledRetryCount++;
+  }
+
+  void performMemoryTrimmed(Long trimmedSize) {
+    trimCount++;
+    totalTrimmedSize += trimmedSize;
   }
 
   void performBitmapDecoded(long size) {
@@ -106,11 +226,75 @@ class Stats {
     averageTransformedBitmapSize = getAverage(originalBitmapCount, totalTransformedBitmapSize);
   }
 
+  void performOpaqueBitmapDecoded(long size) {
+    opaqueBitmapCount++;
+    // The same image with an alpha channel would take twice as many bytes.
+    totalOpaqueBitmapSavings += size;
+  }
+
+  void performBatchDelivered(int latencyMillis) {
+    recentDeliveryLatencies[deliveryCount % DELIVERY_LATENCY_SAMPLES] = latencyMillis;
+    deliveryCount++;
+    totalDeliveryLatency += latencyMillis;
+    maxDeliveryLatency = Math.max(maxDeliveryLatency, latencyMillis);
+  }
+
   StatsSnapshot createSnapshot() {
+    long bitmapPoolHits = bitmapPool != null ? bitmapPool.hitCount() : 0;
+    long bitmapPoolMisses = bitmapPool != null ? bitmapPool.missCount() : 0;
+    long encodedCacheHits = encodedCache != null ? encodedCache.hitCount() : 0;
+    long encodedCacheMisses = encodedCache != null ? encodedCache.missCount() : 0;
+    int encodedCacheSize = encodedCache != null ? encodedCache.size() : 0;
+    long thumbnailCacheHits = thumbnailCache != null ? thumbnailCache.hitCount() : 0;
+    long thumbnailCacheMisses = thumbnailCache != null ? thumbnailCache.missCount() : 0;
+    long thumbnailCacheSize = thumbnailCache != null ? thumbnailCache.size() : 0;
+    ExecutorLimits fetchLimits = fetchService instanceof PicassoExecutorService
+        ? ((PicassoExecutorService) fetchService).limits
+        : null;
+    int fetchConcurrency = fetchLimits != null ? fetchLimits.fetchConcurrency() : 0;
+    int decodeConcurrency = executorLimits != null ? executorLimits.decodeConcurrency() : 0;
+    int[] latencies = Arrays.copyOf(recentDeliveryLatencies,
+        Math.min(deliveryCount, DELIVERY_LATENCY_SAMPLES));
+    Arrays.sort(latencies);
+    long averageDeliveryLatency = deliveryCount > 0 ? totalDeliveryLatency / deliveryCount : 0;
+    Map<String, StatsSnapshot.HostStats> hostStats = hostScheduler != null
+        ? hostScheduler.createSnapshot()
+        : Collections.<String, StatsSnapshot.HostStats>emptyMap();
+    Map<String, Integer> retries;
+    synchronized (retryCounts) {
+      retries = Collections.unmodifiableMap(new LinkedHashMap<>(retryCounts));
+    }
     return new StatsSnapshot(cache.maxSize(), cache.size(), cacheHits, cacheMisses,
-        totalDownloadSize, totalOriginalBitmapSize, totalTransformedBitmapSize, averageDownloadSize,
-        averageOriginalBitmapSize, averageTransformedBitmapSize, downloadCount, originalBitmapCount,
-        transformedBitmapCount, System.currentTimeMillis());
+        derivedCacheHits, totalDownloadSize, totalOriginalBitmapSize, totalTransformedBitmapSize,
+        averageDownloadSize, averageOriginalBitmapSize, averageTransformedBitmapSize, downloadCount,
+        originalBitmapCount, transformedBitmapCount, coalescedFetchCount, canceledDownloadCount,
+        totalCanceledDownloadSavings, retries, throttledRetryCount, bitmapPoolHits,
+        bitmapPoolMisses, encodedCacheHits, encodedCacheMisses, encodedCacheSize,
+        thumbnailCacheHits, thumbnailCacheMisses, thumbnailCacheSize, trimCount, totalTrimmedSize,
+        opaqueBitmapCount, totalOpaqueBitmapSavings, deliveryCount, averageDeliveryLatency,
+        percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+        maxDeliveryLatency, fetchConcurrency, decodeConcurrency, queueSize(fetchService),
+        maxQueueSize(fetchService), queueSize(decodeService), maxQueueSize(decodeService),
+        hostStats, System.currentTimeMillis());
+  }
+
+  private static long percentile(int[] sorted, int percent) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[(sorted.length - 1) * percent / 100];
+  }
+
+  private static int queueSize(ExecutorService service) {
+    return service instanceof ThreadPoolExecutor
+        ? ((ThreadPoolExecutor) service).getQueue().size()
+        : 0;
+  }
+
+  private static int maxQueueSize(ExecutorService service) {
+    return service instanceof PicassoExecutorService
+        ? ((PicassoExecutorService) service).maxQueueSize()
+        : 0;
   }
 
   private void processBitmap(Bitmap bitmap, int what) {
@@ -140,6 +324,9 @@ class Stats {
         case CACHE_MISS:
           stats.performCacheMiss();
           break;
+        case DERIVED_CACHE_HIT:
+          stats.performDerivedCacheHit();
+          break;
         case BITMAP_DECODE_FINISHED:
           stats.performBitmapDecoded(msg.arg1);
           break;
@@ -149,6 +336,27 @@ class Stats {
         case DOWNLOAD_FINISHED:
           stats.performDownloadFinished((Long) msg.obj);
           break;
+        case FETCH_COALESCED:
+          stats.performFetchCoalesced();
+          break;
+        case DOWNLOAD_CANCELED:
+          stats.performDownloadCanceled((Long) msg.obj);
+          break;
+        case RETRY:
+          stats.performRetry((RequestHandler) msg.obj);
+          break;
+        case RETRY_THROTTLED:
+          stats.performRetryThrottled();
+          break;
+        case MEMORY_TRIMMED:
+          stats.performMemoryTrimmed((Long) msg.obj);
+          break;
+        case OPAQUE_BITMAP_DECODED:
+          stats.performOpaqueBitmapDecoded(msg.arg1);
+          break;
+        case BATCH_DELIVERED:
+          stats.performBatchDelivered(msg.arg1);
+          break;
         default:
           Picasso.HANDLER.post(new Runnable() {
             @Override public void run() {
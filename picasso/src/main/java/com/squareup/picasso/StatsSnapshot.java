@@ -18,6 +18,7 @@ package com.squareup.picasso;
 import android.util.Log;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Map;
 
 import static com.squareup.picasso.Picasso.TAG;
 
@@ -27,6 +28,8 @@ public class StatsSnapshot {
   public final int size;
   public final long cacheHits;
   public final long cacheMisses;
+  /** Cache misses served by scaling down a larger variant of the same image in the cache. */
+  public final long derivedCacheHits;
   public final long totalDownloadSize;
   public final long totalOriginalBitmapSize;
   public final long totalTransformedBitmapSize;
@@ -36,17 +39,88 @@ public class StatsSnapshot {
   public final int downloadCount;
   public final int originalBitmapCount;
   public final int transformedBitmapCount;
+  /** Hunters which decoded the bytes fetched for another variant of the same image. */
+  public final int coalescedFetchCount;
+  /** Downloads aborted because every request waiting for them was canceled. */
+  public final int canceledDownloadCount;
+  /** Bytes those downloads did not have to read, where the size of the image was known. */
+  public final long totalCanceledDownloadSavings;
+  /** Retries of failed requests for each request handler, keyed by its simple class name. */
+  public final Map<String, Integer> retryCounts;
+  /** Retries given up on because the retry budget was spent. */
+  public final int throttledRetryCount;
+  public final long bitmapPoolHits;
+  public final long bitmapPoolMisses;
+  /** Bitmap cache misses which were decoded from the encoded memory cache. */
+  public final long encodedCacheHits;
+  public final long encodedCacheMisses;
+  /** The size of the encoded memory cache in bytes, or 0 if it is disabled. */
+  public final int encodedCacheSize;
+  /** Requests which loaded their resized and transformed image from the thumbnail cache. */
+  public final long thumbnailCacheHits;
+  public final long thumbnailCacheMisses;
+  /** The size of the thumbnail cache on disk in bytes, or 0 if it is disabled. */
+  public final long thumbnailCacheSize;
+  /** Times the system asked to trim memory. */
+  public final int trimCount;
+  /** Bytes released from the memory cache and pools when trimming memory. */
+  public final long totalTrimmedSize;
+  /** Images decoded without an alpha channel because automatic bitmap config found them opaque. */
+  public final int opaqueBitmapCount;
+  /** Bytes those images would have taken in addition had they been decoded with alpha. */
+  public final long totalOpaqueBitmapSavings;
+  /** Completed hunters delivered on the main thread. */
+  public final int deliveryCount;
+  /** Average milliseconds between completing a hunter and delivering it. */
+  public final long averageDeliveryLatency;
+  /** Percentiles of the delivery latency over the most recent deliveries, in milliseconds. */
+  public final long medianDeliveryLatency;
+  public final long p90DeliveryLatency;
+  public final long p99DeliveryLatency;
+  /** The longest delivery latency so far, in milliseconds. */
+  public final long maxDeliveryLatency;
+  /**
+   * Threads which may fetch at once when adaptive concurrency sizes the fetch stage, otherwise 0.
+   * It never does with a {@link Downloader.Async} downloader.
+   */
+  public final int fetchConcurrency;
+  /** Images which may be decoded at once when adaptive concurrency is enabled, otherwise 0. */
+  public final int decodeConcurrency;
+  /** Hunters waiting for a fetch thread when the snapshot was taken. */
+  public final int fetchQueueSize;
+  /** The most hunters ever waiting for a fetch thread, or 0 for a custom executor. */
+  public final int maxFetchQueueSize;
+  /** Hunters waiting for a decode thread when the snapshot was taken. */
+  public final int decodeQueueSize;
+  /** The most hunters ever waiting for a decode thread. */
+  public final int maxDecodeQueueSize;
+  /**
+   * Downloads in flight and waiting, and their latency, for each host requested so far. Empty
+   * unless network concurrency is limited.
+   */
+  public final Map<String, HostStats> hostStats;
 
   public final long timeStamp;
 
   public StatsSnapshot(int maxSize, int size, long cacheHits, long cacheMisses,
-      long totalDownloadSize, long totalOriginalBitmapSize, long totalTransformedBitmapSize,
-      long averageDownloadSize, long averageOriginalBitmapSize, long averageTransformedBitmapSize,
-      int downloadCount, int originalBitmapCount, int transformedBitmapCount, long timeStamp) {
+      long derivedCacheHits, long totalDownloadSize, long totalOriginalBitmapSize,
+      long totalTransformedBitmapSize, long averageDownloadSize, long averageOriginalBitmapSize,
+      long averageTransformedBitmapSize, int downloadCount, int originalBitmapCount,
+      int transformedBitmapCount, int coalescedFetchCount, int canceledDownloadCount,
+      long totalCanceledDownloadSavings, Map<String, Integer> retryCounts, int throttledRetryCount,
+      long bitmapPoolHits, long bitmapPoolMisses, long encodedCacheHits, long encodedCacheMisses,
+      int encodedCacheSize, long thumbnailCacheHits, long thumbnailCacheMisses,
+      long thumbnailCacheSize, int trimCount, long totalTrimmedSize, int opaqueBitmapCount,
+      long totalOpaqueBitmapSavings, int deliveryCount, long averageDeliveryLatency,
+      long medianDeliveryLatency, long p90DeliveryLatency, long p99DeliveryLatency,
+      long maxDeliveryLatency, int fetchConcurrency, int decodeConcurrency, int fetchQueueSize,
+      int maxFetchQueueSize, int decodeQueueSize, int maxDecodeQueueSize,
+      Map<String, HostStats> hostStats, long timeStamp) {
     this.maxSize = maxSize;
     this.size = size;
     this.cacheHits = cacheHits;
     this.cacheMisses = cacheMisses;
+    this.derivedCacheHits = derivedCacheHits;
     this.totalDownloadSize = totalDownloadSize;
     this.totalOriginalBitmapSize = totalOriginalBitmapSize;
     this.totalTransformedBitmapSize = totalTransformedBitmapSize;
@@ -56,6 +130,36 @@ public class StatsSnapshot {
     this.downloadCount = downloadCount;
     this.originalBitmapCount = originalBitmapCount;
     this.transformedBitmapCount = transformedBitmapCount;
+    this.coalescedFetchCount = coalescedFetchCount;
+    this.canceledDownloadCount = canceledDownloadCount;
+    this.totalCanceledDownloadSavings = totalCanceledDownloadSavings;
+    this.retryCounts = retryCounts;
+    this.throttledRetryCount = throttledRetryCount;
+    this.bitmapPoolHits = bitmapPoolHits;
+    this.bitmapPoolMisses = bitmapPoolMisses;
+    this.encodedCacheHits = encodedCacheHits;
+    this.encodedCacheMisses = encodedCacheMisses;
+    this.encodedCacheSize = encodedCacheSize;
+    this.thumbnailCacheHits = thumbnailCacheHits;
+    this.thumbnailCacheMisses = thumbnailCacheMisses;
+    this.thumbnailCacheSize = thumbnailCacheSize;
+    this.trimCount = trimCount;
+    this.totalTrimmedSize = totalTrimmedSize;
+    this.opaqueBitmapCount = opaqueBitmapCount;
+    this.totalOpaqueBitmapSavings = totalOpaqueBitmapSavings;
+    this.deliveryCount = deliveryCount;
+    this.averageDeliveryLatency = averageDeliveryLatency;
+    this.medianDeliveryLatency = medianDeliveryLatency;
+    this.p90DeliveryLatency = p90DeliveryLatency;
+    this.p99DeliveryLatency = p99DeliveryLatency;
+    this.maxDeliveryLatency = maxDeliveryLatency;
+    this.fetchConcurrency = fetchConcurrency;
+    this.decodeConcurrency = decodeConcurrency;
+    this.fetchQueueSize = fetchQueueSize;
+    this.maxFetchQueueSize = maxFetchQueueSize;
+    this.decodeQueueSize = decodeQueueSize;
+    this.maxDecodeQueueSize = maxDecodeQueueSize;
+    this.hostStats = hostStats;
     this.timeStamp = timeStamp;
   }
 
@@ -80,6 +184,8 @@ public class StatsSnapshot {
     writer.println(cacheHits);
     writer.print("  Cache Misses: ");
     writer.println(cacheMisses);
+    writer.print("  Derived Cache Hits: ");
+    writer.println(derivedCacheHits);
     writer.println("Network Stats");
     writer.print("  Download Count: ");
     writer.println(downloadCount);
@@ -87,6 +193,20 @@ public class StatsSnapshot {
     writer.println(totalDownloadSize);
     writer.print("  Average Download Size: ");
     writer.println(averageDownloadSize);
+    writer.print("  Coalesced Fetches: ");
+    writer.println(coalescedFetchCount);
+    writer.print("  Canceled Downloads: ");
+    writer.println(canceledDownloadCount);
+    writer.print("  Total Canceled Download Savings: ");
+    writer.println(totalCanceledDownloadSavings);
+    writer.print("  Throttled Retries: ");
+    writer.println(throttledRetryCount);
+    for (Map.Entry<String, Integer> entry : retryCounts.entrySet()) {
+      writer.print("  Retries (");
+      writer.print(entry.getKey());
+      writer.print("): ");
+      writer.println(entry.getValue());
+    }
     writer.println("Bitmap Stats");
     writer.print("  Total Bitmaps Decoded: ");
     writer.println(originalBitmapCount);
@@ -100,6 +220,77 @@ public class StatsSnapshot {
     writer.println(averageOriginalBitmapSize);
     writer.print("  Average Transformed Bitmap Size: ");
     writer.println(averageTransformedBitmapSize);
+    writer.println("Bitmap Pool Stats");
+    writer.print("  Pool Hits: ");
+    writer.println(bitmapPoolHits);
+    writer.print("  Pool Misses: ");
+    writer.println(bitmapPoolMisses);
+    writer.println("Encoded Memory Cache Stats");
+    writer.print("  Cache Size: ");
+    writer.println(encodedCacheSize);
+    writer.print("  Cache Hits: ");
+    writer.println(encodedCacheHits);
+    writer.print("  Cache Misses: ");
+    writer.println(encodedCacheMisses);
+    writer.println("Thumbnail Cache Stats");
+    writer.print("  Cache Size: ");
+    writer.println(thumbnailCacheSize);
+    writer.print("  Cache Hits: ");
+    writer.println(thumbnailCacheHits);
+    writer.print("  Cache Misses: ");
+    writer.println(thumbnailCacheMisses);
+    writer.println("Memory Trim Stats");
+    writer.print("  Trim Count: ");
+    writer.println(trimCount);
+    writer.print("  Total Trimmed Size: ");
+    writer.println(totalTrimmedSize);
+    writer.println("Bitmap Config Stats");
+    writer.print("  Opaque Bitmap Count: ");
+    writer.println(opaqueBitmapCount);
+    writer.print("  Total Opaque Bitmap Savings: ");
+    writer.println(totalOpaqueBitmapSavings);
+    writer.println("Delivery Stats");
+    writer.print("  Delivery Count: ");
+    writer.println(deliveryCount);
+    writer.print("  Average Delivery Latency: ");
+    writer.println(averageDeliveryLatency);
+    writer.print("  Median Delivery Latency: ");
+    writer.println(medianDeliveryLatency);
+    writer.print("  90th Percentile Delivery Latency: ");
+    writer.println(p90DeliveryLatency);
+    writer.print("  99th Percentile Delivery Latency: ");
+    writer.println(p99DeliveryLatency);
+    writer.print("  Max Delivery Latency: ");
+    writer.println(maxDeliveryLatency);
+    writer.println("Executor Stats");
+    writer.print("  Fetch Concurrency: ");
+    writer.println(fetchConcurrency);
+    writer.print("  Decode Concurrency: ");
+    writer.println(decodeConcurrency);
+    writer.print("  Fetch Queue Size: ");
+    writer.println(fetchQueueSize);
+    writer.print("  Max Fetch Queue Size: ");
+    writer.println(maxFetchQueueSize);
+    writer.print("  Decode Queue Size: ");
+    writer.println(decodeQueueSize);
+    writer.print("  Max Decode Queue Size: ");
+    writer.println(maxDecodeQueueSize);
+    writer.println("Host Stats");
+    for (Map.Entry<String, HostStats> entry : hostStats.entrySet()) {
+      HostStats host = entry.getValue();
+      writer.print("  Host: ");
+      writer.println(entry.getKey());
+      writer.print("    In Flight: ");
+      writer.println(host.inFlightCount);
+      writer.print("    Queued: ");
+      writer.println(host.queuedCount);
+      writer.print("    Fetch Count: ");
+      writer.println(host.fetchCount);
+      writer.print("    Average Fetch Latency: ");
+      writer.println(host.averageFetchLatency);
+      writer.print("    Max Fetch Latency: ");
+      writer.println(host.maxFetchLatency);
+    }
     writer.println("===============END PICASSO STATS ===============");
     writer.flush();
   }
@@ -114,12 +305,24 @@ public class StatsSnapshot {
         + cacheHits
         + ", cacheMisses="
         + cacheMisses
+        + ", derivedCacheHits="
+        + derivedCacheHits
         + ", downloadCount="
         + downloadCount
         + ", totalDownloadSize="
         + totalDownloadSize
         + ", averageDownloadSize="
         + averageDownloadSize
+        + ", coalescedFetchCount="
+        + coalescedFetchCount
+        + ", canceledDownloadCount="
+        + canceledDownloadCount
+        + ", totalCanceledDownloadSavings="
+        + totalCanceledDownloadSavings
+        + ", retryCounts="
+        + retryCounts
+        + ", throttledRetryCount="
+        + throttledRetryCount
         + ", totalOriginalBitmapSize="
         + totalOriginalBitmapSize
         + ", totalTransformedBitmapSize="
@@ -132,8 +335,96 @@ public class StatsSnapshot {
         + originalBitmapCount
         + ", transformedBitmapCount="
         + transformedBitmapCount
+        + ", bitmapPoolHits="
+        + bitmapPoolHits
+        + ", bitmapPoolMisses="
+        + bitmapPoolMisses
+        + ", encodedCacheHits="
+        + encodedCacheHits
+        + ", encodedCacheMisses="
+        + encodedCacheMisses
+        + ", encodedCacheSize="
+        + encodedCacheSize
+        + ", thumbnailCacheHits="
+        + thumbnailCacheHits
+        + ", thumbnailCacheMisses="
+        + thumbnailCacheMisses
+        + ", thumbnailCacheSize="
+        + thumbnailCacheSize
+        + ", trimCount="
+        + trimCount
+        + ", totalTrimmedSize="
+        + totalTrimmedSize
+        + ", opaqueBitmapCount="
+        + opaqueBitmapCount
+        + ", totalOpaqueBitmapSavings="
+        + totalOpaqueBitmapSavings
+        + ", deliveryCount="
+        + deliveryCount
+        + ", averageDeliveryLatency="
+        + averageDeliveryLatency
+        + ", medianDeliveryLatency="
+        + medianDeliveryLatency
+        + ", p90DeliveryLatency="
+        + p90DeliveryLatency
+        + ", p99DeliveryLatency="
+        + p99DeliveryLatency
+        + ", maxDeliveryLatency="
+        + maxDeliveryLatency
+        + ", fetchConcurrency="
+        + fetchConcurrency
+        + ", decodeConcurrency="
+        + decodeConcurrency
+        + ", fetchQueueSize="
+        + fetchQueueSize
+        + ", maxFetchQueueSize="
+        + maxFetchQueueSize
+        + ", decodeQueueSize="
+        + decodeQueueSize
+        + ", maxDecodeQueueSize="
+        + maxDecodeQueueSize
+        + ", hostStats="
+        + hostStats
         + ", timeStamp="
         + timeStamp
         + '}';
   }
+
+  /** Network stats of a single host at the time of the snapshot. */
+  public static final class HostStats {
+    /** Hunters fetching from the host. */
+    public final int inFlightCount;
+    /** Hunters waiting for the host or for a free slot in total. */
+    public final int queuedCount;
+    /** Hunters which fetched an image from the host. */
+    public final int fetchCount;
+    /** Average milliseconds from submitting a hunter to fetching its image from the host. */
+    public final long averageFetchLatency;
+    /** The longest fetch latency so far, in milliseconds. */
+    public final long maxFetchLatency;
+
+    public HostStats(int inFlightCount, int queuedCount, int fetchCount, long averageFetchLatency,
+        long maxFetchLatency) {
+      this.inFlightCount = inFlightCount;
+      this.queuedCount = queuedCount;
+      this.fetchCount = fetchCount;
+      this.averageFetchLatency = averageFetchLatency;
+      this.maxFetchLatency = maxFetchLatency;
+    }
+
+    @Override public String toString() {
+      return "HostStats{"
+          + "inFlightCount="
+          + inFlightCount
+          + ", queuedCount="
+          + queuedCount
+          + ", fetchCount="
+          + fetchCount
+          + ", averageFetchLatency="
+          + averageFetchLatency
+          + ", maxFetchLatency="
+          + maxFetchLatency
+          + '}';
+    }
+  }
 }
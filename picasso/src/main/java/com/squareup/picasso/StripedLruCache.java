@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import static com.squareup.picasso.Utils.KEY_SEPARATOR;
+
+/**
+ * A memory cache which splits its key space into independently locked {@link LruCache} segments.
+ * Lookups for different images rarely contend on the same lock, which helps when the main thread,
+ * the dispatcher and the hunter threads all access the cache at once.
+ * <p>
+ * Keys are assigned to a segment by the part preceding the first key separator, so all resize and
+ * transformation variants of one image live in the same segment. Each segment has an equal share
+ * of the maximum size and evicts independently of the others. Images larger than a single segment
+ * are never cached.
+ */
+public class StripedLruCache implements Cache, Cache.Trimmable, VariantCache {
+  private static final int DEFAULT_STRIPE_COUNT = 4;
+
+  final LruCache[] segments;
+
+  /** Create a cache using an appropriate portion of the available RAM as the maximum size. */
+  public StripedLruCache(@NonNull Context context) {
+    this(Utils.calculateMemoryCacheSize(context));
+  }
+
+  /** Create a cache with a given maximum size in bytes. */
+  public StripedLruCache(int maxSize) {
+    this(maxSize, DEFAULT_STRIPE_COUNT);
+  }
+
+  /** Create a cache with a given maximum size in bytes split into {@code stripeCount} segments. */
+  public StripedLruCache(int maxSize, int stripeCount) {
+    if (stripeCount <= 0) {
+      throw new IllegalArgumentException("Stripe count must be positive.");
+    }
+    if (maxSize < stripeCount) {
+      throw new IllegalArgumentException("Max size must be at least the stripe count.");
+    }
+    segments = new LruCache[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      segments[i] = new LruCache(maxSize / stripeCount);
+    }
+  }
+
+  @Override public Bitmap get(@NonNull String key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    return segmentFor(key).get(key);
+  }
+
+  @Override public void set(@NonNull String key, @NonNull Bitmap bitmap) {
+    if (key == null || bitmap == null) {
+      throw new NullPointerException("key == null || bitmap == null");
+    }
+    segmentFor(key).set(key, bitmap);
+  }
+
+  @Override public int size() {
+    int size = 0;
+    for (LruCache segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  @Override public int maxSize() {
+    int maxSize = 0;
+    for (LruCache segment : segments) {
+      maxSize += segment.maxSize();
+    }
+    return maxSize;
+  }
+
+  @Override public void clear() {
+    for (LruCache segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override public void trimToSize(int size) {
+    for (LruCache segment : segments) {
+      segment.trimToSize(size / segments.length);
+    }
+  }
+
+  @Override public void clearKeyUri(String uri) {
+    // Every variant of the uri hashes to the same segment.
+    segmentFor(uri).clearKeyUri(uri);
+  }
+
+  @Nullable @Override public Bitmap getLargerVariant(String key, Request data) {
+    return segmentFor(key).getLargerVariant(key, data);
+  }
+
+  /** Returns the number of independently locked segments. */
+  public final int stripeCount() {
+    return segments.length;
+  }
+
+  /** Returns the number of times {@link #get} returned a value. */
+  public final int hitCount() {
+    int hitCount = 0;
+    for (LruCache segment : segments) {
+      hitCount += segment.hitCount();
+    }
+    return hitCount;
+  }
+
+  /** Returns the number of times {@link #get} returned {@code null}. */
+  public final int missCount() {
+    int missCount = 0;
+    for (LruCache segment : segments) {
+      missCount += segment.missCount();
+    }
+    return missCount;
+  }
+
+  /** Returns the number of times {@link #set(String, Bitmap)} was called. */
+  public final int putCount() {
+    int putCount = 0;
+    for (LruCache segment : segments) {
+      putCount += segment.putCount();
+    }
+    return putCount;
+  }
+
+  /** Returns the number of values that have been evicted. */
+  public final int evictionCount() {
+    int evictionCount = 0;
+    for (LruCache segment : segments) {
+      evictionCount += segment.evictionCount();
+    }
+    return evictionCount;
+  }
+
+  LruCache segmentFor(String key) {
+    // Hash only the uri portion of the key, without allocating a substring.
+    int hash = 0;
+    for (int i = 0, length = key.length(); i < length; i++) {
+      char c = key.charAt(i);
+      if (c == KEY_SEPARATOR) {
+        break;
+      }
+      hash = 31 * hash + c;
+    }
+    hash ^= (hash >>> 16);
+    return segments[(hash & Integer.MAX_VALUE) % segments.length];
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okio.ByteString;
+
+/**
+ * A disk cache of resized and transformed bitmaps, keyed by the full request key. Requests which
+ * hit it skip downloading and decoding the original image as well as every transformation.
+ * <p>
+ * Bitmaps are stored as their raw pixels behind a small header so reading one back is a single
+ * copy rather than a decode. The file for a key is named after the hash of its source key followed
+ * by the hash of the key itself, which lets all variants of an image be removed at once. Files are
+ * evicted least recently used first once the directory grows beyond its maximum size.
+ */
+final class ThumbnailDiskCache {
+  private static final int MAGIC = 0x50494354; // "PICT"
+  private static final int HEADER_SIZE = 5 * 4;
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
+  private final File directory;
+  private final long maxSize;
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75f, true);
+  /** Hashes of the source keys whose variants are hidden until {@link #remove} deletes them. */
+  private final Set<String> hidden = new HashSet<>();
+
+  private boolean initialized;
+  private long size;
+  private int hitCount;
+  private int missCount;
+  private int putCount;
+
+  ThumbnailDiskCache(File directory, long maxSize) {
+    if (directory == null) {
+      throw new IllegalArgumentException("Directory must not be null.");
+    }
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive.");
+    }
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /** Returns the bitmap stored for {@code key}, or null. Must not be called on the main thread. */
+  @Nullable Bitmap get(String key) {
+    String name = fileName(key);
+    synchronized (this) {
+      initialize();
+      if (isHidden(name) || entries.get(name) == null) {
+        missCount++;
+        return null;
+      }
+    }
+
+    File file = new File(directory, name);
+    Bitmap bitmap = null;
+    try {
+      bitmap = read(file);
+    } catch (IOException | IllegalArgumentException ignored) {
+    }
+
+    synchronized (this) {
+      if (bitmap == null) {
+        // The file is truncated, corrupt or was removed concurrently.
+        missCount++;
+        removeEntry(name);
+        return null;
+      }
+      hitCount++;
+    }
+    // Keep the recency order across restarts.
+    //noinspection ResultOfMethodCallIgnored
+    file.setLastModified(System.currentTimeMillis());
+    return bitmap;
+  }
+
+  /** Store {@code bitmap} for {@code key}. Must not be called on the main thread. */
+  void set(String key, Bitmap bitmap) {
+    Bitmap.Config config = bitmap.getConfig();
+    if (config == null || bitmap.isRecycled()) {
+      return;
+    }
+    long length = HEADER_SIZE + (long) bitmap.getRowBytes() * bitmap.getHeight();
+    if (length > maxSize) {
+      return;
+    }
+
+    String name = fileName(key);
+    synchronized (this) {
+      initialize();
+    }
+    File temp = new File(directory, name + TEMP_SUFFIX);
+    File file = new File(directory, name);
+    try {
+      write(temp, bitmap, config);
+    } catch (IOException | IllegalStateException e) {
+      // Unwritable, or the bitmap was recycled while the write was waiting.
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      return;
+    }
+
+    synchronized (this) {
+      if (isHidden(name) || !temp.renameTo(file)) {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+        return;
+      }
+      Long previous = entries.put(name, length);
+      size += length;
+      if (previous != null) {
+        size -= previous;
+      }
+      putCount++;
+      trimToSize(maxSize);
+    }
+  }
+
+  /**
+   * Treat every variant stored for the image identified by {@code sourceKey} as missing until
+   * {@link #remove} deletes them. Unlike removing them, this does no I/O.
+   */
+  synchronized void hide(String sourceKey) {
+    hidden.add(hash(sourceKey));
+  }
+
+  /** Remove every variant stored for the image identified by {@code sourceKey}. */
+  synchronized void remove(String sourceKey) {
+    initialize();
+    String sourceHash = hash(sourceKey);
+    hidden.remove(sourceHash);
+    String prefix = sourceHash + '.';
+    Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      if (entry.getKey().startsWith(prefix)) {
+        size -= entry.getValue();
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, entry.getKey()).delete();
+        iterator.remove();
+      }
+    }
+  }
+
+  synchronized void clear() {
+    initialize();
+    trimToSize(-1);
+  }
+
+  synchronized long size() {
+    return size;
+  }
+
+  long maxSize() {
+    return maxSize;
+  }
+
+  synchronized int hitCount() {
+    return hitCount;
+  }
+
+  synchronized int missCount() {
+    return missCount;
+  }
+
+  synchronized int putCount() {
+    return putCount;
+  }
+
+  /** Index the files left by earlier processes, least recently used first. */
+  private void initialize() {
+    if (initialized) {
+      return;
+    }
+    initialized = true;
+
+    //noinspection ResultOfMethodCallIgnored
+    directory.mkdirs();
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<File> cached = new ArrayList<>(files.length);
+    for (File file : files) {
+      if (file.getName().endsWith(TEMP_SUFFIX)) {
+        // An interrupted write.
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      } else if (file.isFile()) {
+        cached.add(file);
+      }
+    }
+    File[] sorted = cached.toArray(new File[cached.size()]);
+    Arrays.sort(sorted, new Comparator<File>() {
+      @Override public int compare(File lhs, File rhs) {
+        long lhsModified = lhs.lastModified();
+        long rhsModified = rhs.lastModified();
+        return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+      }
+    });
+    for (File file : sorted) {
+      long length = file.length();
+      entries.put(file.getName(), length);
+      size += length;
+    }
+    trimToSize(maxSize);
+  }
+
+  private boolean isHidden(String name) {
+    return !hidden.isEmpty() && hidden.contains(name.substring(0, name.indexOf('.')));
+  }
+
+  private void removeEntry(String name) {
+    Long length = entries.remove(name);
+    if (length != null) {
+      size -= length;
+    }
+    //noinspection ResultOfMethodCallIgnored
+    new File(directory, name).delete();
+  }
+
+  private void trimToSize(long maxSize) {
+    Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      size -= entry.getValue();
+      //noinspection ResultOfMethodCallIgnored
+      new File(directory, entry.getKey()).delete();
+      iterator.remove();
+    }
+  }
+
+  private static Bitmap read(File file) throws IOException {
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC) {
+        return null;
+      }
+      int width = in.readInt();
+      int height = in.readInt();
+      int configOrdinal = in.readInt();
+      int byteCount = in.readInt();
+      if (configOrdinal < 0 || configOrdinal >= CONFIGS.length
+          || byteCount != file.length() - HEADER_SIZE) {
+        return null;
+      }
+      byte[] pixels = new byte[byteCount];
+      in.readFully(pixels);
+      Bitmap bitmap = Bitmap.createBitmap(width, height, CONFIGS[configOrdinal]);
+      bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+      return bitmap;
+    } finally {
+      Utils.closeQuietly(in);
+    }
+  }
+
+  private static void write(File file, Bitmap bitmap, Bitmap.Config config) throws IOException {
+    int byteCount = bitmap.getRowBytes() * bitmap.getHeight();
+    ByteBuffer pixels = ByteBuffer.allocate(byteCount);
+    bitmap.copyPixelsToBuffer(pixels);
+
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(bitmap.getWidth());
+      out.writeInt(bitmap.getHeight());
+      out.writeInt(config.ordinal());
+      out.writeInt(byteCount);
+      out.write(pixels.array(), 0, byteCount);
+    } finally {
+      out.close();
+    }
+  }
+
+  static String fileName(String key) {
+    return hash(Utils.getSourceKey(key)) + '.' + hash(key);
+  }
+
+  private static String hash(String value) {
+    return ByteString.encodeUtf8(value).md5().hex();
+  }
+}
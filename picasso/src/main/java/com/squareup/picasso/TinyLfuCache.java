@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.squareup.picasso.Utils.KEY_SEPARATOR;
+import static com.squareup.picasso.Utils.canDeriveVariant;
+
+/**
+ * A memory cache which only lets a new image displace a cached one when the new image has been
+ * requested more often recently. Scrolling quickly through a long list of images seen only once
+ * then leaves frequently reused images, such as avatars and icons, in the cache.
+ * <p>
+ * New images enter a small least recently used window. Images leaving the window are candidates
+ * for the main part of the cache, and are only admitted if their estimated access frequency is
+ * higher than that of the image the main part would evict for them. Images which are hit again
+ * in the main part are protected from eviction until more frequently used images push them back.
+ * Frequencies are counted for every {@link #get} of a key, including misses, so images which were
+ * evicted keep their history.
+ * <p>
+ * Compare {@link #hitCount()} and {@link #missCount()} with those of an {@link LruCache} of the
+ * same size to measure the difference for a given application.
+ */
+public class TinyLfuCache implements Cache, Cache.Trimmable, VariantCache {
+  private static final int WINDOW_PERCENT = 10;
+  private static final int PROTECTED_PERCENT = 80;
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  private final HashMap<String, Node> map = new HashMap<>();
+  /** The keys in {@link #map} for each uri, so that {@link #clearKeyUri} need not scan it. */
+  final HashMap<String, List<String>> uriKeys = new HashMap<>();
+  private final FrequencySketch sketch = new FrequencySketch();
+  private final Segment window = new Segment();
+  private final Segment probation = new Segment();
+  private final Segment protect = new Segment();
+  private final int maxSize;
+  private final int maxWindowSize;
+  private final int maxProtectedSize;
+
+  private int putCount;
+  private int evictionCount;
+  private int rejectionCount;
+  private int hitCount;
+  private int missCount;
+
+  /** Create a cache using an appropriate portion of the available RAM as the maximum size. */
+  public TinyLfuCache(@NonNull Context context) {
+    this(Utils.calculateMemoryCacheSize(context));
+  }
+
+  /** Create a cache with a given maximum size in bytes. */
+  public TinyLfuCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive.");
+    }
+    this.maxSize = maxSize;
+    this.maxWindowSize = Math.max(1, (int) ((long) maxSize * WINDOW_PERCENT / 100));
+    this.maxProtectedSize = (int) ((long) (maxSize - maxWindowSize) * PROTECTED_PERCENT / 100);
+  }
+
+  @Override public Bitmap get(@NonNull String key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+
+    synchronized (this) {
+      sketch.increment(key);
+      Node node = map.get(key);
+      if (node == null) {
+        missCount++;
+        return null;
+      }
+      hitCount++;
+      onHit(node);
+      return node.bitmap;
+    }
+  }
+
+  @Override public void set(@NonNull String key, @NonNull Bitmap bitmap) {
+    if (key == null || bitmap == null) {
+      throw new NullPointerException("key == null || bitmap == null");
+    }
+
+    int addedSize = Utils.getBitmapBytes(bitmap);
+    if (addedSize > maxSize) {
+      return;
+    }
+
+    synchronized (this) {
+      putCount++;
+      Node node = map.get(key);
+      if (node != null) {
+        segmentOf(node).size += addedSize - node.size;
+        node.bitmap = bitmap;
+        node.size = addedSize;
+        onHit(node);
+      } else {
+        node = new Node(key, bitmap, addedSize);
+        map.put(key, node);
+        addUriKey(key);
+        sketch.ensureCapacity(map.size());
+        window.addLast(node);
+        node.segment = WINDOW;
+      }
+      evict();
+    }
+  }
+
+  @Override public final synchronized int size() {
+    return window.size + probation.size + protect.size;
+  }
+
+  @Override public final int maxSize() {
+    return maxSize;
+  }
+
+  @Override public final synchronized void clear() {
+    map.clear();
+    uriKeys.clear();
+    window.clear();
+    probation.clear();
+    protect.clear();
+  }
+
+  /**
+   * Evict images until the size fits. Images on probation go first, then protected images and
+   * the window last, each least recently used first.
+   */
+  @Override public final synchronized void trimToSize(int size) {
+    while (size() > size && !map.isEmpty()) {
+      Node victim = probation.head != null
+          ? probation.head
+          : protect.head != null ? protect.head : window.head;
+      segmentOf(victim).remove(victim);
+      remove(victim.key);
+      evictionCount++;
+    }
+  }
+
+  @Override public final synchronized void clearKeyUri(String uri) {
+    List<String> keys = uriKeys.remove(uri);
+    if (keys == null) {
+      return;
+    }
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, count = keys.size(); i < count; i++) {
+      Node node = map.remove(keys.get(i));
+      segmentOf(node).remove(node);
+    }
+  }
+
+  @Nullable @Override public final synchronized Bitmap getLargerVariant(String key, Request data) {
+    if (!data.hasSize() || data.purgeable) {
+      return null;
+    }
+    int newlineIndex = key.indexOf(KEY_SEPARATOR);
+    if (newlineIndex == -1) {
+      return null;
+    }
+    List<String> keys = uriKeys.get(key.substring(0, newlineIndex));
+    if (keys == null) {
+      return null;
+    }
+    Bitmap smallest = null;
+    //noinspection ForLoopReplaceableByForEach
+    for (int i = 0, count = keys.size(); i < count; i++) {
+      String variantKey = keys.get(i);
+      if (variantKey.equals(key)) {
+        continue;
+      }
+      Bitmap variant = map.get(variantKey).bitmap;
+      if (canDeriveVariant(variantKey, newlineIndex + 1, variant, data)
+          && (smallest == null
+          || Utils.getBitmapBytes(variant) < Utils.getBitmapBytes(smallest))) {
+        smallest = variant;
+      }
+    }
+    return smallest;
+  }
+
+  /** Returns the number of times {@link #get} returned a value. */
+  public final synchronized int hitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of times {@link #get} returned {@code null}. */
+  public final synchronized int missCount() {
+    return missCount;
+  }
+
+  /** Returns the number of times {@link #set(String, Bitmap)} was called. */
+  public final synchronized int putCount() {
+    return putCount;
+  }
+
+  /** Returns the number of values that have been evicted, including rejected ones. */
+  public final synchronized int evictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Returns the number of values that were evicted when leaving the window because they were used
+   * less often than the value they would have displaced.
+   */
+  public final synchronized int rejectionCount() {
+    return rejectionCount;
+  }
+
+  private void onHit(Node node) {
+    switch (node.segment) {
+      case WINDOW:
+        window.moveToLast(node);
+        break;
+      case PROBATION:
+        probation.remove(node);
+        protect.addLast(node);
+        node.segment = PROTECTED;
+        // Demote the least recently used protected values to make room.
+        while (protect.size > maxProtectedSize && protect.head != node) {
+          Node demoted = protect.head;
+          protect.remove(demoted);
+          probation.addLast(demoted);
+          demoted.segment = PROBATION;
+        }
+        break;
+      default:
+        protect.moveToLast(node);
+    }
+  }
+
+  /** Move values out of the window and evict from the main part of the cache until both fit. */
+  private void evict() {
+    while (window.size > maxWindowSize && window.head != null) {
+      Node candidate = window.head;
+      window.remove(candidate);
+      admit(candidate);
+    }
+    // The window is over its share when it holds a single large value.
+    trimToSize(maxSize);
+  }
+
+  private void admit(Node candidate) {
+    int maxMainSize = maxSize - window.size;
+    if (probation.size + protect.size + candidate.size > maxMainSize) {
+      int candidateFrequency = sketch.frequency(candidate.key);
+      while (probation.size + protect.size + candidate.size > maxMainSize) {
+        Node victim = probation.head != null ? probation.head : protect.head;
+        if (victim == null || candidateFrequency <= sketch.frequency(victim.key)) {
+          remove(candidate.key);
+          evictionCount++;
+          rejectionCount++;
+          return;
+        }
+        segmentOf(victim).remove(victim);
+        remove(victim.key);
+        evictionCount++;
+      }
+    }
+    probation.addLast(candidate);
+    candidate.segment = PROBATION;
+  }
+
+  private void remove(String key) {
+    map.remove(key);
+    int newlineIndex = key.indexOf(KEY_SEPARATOR);
+    if (newlineIndex == -1) {
+      return;
+    }
+    String uri = key.substring(0, newlineIndex);
+    List<String> keys = uriKeys.get(uri);
+    if (keys != null && keys.remove(key) && keys.isEmpty()) {
+      uriKeys.remove(uri);
+    }
+  }
+
+  private void addUriKey(String key) {
+    int newlineIndex = key.indexOf(KEY_SEPARATOR);
+    if (newlineIndex == -1) {
+      return;
+    }
+    String uri = key.substring(0, newlineIndex);
+    List<String> keys = uriKeys.get(uri);
+    if (keys == null) {
+      keys = new ArrayList<>(2);
+      uriKeys.put(uri, keys);
+    }
+    keys.add(key);
+  }
+
+  private Segment segmentOf(Node node) {
+    switch (node.segment) {
+      case WINDOW:
+        return window;
+      case PROBATION:
+        return probation;
+      default:
+        return protect;
+    }
+  }
+
+  private static final class Node {
+    final String key;
+    Bitmap bitmap;
+    int size;
+    int segment;
+    Node previous;
+    Node next;
+
+    Node(String key, Bitmap bitmap, int size) {
+      this.key = key;
+      this.bitmap = bitmap;
+      this.size = size;
+    }
+  }
+
+  /** A doubly linked list of nodes from least to most recently used. */
+  private static final class Segment {
+    Node head;
+    Node tail;
+    int size;
+
+    void addLast(Node node) {
+      node.previous = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+      size += node.size;
+    }
+
+    void remove(Node node) {
+      if (node.previous == null) {
+        head = node.next;
+      } else {
+        node.previous.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.previous;
+      } else {
+        node.next.previous = node.previous;
+      }
+      node.previous = null;
+      node.next = null;
+      size -= node.size;
+    }
+
+    void moveToLast(Node node) {
+      if (node != tail) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    void clear() {
+      head = null;
+      tail = null;
+      size = 0;
+    }
+  }
+}
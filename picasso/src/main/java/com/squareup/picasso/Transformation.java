@@ -19,6 +19,13 @@ import android.graphics.Bitmap;
 
 /** Image transformation. */
 public interface Transformation {
+  /**
+   * Marker for transformations which hold no shared mutable state and can therefore transform
+   * several bitmaps at the same time. Other transformations never run concurrently with each other.
+   */
+  interface ThreadSafe extends Transformation {
+  }
+
   /**
    * Transform the source bitmap into a new bitmap. If you create a new bitmap instance, you must
    * call {@link android.graphics.Bitmap#recycle()} on {@code source}. You may return the original
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/**
+ * Bounds how many transformations run at once. Besides a fixed concurrency limit, the memory
+ * held by running transformations must fit into the headroom of the memory cache: the space it has
+ * not claimed yet, or a quarter of its maximum size once it is full. A single transformation is
+ * always admitted so that images larger than the headroom still make progress.
+ */
+final class TransformationLimiter {
+  private final Cache cache;
+  private final int maxConcurrent;
+
+  private int running;
+  private long runningBytes;
+
+  TransformationLimiter(Cache cache, int maxConcurrent) {
+    this.cache = cache;
+    this.maxConcurrent = maxConcurrent;
+  }
+
+  /** Block until a transformation needing {@code bytes} of memory may run. */
+  synchronized void acquire(long bytes) throws InterruptedException {
+    while (running > 0 && (running >= maxConcurrent || runningBytes + bytes > headroom())) {
+      wait();
+    }
+    running++;
+    runningBytes += bytes;
+  }
+
+  /** Signal that a transformation admitted by {@link #acquire(long)} has finished. */
+  synchronized void release(long bytes) {
+    running--;
+    runningBytes -= bytes;
+    notifyAll();
+  }
+
+  synchronized int running() {
+    return running;
+  }
+
+  private long headroom() {
+    int maxSize = cache.maxSize();
+    if (maxSize <= 0) {
+      // Memory caching is disabled so there is nothing to size against.
+      return Long.MAX_VALUE;
+    }
+    return Math.max(maxSize - cache.size(), maxSize / 4);
+  }
+}
@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -29,7 +30,6 @@ import android.os.Process;
 import android.os.StatFs;
 import android.provider.Settings;
 import android.util.Log;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -56,10 +56,18 @@ final class Utils {
   private static final int MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   static final int THREAD_LEAK_CLEANING_MS = 1000;
   static final char KEY_SEPARATOR = '\n';
+  private static final String RESIZE_PARAM = "resize:";
+  private static final String CENTER_INSIDE_PARAM = "centerInside" + KEY_SEPARATOR;
 
   /** Thread confined to main thread for key creation. */
   static final StringBuilder MAIN_THREAD_KEY_BUILDER = new StringBuilder();
 
+  /**
+   * Recently created keys on the main thread, indexed by their hash. A request which has the same
+   * key as a recent one reuses its key string instead of building a new one.
+   */
+  static final CacheKey[] MAIN_THREAD_KEYS = new CacheKey[256];
+
   /** Logging */
   static final String OWNER_MAIN = "Main";
   static final String OWNER_DISPATCHER = "Dispatcher";
@@ -97,6 +105,9 @@ final class Utils {
   private static final int WEBP_FILE_HEADER_SIZE = 12;
   private static final String WEBP_FILE_HEADER_RIFF = "RIFF";
   private static final String WEBP_FILE_HEADER_WEBP = "WEBP";
+  private static final int JPEG_FILE_HEADER_SIZE = 3;
+  /* The first chunk follows the file header. Its dimensions end at byte 30 for all formats. */
+  private static final int WEBP_BOUNDS_HEADER_SIZE = 30;
 
   private Utils() {
     // No instances.
@@ -162,9 +173,16 @@ final class Utils {
   }
 
   static String createKey(Request data) {
-    String result = createKey(data, MAIN_THREAD_KEY_BUILDER);
-    MAIN_THREAD_KEY_BUILDER.setLength(0);
-    return result;
+    long hash = CacheKey.hash(data);
+    int index = (int) (hash ^ (hash >>> 32)) & (MAIN_THREAD_KEYS.length - 1);
+    CacheKey key = MAIN_THREAD_KEYS[index];
+    if (key == null || key.hash != hash || !key.matches(data)) {
+      String result = createKey(data, MAIN_THREAD_KEY_BUILDER);
+      MAIN_THREAD_KEY_BUILDER.setLength(0);
+      key = new CacheKey(data, hash, result);
+      MAIN_THREAD_KEYS[index] = key;
+    }
+    return key.toString();
   }
 
   static String createKey(Request data, StringBuilder builder) {
@@ -209,6 +227,45 @@ final class Utils {
     return builder.toString();
   }
 
+  /** Returns the part of {@code key} which identifies the image regardless of its variant. */
+  static String getSourceKey(String key) {
+    int separatorIndex = key.indexOf(KEY_SEPARATOR);
+    return separatorIndex != -1 ? key.substring(0, separatorIndex) : key;
+  }
+
+  /**
+   * Returns true if the variant described by {@code data} can be derived from the bitmap cached
+   * for {@code variantKey}, whose parameters start at {@code paramsIndex}.
+   */
+  static boolean canDeriveVariant(String variantKey, int paramsIndex, Bitmap variant,
+      Request data) {
+    if (variant.isRecycled()
+        || (data.config != null && data.config != variant.getConfig())
+        || (data.targetWidth != 0 && variant.getWidth() < data.targetWidth)
+        || (data.targetHeight != 0 && variant.getHeight() < data.targetHeight)) {
+      return false;
+    }
+    String params = variantKey.substring(paramsIndex);
+    if (params.isEmpty()) {
+      return true; // The whole image, so anything smaller can be derived from it.
+    }
+    if (!params.startsWith(RESIZE_PARAM)) {
+      return false; // Rotated, cropped or transformed.
+    }
+    String rest = params.substring(params.indexOf(KEY_SEPARATOR) + 1);
+    if (rest.equals(CENTER_INSIDE_PARAM)) {
+      return true; // The whole image at a uniform scale.
+    }
+    // The whole image stretched to the requested size, which only composes with another stretch.
+    return rest.isEmpty()
+        && data.targetWidth != 0
+        && data.targetHeight != 0
+        && !data.centerCrop
+        && !data.centerInside
+        && data.rotationDegrees == 0
+        && !data.hasCustomTransformations();
+  }
+
   static void closeQuietly(InputStream is) {
     if (is == null) return;
     try {
@@ -283,14 +340,13 @@ final class Utils {
     return context.checkCallingOrSelfPermission(permission) == PackageManager.PERMISSION_GRANTED;
   }
 
-  static byte[] toByteArray(InputStream input) throws IOException {
-    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-    byte[] buffer = new byte[1024 * 4];
-    int n;
-    while (-1 != (n = input.read(buffer))) {
-      byteArrayOutputStream.write(buffer, 0, n);
-    }
-    return byteArrayOutputStream.toByteArray();
+  static boolean isJpegFile(InputStream stream) throws IOException {
+    byte[] fileHeaderBytes = new byte[JPEG_FILE_HEADER_SIZE];
+    // JPEG files start with a start of image marker followed by the next marker.
+    return stream.read(fileHeaderBytes, 0, JPEG_FILE_HEADER_SIZE) == JPEG_FILE_HEADER_SIZE
+        && fileHeaderBytes[0] == (byte) 0xFF
+        && fileHeaderBytes[1] == (byte) 0xD8
+        && fileHeaderBytes[2] == (byte) 0xFF;
   }
 
   static boolean isWebPFile(InputStream stream) throws IOException {
@@ -304,6 +360,48 @@ final class Utils {
     return isWebPFile;
   }
 
+  /**
+   * Read the dimensions of a WebP image from its header into {@code options}, consuming only the
+   * first few bytes of the stream. Returns false if the header is not understood.
+   */
+  static boolean decodeWebPBounds(InputStream stream, BitmapFactory.Options options)
+      throws IOException {
+    byte[] header = new byte[WEBP_BOUNDS_HEADER_SIZE];
+    int read = 0;
+    while (read < header.length) {
+      int n = stream.read(header, read, header.length - read);
+      if (n == -1) {
+        return false;
+      }
+      read += n;
+    }
+
+    int width;
+    int height;
+    String chunk = new String(header, 12, 4, "US-ASCII");
+    if ("VP8 ".equals(chunk)) {
+      // Lossy: 14 bit dimensions after the frame tag and start code.
+      width = ((header[26] & 0xff) | (header[27] & 0xff) << 8) & 0x3fff;
+      height = ((header[28] & 0xff) | (header[29] & 0xff) << 8) & 0x3fff;
+    } else if ("VP8L".equals(chunk)) {
+      // Lossless: 14 bit dimensions minus one packed after the signature byte.
+      int bits = (header[21] & 0xff) | (header[22] & 0xff) << 8 | (header[23] & 0xff) << 16
+          | (header[24] & 0xff) << 24;
+      width = (bits & 0x3fff) + 1;
+      height = ((bits >> 14) & 0x3fff) + 1;
+    } else if ("VP8X".equals(chunk)) {
+      // Extended: 24 bit canvas dimensions minus one after the flags.
+      width = ((header[24] & 0xff) | (header[25] & 0xff) << 8 | (header[26] & 0xff) << 16) + 1;
+      height = ((header[27] & 0xff) | (header[28] & 0xff) << 8 | (header[29] & 0xff) << 16) + 1;
+    } else {
+      return false;
+    }
+    options.outWidth = width;
+    options.outHeight = height;
+    options.outMimeType = "image/webp";
+    return true;
+  }
+
   static int getResourceId(Resources resources, Request data) throws FileNotFoundException {
     if (data.resourceId != 0 || data.uri == null) {
       return data.resourceId;
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+/** A {@link Cache} which can find a larger variant of an image to derive a missing one from. */
+interface VariantCache {
+  /**
+   * Returns the smallest bitmap cached for another variant of the same image as {@code key} from
+   * which the variant described by {@code data} can be derived by scaling and cropping, or null.
+   * This is counted as neither a hit nor a miss.
+   */
+  @Nullable Bitmap getLargerVariant(String key, Request data);
+}
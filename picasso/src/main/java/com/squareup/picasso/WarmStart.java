@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static android.content.ContentResolver.SCHEME_ANDROID_RESOURCE;
+
+/**
+ * Counts how often the images of each request are displayed and saves the most used requests to a
+ * file, so that a new process can load them into the memory cache before they are first needed.
+ * <p>
+ * Only requests which can be rebuilt from the file are counted: those with a uri and without
+ * custom transformations or a rotation pivot. Resource uris are skipped because resource ids may
+ * change between versions of an application. Counts from earlier processes are halved on every
+ * {@link #load()}, so images which are no longer used fade out of the file.
+ */
+final class WarmStart {
+  private static final int VERSION = 1;
+  private static final int TRACKED_MULTIPLE = 4;
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File file;
+  private final int maxRequests;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(0, 0.75f, true);
+
+  private boolean dirty;
+
+  WarmStart(File file, int maxRequests) {
+    if (file == null) {
+      throw new IllegalArgumentException("File must not be null.");
+    }
+    if (maxRequests <= 0) {
+      throw new IllegalArgumentException("Max requests must be positive.");
+    }
+    this.file = file;
+    this.maxRequests = maxRequests;
+  }
+
+  /**
+   * Count a use of the image for {@code request}. Returns true when this is the first change
+   * since the last {@link #save()}, which should then be scheduled.
+   */
+  synchronized boolean record(String key, Request request) {
+    if (!isPersistable(request)) {
+      return false;
+    }
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(request, 0);
+      entries.put(key, entry);
+      // Forget the least recently used requests rather than growing without bound.
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (entries.size() > maxRequests * TRACKED_MULTIPLE) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+    entry.uses++;
+    boolean wasDirty = dirty;
+    dirty = true;
+    return !wasDirty;
+  }
+
+  /**
+   * Returns the requests saved by an earlier process, most used first, and continues counting
+   * from their halved counts. Must not be called on the main thread.
+   */
+  List<Request> load() {
+    List<Entry> loaded;
+    try {
+      loaded = read(file);
+    } catch (IOException | RuntimeException e) {
+      // A missing, truncated or corrupt file.
+      return Collections.emptyList();
+    }
+
+    List<Request> requests = new ArrayList<>(loaded.size());
+    synchronized (this) {
+      //noinspection ForLoopReplaceableByForEach
+      for (int i = 0, n = loaded.size(); i < n; i++) {
+        Entry entry = loaded.get(i);
+        String key = Utils.createKey(entry.request, new StringBuilder());
+        if (!entries.containsKey(key)) {
+          entries.put(key, new Entry(entry.request, entry.uses / 2));
+        }
+        requests.add(entry.request);
+      }
+    }
+    return requests;
+  }
+
+  /** Write the most used requests to the file. Must not be called on the main thread. */
+  void save() {
+    List<Entry> sorted;
+    synchronized (this) {
+      dirty = false;
+      sorted = new ArrayList<>(entries.size());
+      for (Entry entry : entries.values()) {
+        sorted.add(new Entry(entry.request, entry.uses));
+      }
+    }
+    Collections.sort(sorted, new Comparator<Entry>() {
+      @Override public int compare(Entry lhs, Entry rhs) {
+        return lhs.uses > rhs.uses ? -1 : (lhs.uses == rhs.uses ? 0 : 1);
+      }
+    });
+    List<Entry> top = sorted.subList(0, Math.min(sorted.size(), maxRequests));
+
+    File temp = new File(file.getPath() + TEMP_SUFFIX);
+    try {
+      write(temp, top);
+    } catch (IOException e) {
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      return;
+    }
+    if (!temp.renameTo(file)) {
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+    }
+  }
+
+  static boolean isPersistable(Request request) {
+    return request.uri != null
+        && !SCHEME_ANDROID_RESOURCE.equals(request.uri.getScheme())
+        && !request.hasCustomTransformations()
+        && !request.hasRotationPivot;
+  }
+
+  private static List<Entry> read(File file) throws IOException {
+    if (!file.exists()) {
+      return Collections.emptyList();
+    }
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != VERSION) {
+        return Collections.emptyList();
+      }
+      int count = in.readInt();
+      List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, 1024)));
+      for (int i = 0; i < count; i++) {
+        Request.Builder builder = new Request.Builder(Uri.parse(in.readUTF()));
+        if (in.readBoolean()) {
+          builder.stableKey(in.readUTF());
+        }
+        int targetWidth = in.readInt();
+        int targetHeight = in.readInt();
+        if (targetWidth != 0 || targetHeight != 0) {
+          builder.resize(targetWidth, targetHeight);
+        }
+        if (in.readBoolean()) {
+          builder.centerCrop(in.readInt());
+        }
+        if (in.readBoolean()) {
+          builder.centerInside();
+        }
+        if (in.readBoolean()) {
+          builder.onlyScaleDown();
+        }
+        builder.rotate(in.readFloat());
+        String config = in.readUTF();
+        if (!config.isEmpty()) {
+          builder.config(Bitmap.Config.valueOf(config));
+        }
+        if (in.readBoolean()) {
+          builder.purgeable();
+        }
+        builder.priority(Picasso.Priority.LOW);
+        entries.add(new Entry(builder.build(), in.readInt()));
+      }
+      return entries;
+    } finally {
+      Utils.closeQuietly(in);
+    }
+  }
+
+  private static void write(File file, List<Entry> entries) throws IOException {
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      //noinspection ForLoopReplaceableByForEach
+      for (int i = 0, n = entries.size(); i < n; i++) {
+        Entry entry = entries.get(i);
+        Request request = entry.request;
+        out.writeUTF(request.uri.toString());
+        out.writeBoolean(request.stableKey != null);
+        if (request.stableKey != null) {
+          out.writeUTF(request.stableKey);
+        }
+        out.writeInt(request.targetWidth);
+        out.writeInt(request.targetHeight);
+        out.writeBoolean(request.centerCrop);
+        if (request.centerCrop) {
+          out.writeInt(request.centerCropGravity);
+        }
+        out.writeBoolean(request.centerInside);
+        out.writeBoolean(request.onlyScaleDown);
+        out.writeFloat(request.rotationDegrees);
+        out.writeUTF(request.config != null ? request.config.name() : "");
+        out.writeBoolean(request.purgeable);
+        out.writeInt(entry.uses);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static final class Entry {
+    final Request request;
+    int uses;
+
+    Entry(Request request, int uses) {
+      this.request = request;
+      this.uses = uses;
+    }
+  }
+}
@@ -22,7 +22,9 @@ import android.net.Uri;
 import android.view.Gravity;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.robolectric.RobolectricGradleTestRunner;
@@ -30,13 +32,20 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowBitmap;
 import org.robolectric.shadows.ShadowMatrix;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.FutureTask;
+import javax.imageio.ImageIO;
 
 import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Bitmap.Config.RGB_565;
 import static android.media.ExifInterface.ORIENTATION_FLIP_HORIZONTAL;
 import static android.media.ExifInterface.ORIENTATION_FLIP_VERTICAL;
 import static android.media.ExifInterface.ORIENTATION_ROTATE_90;
@@ -44,7 +53,9 @@ import static android.media.ExifInterface.ORIENTATION_TRANSPOSE;
 import static android.media.ExifInterface.ORIENTATION_TRANSVERSE;
 import static com.squareup.picasso.BitmapHunter.forRequest;
 import static com.squareup.picasso.BitmapHunter.transformResult;
+import static com.squareup.picasso.Picasso.LoadedFrom.DISK;
 import static com.squareup.picasso.Picasso.LoadedFrom.MEMORY;
+import static com.squareup.picasso.Picasso.LoadedFrom.NETWORK;
 import static com.squareup.picasso.Picasso.Priority.HIGH;
 import static com.squareup.picasso.Picasso.Priority.LOW;
 import static com.squareup.picasso.Picasso.Priority.NORMAL;
@@ -74,14 +85,20 @@ import static com.squareup.picasso.TestUtils.makeBitmap;
 import static com.squareup.picasso.TestUtils.mockAction;
 import static com.squareup.picasso.TestUtils.mockImageViewTarget;
 import static com.squareup.picasso.TestUtils.mockPicasso;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
 import static org.fest.assertions.api.ANDROID.assertThat;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Assertions.entry;
 import static org.fest.assertions.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.robolectric.Shadows.shadowOf;
@@ -89,6 +106,8 @@ import static org.robolectric.Shadows.shadowOf;
 @RunWith(RobolectricGradleTestRunner.class)
 public class BitmapHunterTest {
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Mock Context context;
   @Mock Picasso picasso;
   @Mock Cache cache;
@@ -156,6 +175,213 @@ public class BitmapHunterTest {
     verify(dispatcher).dispatchRetry(hunter);
   }
 
+  @Test public void runOnFetchStageDispatchesDecode() throws Exception {
+    Action action = mockAction(URI_KEY_1, URI_1);
+    RemoteRequestHandler requestHandler = new RemoteRequestHandler(new byte[] { 1, 2, 3 });
+    BitmapHunter hunter =
+        new BitmapHunter(picasso, dispatcher, cache, stats, action, requestHandler);
+    hunter.run();
+    verify(dispatcher).dispatchDecode(hunter);
+    verify(dispatcher, never()).dispatchComplete(hunter);
+    assertThat(hunter.fetched.getContentLength()).isEqualTo(3);
+    InputStream stream = hunter.fetched.getStream();
+    assertThat(stream.read()).isEqualTo(1);
+    assertThat(stream.read()).isEqualTo(2);
+    assertThat(stream.read()).isEqualTo(3);
+    assertThat(stream.read()).isEqualTo(-1);
+  }
+
+  @Test public void runOnDecodeStageUsesFetchedResult() throws Exception {
+    Action action = mockAction(URI_KEY_1, URI_1);
+    RequestHandler requestHandler = spy(new RemoteRequestHandler(bitmap));
+    BitmapHunter hunter =
+        new BitmapHunter(picasso, dispatcher, cache, stats, action, requestHandler);
+    hunter.run();
+    verify(dispatcher).dispatchDecode(hunter);
+    hunter.run();
+    verify(dispatcher).dispatchComplete(hunter);
+    verify(requestHandler).load(action.getRequest(), 0);
+    assertThat(hunter.getResult()).isEqualTo(bitmap);
+    assertThat(hunter.fetched).isNull();
+  }
+
+  @Test public void shareFetchedReadsSameBytes() throws Exception {
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new RemoteRequestHandler(new byte[] { 1, 2 }));
+    assertThat(hunter.shareFetched()).isNull();
+    hunter.run();
+
+    RequestHandler.Result shared = hunter.shareFetched();
+    assertThat(shared.getStream()).isNotSameAs(hunter.fetched.getStream());
+    assertThat(shared.getContentLength()).isEqualTo(2);
+    assertThat(shared.getLoadedFrom()).isEqualTo(NETWORK);
+    assertThat(shared.getStream().read()).isEqualTo(1);
+    assertThat(hunter.fetched.getStream().read()).isEqualTo(1);
+  }
+
+  @Test public void automaticBitmapConfigDecodesJpegWithoutAlpha() throws Exception {
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .automaticBitmapConfig()
+        .build();
+    Action action = mockAction(URI_KEY_1, new Request.Builder(URI_1).build());
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new RemoteRequestHandler(jpegBytes()));
+    hunter.run();
+    hunter.run();
+
+    assertThat(hunter.getResult().getConfig()).isEqualTo(RGB_565);
+    verify(stats).dispatchOpaqueBitmapDecoded(hunter.getResult());
+  }
+
+  @Test public void automaticBitmapConfigKeepsAlphaOfOtherFormats() throws Exception {
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .automaticBitmapConfig()
+        .build();
+    Action action = mockAction(URI_KEY_1, new Request.Builder(URI_1).build());
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new RemoteRequestHandler(new byte[] { -119, 80, 78, 71 }));
+    hunter.run();
+    hunter.run();
+
+    assertThat(hunter.getResult().getConfig()).isNotEqualTo(RGB_565);
+    verify(stats, never()).dispatchOpaqueBitmapDecoded(any(Bitmap.class));
+  }
+
+  @Test public void automaticBitmapConfigKeepsRequestedConfig() throws Exception {
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .automaticBitmapConfig()
+        .build();
+    Action action = mockAction(URI_KEY_1, new Request.Builder(URI_1).config(ARGB_8888).build());
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new RemoteRequestHandler(jpegBytes()));
+    hunter.run();
+    hunter.run();
+
+    assertThat(hunter.getResult().getConfig()).isEqualTo(ARGB_8888);
+    verify(stats, never()).dispatchOpaqueBitmapDecoded(any(Bitmap.class));
+  }
+
+  @Test public void fetchStoresBytesInEncodedCache() throws Exception {
+    EncodedMemoryCache encodedCache = new EncodedMemoryCache(100);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .encodedCache(encodedCache)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new RemoteRequestHandler(new byte[] { 1, 2, 3 }));
+    hunter.run();
+
+    assertThat(encodedCache.get(URI_1.toString())).isEqualTo(new byte[] { 1, 2, 3 });
+    assertThat(hunter.fetched.isEncodedCacheHit()).isFalse();
+  }
+
+  @Test public void fetchReadsEncodedCache() throws Exception {
+    EncodedMemoryCache encodedCache = new EncodedMemoryCache(100);
+    encodedCache.set(URI_1.toString(), new byte[] { 4, 5 }, 2);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .encodedCache(encodedCache)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    RequestHandler requestHandler = spy(new RemoteRequestHandler(new byte[] { 1, 2, 3 }));
+    BitmapHunter hunter =
+        new BitmapHunter(picasso, dispatcher, cache, stats, action, requestHandler);
+    hunter.run();
+
+    verify(dispatcher).dispatchDecode(hunter);
+    verify(requestHandler, never()).load(action.getRequest(), 0);
+    assertThat(hunter.fetched.isEncodedCacheHit()).isTrue();
+    assertThat(hunter.fetched.getLoadedFrom()).isEqualTo(MEMORY);
+    assertThat(hunter.fetched.getStream().read()).isEqualTo(4);
+  }
+
+  @Test public void fetchSkipsEncodedCacheWithMemoryPolicy() throws Exception {
+    EncodedMemoryCache encodedCache = new EncodedMemoryCache(100);
+    encodedCache.set(URI_1.toString(), new byte[] { 4, 5 }, 2);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .encodedCache(encodedCache)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    when(action.getMemoryPolicy()).thenReturn(MemoryPolicy.NO_CACHE.index);
+    RequestHandler requestHandler = spy(new RemoteRequestHandler(new byte[] { 1, 2, 3 }));
+    BitmapHunter hunter =
+        new BitmapHunter(picasso, dispatcher, cache, stats, action, requestHandler);
+    hunter.run();
+
+    verify(requestHandler).load(action.getRequest(), 0);
+    assertThat(hunter.fetched.isEncodedCacheHit()).isFalse();
+  }
+
+  @Test public void fetchReadsThumbnailCacheBeforeLoading() throws Exception {
+    ThumbnailDiskCache thumbnailCache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    Request request = new Request.Builder(URI_1).resize(20, 10).build();
+    String key = Utils.createKey(request);
+    thumbnailCache.set(key, Bitmap.createBitmap(20, 10, ARGB_8888));
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .thumbnailCache(thumbnailCache)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(key, request);
+    RequestHandler requestHandler = spy(new RemoteRequestHandler(new byte[] { 1, 2, 3 }));
+    BitmapHunter hunter =
+        new BitmapHunter(picasso, dispatcher, cache, stats, action, requestHandler);
+    hunter.run();
+
+    verify(dispatcher).dispatchComplete(hunter);
+    verify(requestHandler, never()).load(request, 0);
+    assertThat(hunter.getResult()).hasWidth(20).hasHeight(10);
+    assertThat(hunter.getLoadedFrom()).isEqualTo(DISK);
+    assertThat(thumbnailCache.hitCount()).isEqualTo(1);
+  }
+
+  @Test public void huntWritesTransformedResultToThumbnailCache() throws Exception {
+    ThumbnailDiskCache thumbnailCache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    Request request = new Request.Builder(URI_1)
+        .transform(new TestTransformation("test", Bitmap.createBitmap(20, 10, ARGB_8888)))
+        .build();
+    String key = Utils.createKey(request);
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .thumbnailCache(thumbnailCache)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(key, request);
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new TestableRequestHandler(Bitmap.createBitmap(20, 10, ARGB_8888), null));
+    Bitmap result = hunter.hunt();
+
+    assertThat(result).isNotNull();
+    verify(dispatcher).dispatchThumbnailWrite(key, result);
+  }
+
+  @Test public void huntDoesNotWriteUntransformedResultToThumbnailCache() throws Exception {
+    ThumbnailDiskCache thumbnailCache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .thumbnailCache(thumbnailCache)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = new BitmapHunter(picasso, dispatcher, cache, stats, action,
+        new TestableRequestHandler(Bitmap.createBitmap(20, 10, ARGB_8888), null));
+    hunter.hunt();
+
+    verify(dispatcher, never()).dispatchThumbnailWrite(anyString(), any(Bitmap.class));
+  }
+
+  @Test public void fetchReturnsResultInCache() throws Exception {
+    when(cache.get(URI_KEY_1)).thenReturn(bitmap);
+    Action action = mockAction(URI_KEY_1, URI_1);
+    RequestHandler requestHandler = spy(new RemoteRequestHandler(bitmap));
+    BitmapHunter hunter =
+        new BitmapHunter(picasso, dispatcher, cache, stats, action, requestHandler);
+    hunter.run();
+    verify(dispatcher).dispatchComplete(hunter);
+    verify(dispatcher, never()).dispatchDecode(hunter);
+    verify(requestHandler, never()).load(action.getRequest(), 0);
+  }
+
   @Test public void huntDecodesWhenNotInCache() throws Exception {
     Action action = mockAction(URI_KEY_1, URI_1, mockImageViewTarget());
     TestableBitmapHunter hunter =
@@ -179,6 +405,80 @@ public class BitmapHunterTest {
     assertThat(result).isEqualTo(bitmap);
   }
 
+  @Test public void huntDerivesFromLargerVariantInCache() throws Exception {
+    LruCache lruCache = new LruCache(100000);
+    Bitmap larger = Bitmap.createBitmap(40, 30, ARGB_8888);
+    lruCache.set(URI_KEY_1, larger);
+    Request request = new Request.Builder(URI_1).resize(20, 15).build();
+    Action action = mockAction(Utils.createKey(request), request);
+    TestableBitmapHunter hunter =
+        new TestableBitmapHunter(picasso, dispatcher, lruCache, stats, action, bitmap);
+
+    Bitmap result = hunter.hunt();
+    ShadowBitmap shadowBitmap = shadowOf(result);
+    assertThat(shadowBitmap.getCreatedFromBitmap()).isSameAs(larger);
+    ShadowMatrix shadowMatrix = shadowOf(shadowBitmap.getCreatedFromMatrix());
+    assertThat(shadowMatrix.getPreOperations()).containsOnly("scale 0.5 0.5");
+    assertThat(larger.isRecycled()).isFalse();
+    assertThat(hunter.getLoadedFrom()).isEqualTo(MEMORY);
+    verify(hunter.requestHandler, never()).load(request, 0);
+    verify(stats).dispatchDerivedCacheHit();
+  }
+
+  @Test public void huntDerivesFromLargerVariantInTinyLfuCache() throws Exception {
+    TinyLfuCache tinyLfuCache = new TinyLfuCache(100000);
+    Bitmap larger = Bitmap.createBitmap(40, 30, ARGB_8888);
+    tinyLfuCache.set(URI_KEY_1, larger);
+    Request request = new Request.Builder(URI_1).resize(20, 15).build();
+    Action action = mockAction(Utils.createKey(request), request);
+    TestableBitmapHunter hunter =
+        new TestableBitmapHunter(picasso, dispatcher, tinyLfuCache, stats, action, bitmap);
+
+    Bitmap result = hunter.hunt();
+    assertThat(shadowOf(result).getCreatedFromBitmap()).isSameAs(larger);
+    assertThat(hunter.getLoadedFrom()).isEqualTo(MEMORY);
+    verify(hunter.requestHandler, never()).load(request, 0);
+    verify(stats).dispatchDerivedCacheHit();
+  }
+
+  @Test public void huntDerivingFromLargerVariantHoldsTransformationLimiter() throws Exception {
+    LruCache lruCache = new LruCache(100000);
+    lruCache.set(URI_KEY_1, Bitmap.createBitmap(40, 30, ARGB_8888));
+    final TransformationLimiter limiter = new TransformationLimiter(lruCache, 1);
+    final int[] running = new int[1];
+    Transformation transformation = new TestTransformation("test", makeBitmap()) {
+      @Override public Bitmap transform(Bitmap source) {
+        running[0] = limiter.running();
+        return super.transform(source);
+      }
+    };
+    Request request = new Request.Builder(URI_1).resize(20, 15).transform(transformation).build();
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, lruCache, stats)
+        .transformationLimiter(limiter)
+        .build();
+    Action action = mockAction(Utils.createKey(request), request);
+    TestableBitmapHunter hunter =
+        new TestableBitmapHunter(picasso, dispatcher, lruCache, stats, action, bitmap);
+
+    hunter.hunt();
+    assertThat(running[0]).isEqualTo(1);
+    assertThat(limiter.running()).isZero();
+    verify(stats).dispatchDerivedCacheHit();
+  }
+
+  @Test public void huntLoadsWhenNoVariantIsLargeEnough() throws Exception {
+    LruCache lruCache = new LruCache(100000);
+    lruCache.set(URI_KEY_1, Bitmap.createBitmap(10, 10, ARGB_8888));
+    Request request = new Request.Builder(URI_1).resize(20, 15).build();
+    Action action = mockAction(Utils.createKey(request), request);
+    TestableBitmapHunter hunter = new TestableBitmapHunter(picasso, dispatcher, lruCache, stats,
+        action, Bitmap.createBitmap(40, 30, ARGB_8888));
+
+    hunter.hunt();
+    verify(hunter.requestHandler).load(request, 0);
+    verify(stats, never()).dispatchDerivedCacheHit();
+  }
+
   @Test public void huntUnrecognizedUri() throws Exception {
     Action action = mockAction(CUSTOM_URI_KEY, CUSTOM_URI);
     BitmapHunter hunter = forRequest(picasso, dispatcher, cache, stats, action);
@@ -261,6 +561,117 @@ public class BitmapHunterTest {
     assertThat(hunter.isCancelled()).isTrue();
   }
 
+  @Test public void cancelAbortsDownloadInProgress() {
+    Action action = mockAction(URI_KEY_1, URI_1, mockImageViewTarget());
+    BitmapHunter hunter = new TestableBitmapHunter(picasso, dispatcher, cache, stats, action);
+    hunter.future = new FutureTask<>(mock(Runnable.class), mock(Object.class));
+    Runnable abort = mock(Runnable.class);
+    hunter.cancellation.setOnCancel(abort);
+    assertThat(hunter.cancel()).isFalse();
+    verify(abort, never()).run();
+    hunter.detach(action);
+    assertThat(hunter.cancel()).isTrue();
+    verify(abort).run();
+    assertThat(hunter.cancellation.isCanceled()).isTrue();
+  }
+
+  @Test public void fetchCountsBytesSavedWhenCanceledWhileDownloading() throws Exception {
+    Downloader downloader = new Downloader.Cancelable() {
+      @Override public Response load(Uri uri, int networkPolicy,
+          final Cancellation cancellation) {
+        InputStream stream = new InputStream() {
+          int read;
+
+          @Override public int read() throws IOException {
+            if (read == 10) {
+              cancellation.cancel();
+              throw new IOException("Canceled");
+            }
+            read++;
+            return 0;
+          }
+        };
+        return new Response(stream, false, 100);
+      }
+
+      @Override public Response load(Uri uri, int networkPolicy) {
+        throw new AssertionError();
+      }
+
+      @Override public void shutdown() {
+      }
+    };
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = forRequest(mockPicasso(new NetworkRequestHandler(downloader, stats)),
+        dispatcher, cache, stats, action);
+    try {
+      hunter.fetch();
+      fail("Should have thrown IOException.");
+    } catch (IOException expected) {
+    }
+    verify(stats).dispatchDownloadCanceled(90);
+  }
+
+  @Test public void runWithAsyncDownloaderReleasesThreadUntilResponse() throws Exception {
+    AsyncDownloader downloader = new AsyncDownloader();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = forRequest(mockPicasso(new NetworkRequestHandler(downloader, stats)),
+        dispatcher, cache, stats, action);
+    hunter.run();
+    assertThat(hunter.downloading).isTrue();
+    verifyZeroInteractions(dispatcher);
+
+    downloader.callback.onResponse(
+        new Downloader.Response(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), false, 3));
+    verify(dispatcher).dispatchDecode(hunter);
+    assertThat(hunter.downloading).isFalse();
+    assertThat(hunter.fetched.getContentLength()).isEqualTo(3);
+    assertThat(hunter.fetched.getStream().read()).isEqualTo(1);
+  }
+
+  @Test public void asyncDownloadFailureDispatchesRetry() {
+    AsyncDownloader downloader = new AsyncDownloader();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = forRequest(mockPicasso(new NetworkRequestHandler(downloader, stats)),
+        dispatcher, cache, stats, action);
+    hunter.run();
+    IOException failure = new IOException("Failed");
+    downloader.callback.onFailure(failure);
+    verify(dispatcher).dispatchRetry(hunter);
+    assertThat(hunter.getException()).isSameAs(failure);
+    assertThat(hunter.downloading).isFalse();
+  }
+
+  @Test public void cancelAbortsAsyncDownload() {
+    AsyncDownloader downloader = new AsyncDownloader();
+    Action action = mockAction(URI_KEY_1, URI_1);
+    BitmapHunter hunter = forRequest(mockPicasso(new NetworkRequestHandler(downloader, stats)),
+        dispatcher, cache, stats, action);
+    FutureTask<Object> future = new FutureTask<>(hunter, null);
+    hunter.future = future;
+    future.run();
+    hunter.detach(action);
+
+    assertThat(hunter.cancel()).isTrue();
+    assertThat(downloader.cancellation.isCanceled()).isTrue();
+    assertThat(hunter.isCancelled()).isTrue();
+    downloader.callback.onFailure(new IOException("Canceled"));
+    verify(stats).dispatchDownloadCanceled(0);
+  }
+
+  @Test public void fetchDoesNotCountFailedDownloadAsCanceled() throws Exception {
+    Action action = mockAction(URI_KEY_1, URI_1);
+    when(downloader.load(any(Uri.class), anyInt())).thenThrow(new IOException("Failed"));
+    BitmapHunter hunter = forRequest(mockPicasso(new NetworkRequestHandler(downloader, stats)),
+        dispatcher, cache, stats, action);
+    try {
+      hunter.fetch();
+      fail("Should have thrown IOException.");
+    } catch (IOException expected) {
+    }
+    verify(stats, never()).dispatchDownloadCanceled(anyLong());
+  }
+
   // ---------------------------------------
 
   @Test public void forContentProviderRequest() {
@@ -352,8 +763,10 @@ public class BitmapHunterTest {
     RequestHandler handler = new AssetRequestHandler(context);
     List<RequestHandler> handlers = Collections.singletonList(handler);
     // Must use non-mock constructor because that is where Picasso's list of handlers is created.
-    Picasso picasso = new Picasso(context, dispatcher, cache, null, null, handlers, stats,
-        ARGB_8888, false, false);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .extraRequestHandlers(handlers)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
     BitmapHunter hunter = forRequest(picasso, dispatcher, cache, stats, action);
     assertThat(hunter.requestHandler).isEqualTo(handler);
   }
@@ -1091,6 +1504,34 @@ public class BitmapHunterTest {
     }
   }
 
+  @Test public void threadSafeOnlyIfAllTransformationsAre() {
+    Transformation threadSafe = new ThreadSafeTransformation();
+    Transformation other = new TestTransformation("test");
+    assertThat(BitmapHunter.areThreadSafe(Collections.singletonList(threadSafe))).isTrue();
+    assertThat(BitmapHunter.areThreadSafe(Arrays.asList(threadSafe, other))).isFalse();
+    assertThat(BitmapHunter.areThreadSafe(Collections.<Transformation>emptyList())).isTrue();
+  }
+
+  /**
+   * Returns a complete JPEG image. Decoding in tests measures the image with ImageIO, which
+   * fails on a stream with no more than a JPEG header.
+   */
+  private static byte[] jpegBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "jpg", bytes);
+    return bytes.toByteArray();
+  }
+
+  private static class ThreadSafeTransformation implements Transformation.ThreadSafe {
+    @Override public Bitmap transform(Bitmap source) {
+      return source;
+    }
+
+    @Override public String key() {
+      return "thread-safe";
+    }
+  }
+
   private static class TestableBitmapHunter extends BitmapHunter {
     TestableBitmapHunter(Picasso picasso, Dispatcher dispatcher, Cache cache, Stats stats,
         Action action) {
@@ -1133,6 +1574,57 @@ public class BitmapHunterTest {
     }
   }
 
+  private static class RemoteRequestHandler extends RequestHandler {
+    private final Bitmap bitmap;
+    private final byte[] bytes;
+
+    RemoteRequestHandler(Bitmap bitmap) {
+      this.bitmap = bitmap;
+      this.bytes = null;
+    }
+
+    RemoteRequestHandler(byte[] bytes) {
+      this.bitmap = null;
+      this.bytes = bytes;
+    }
+
+    @Override public boolean canHandleRequest(Request data) {
+      return true;
+    }
+
+    @Override public Result load(Request request, int networkPolicy) {
+      return bitmap != null
+          ? new Result(bitmap, NETWORK)
+          : new Result(new ByteArrayInputStream(bytes), NETWORK);
+    }
+
+    @Override boolean loadsLocally() {
+      return false;
+    }
+  }
+
+  private static class AsyncDownloader implements Downloader.Async {
+    Downloader.Cancellation cancellation;
+    Downloader.Callback callback;
+
+    @Override public void enqueue(Uri uri, int networkPolicy, Cancellation cancellation,
+        Callback callback) {
+      this.cancellation = cancellation;
+      this.callback = callback;
+    }
+
+    @Override public Response load(Uri uri, int networkPolicy, Cancellation cancellation) {
+      throw new AssertionError();
+    }
+
+    @Override public Response load(Uri uri, int networkPolicy) {
+      throw new AssertionError();
+    }
+
+    @Override public void shutdown() {
+    }
+  }
+
   private static class OOMBitmapHunter extends BitmapHunter {
     OOMBitmapHunter(Picasso picasso, Dispatcher dispatcher, Cache cache, Stats stats,
         Action action) {
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static android.graphics.Bitmap.Config.ALPHA_8;
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR2;
+import static android.os.Build.VERSION_CODES.KITKAT;
+import static junit.framework.Assert.fail;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class BitmapPoolTest {
+  @Test public void constructorDoesNotAllowZeroSize() {
+    try {
+      new BitmapPool(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void rejectsBitmapsWhichCannotBeReused() {
+    BitmapPool pool = new BitmapPool(100);
+    Bitmap recycled = Bitmap.createBitmap(2, 2, ALPHA_8);
+    recycled.recycle();
+    Bitmap tooLarge = Bitmap.createBitmap(20, 20, ALPHA_8);
+
+    assertThat(pool.put(null)).isFalse();
+    assertThat(pool.put(recycled)).isFalse();
+    assertThat(pool.put(tooLarge)).isFalse();
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(pool.putCount()).isEqualTo(0);
+  }
+
+  @Test public void getReturnsCompatibleBitmap() {
+    BitmapPool pool = new BitmapPool(100);
+    Bitmap bitmap = Bitmap.createBitmap(4, 4, ALPHA_8);
+    assertThat(pool.put(bitmap)).isTrue();
+    assertThat(pool.size()).isEqualTo(16);
+
+    assertThat(pool.get(4, 4, ARGB_8888)).isNull();
+    assertThat(pool.get(4, 4, ALPHA_8)).isSameAs(bitmap);
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(pool.get(4, 4, ALPHA_8)).isNull();
+    assertThat(pool.hitCount()).isEqualTo(1);
+    assertThat(pool.missCount()).isEqualTo(2);
+  }
+
+  @Config(sdk = KITKAT)
+  @Test public void getReturnsSmallestBitmapWhichFits() {
+    BitmapPool pool = new BitmapPool(100);
+    Bitmap small = Bitmap.createBitmap(2, 2, ALPHA_8);
+    Bitmap medium = Bitmap.createBitmap(3, 3, ALPHA_8);
+    Bitmap large = Bitmap.createBitmap(5, 5, ALPHA_8);
+    pool.put(large);
+    pool.put(small);
+    pool.put(medium);
+
+    assertThat(pool.get(3, 2, ALPHA_8)).isSameAs(medium);
+    assertThat(pool.get(1, 1, ALPHA_8)).isSameAs(small);
+    assertThat(pool.get(2, 2, ALPHA_8)).isNull(); // Large is too wasteful to hand out.
+    assertThat(pool.get(3, 3, ALPHA_8)).isSameAs(large);
+  }
+
+  @Config(sdk = JELLY_BEAN_MR2)
+  @Test public void getReturnsBitmapOfSameDimensionsBeforeKitKat() {
+    BitmapPool pool = new BitmapPool(100);
+    Bitmap square = Bitmap.createBitmap(2, 2, ALPHA_8);
+    Bitmap wide = Bitmap.createBitmap(4, 1, ALPHA_8);
+    Bitmap large = Bitmap.createBitmap(3, 3, ALPHA_8);
+    pool.put(square);
+    pool.put(wide);
+    pool.put(large);
+
+    assertThat(pool.get(1, 1, ALPHA_8)).isNull();
+    assertThat(pool.get(1, 4, ALPHA_8)).isNull(); // Same size, other dimensions.
+    assertThat(pool.get(4, 1, ALPHA_8)).isSameAs(wide);
+    assertThat(pool.get(2, 2, ALPHA_8)).isSameAs(square);
+    assertThat(pool.get(3, 3, ALPHA_8)).isSameAs(large);
+  }
+
+  @Test public void putEvictsAndRecyclesOldestBitmaps() {
+    BitmapPool pool = new BitmapPool(8);
+    Bitmap a = Bitmap.createBitmap(2, 2, ALPHA_8);
+    Bitmap b = Bitmap.createBitmap(2, 2, ALPHA_8);
+    Bitmap c = Bitmap.createBitmap(2, 2, ALPHA_8);
+    pool.put(a);
+    pool.put(b);
+    pool.put(c);
+
+    assertThat(a.isRecycled()).isTrue();
+    assertThat(b.isRecycled()).isFalse();
+    assertThat(pool.size()).isEqualTo(8);
+    assertThat(pool.evictionCount()).isEqualTo(1);
+    assertThat(pool.get(2, 2, ALPHA_8)).isSameAs(b);
+    assertThat(pool.get(2, 2, ALPHA_8)).isSameAs(c);
+  }
+
+  @Test public void putSameBitmapTwiceIsIgnored() {
+    BitmapPool pool = new BitmapPool(100);
+    Bitmap bitmap = Bitmap.createBitmap(2, 2, ALPHA_8);
+    pool.put(bitmap);
+    pool.put(bitmap);
+    assertThat(pool.size()).isEqualTo(4);
+    assertThat(pool.putCount()).isEqualTo(1);
+  }
+
+  @Test public void clearRecyclesAllBitmaps() {
+    BitmapPool pool = new BitmapPool(100);
+    Bitmap bitmap = Bitmap.createBitmap(2, 2, ALPHA_8);
+    pool.put(bitmap);
+    pool.clear();
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(bitmap.isRecycled()).isTrue();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ByteArrayPoolTest {
+  @Test public void getReturnsSmallestBufferWhichFits() {
+    ByteArrayPool pool = new ByteArrayPool(100);
+    byte[] small = new byte[10];
+    byte[] large = new byte[30];
+    pool.put(large);
+    pool.put(small);
+    assertThat(pool.size()).isEqualTo(40);
+
+    assertThat(pool.get(8)).isSameAs(small);
+    assertThat(pool.get(8)).isSameAs(large);
+    assertThat(pool.get(8)).hasSize(8);
+    assertThat(pool.size()).isEqualTo(0);
+  }
+
+  @Test public void putDropsLeastRecentlyReturnedBuffers() {
+    ByteArrayPool pool = new ByteArrayPool(50);
+    byte[] first = new byte[20];
+    byte[] second = new byte[20];
+    byte[] third = new byte[20];
+    pool.put(first);
+    pool.put(second);
+    pool.put(third);
+
+    assertThat(pool.size()).isEqualTo(40);
+    assertThat(pool.get(20)).isNotSameAs(first);
+    assertThat(pool.get(20)).isNotSameAs(first);
+    assertThat(pool.size()).isEqualTo(0);
+  }
+
+  @Test public void putIgnoresBuffersLargerThanPool() {
+    ByteArrayPool pool = new ByteArrayPool(10);
+    pool.put(new byte[11]);
+    assertThat(pool.size()).isEqualTo(0);
+  }
+
+  @Test public void outputStreamStartsWithExpectedSize() {
+    ByteArrayPool pool = new ByteArrayPool(1000);
+    PooledByteArrayOutputStream stream = new PooledByteArrayOutputStream(pool, 123);
+    assertThat(stream.buffer()).hasSize(123);
+  }
+
+  @Test public void outputStreamGrowsAndReturnsBuffersToPool() throws Exception {
+    ByteArrayPool pool = new ByteArrayPool(1000);
+    byte[] data = new byte[100];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+
+    PooledByteArrayOutputStream stream = new PooledByteArrayOutputStream(pool, 10);
+    stream.readFrom(new ByteArrayInputStream(data));
+    assertThat(stream.size()).isEqualTo(100);
+    assertThat(pool.size()).isGreaterThan(0); // Outgrown buffers were returned.
+    byte[] buffer = stream.buffer();
+    for (int i = 0; i < data.length; i++) {
+      assertThat(buffer[i]).isEqualTo(data[i]);
+    }
+
+    int pooled = pool.size();
+    stream.close();
+    assertThat(pool.size()).isEqualTo(pooled + buffer.length);
+    assertThat(pool.get(100)).isSameAs(buffer);
+  }
+
+  @Test public void outputStreamInputStreamReturnsBufferWhenClosed() throws Exception {
+    ByteArrayPool pool = new ByteArrayPool(1000);
+    PooledByteArrayOutputStream stream = new PooledByteArrayOutputStream(pool, 10);
+    stream.write(new byte[] { 4, 5 });
+    byte[] buffer = stream.buffer();
+
+    InputStream input = stream.toInputStream();
+    assertThat(input.read()).isEqualTo(4);
+    assertThat(input.read()).isEqualTo(5);
+    assertThat(input.read()).isEqualTo(-1);
+    assertThat(pool.size()).isEqualTo(0);
+
+    input.close();
+    assertThat(pool.get(10)).isSameAs(buffer);
+    stream.close(); // Closing again is a no-op.
+    assertThat(pool.size()).isEqualTo(0);
+  }
+
+  @Test public void outputStreamReturnsBufferWhenEveryInputStreamIsClosed() throws Exception {
+    ByteArrayPool pool = new ByteArrayPool(1000);
+    PooledByteArrayOutputStream stream = new PooledByteArrayOutputStream(pool, 10);
+    stream.write(7);
+    InputStream first = stream.toInputStream();
+    InputStream second = stream.toInputStream();
+
+    first.close();
+    first.close(); // Closing twice must not release the other stream's buffer.
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(second.read()).isEqualTo(7);
+
+    second.close();
+    assertThat(pool.size()).isEqualTo(10);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.view.Gravity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static com.squareup.picasso.TestUtils.RESOURCE_ID_1;
+import static com.squareup.picasso.TestUtils.URI_1;
+import static com.squareup.picasso.TestUtils.URI_2;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class CacheKeyTest {
+  @Test public void sameRequestsHaveSameHash() {
+    Request first = new Request.Builder(URI_1).resize(20, 10).rotate(90, 5, 5).centerCrop()
+        .transform(new TestTransformation("foo", null)).build();
+    Request second = new Request.Builder(URI_1).resize(20, 10).rotate(90, 5, 5).centerCrop()
+        .transform(new TestTransformation("foo", null)).build();
+    assertThat(CacheKey.hash(first)).isEqualTo(CacheKey.hash(second));
+    assertThat(key(first).matches(second)).isTrue();
+    assertThat(key(first).toString()).isEqualTo(key(second).toString());
+  }
+
+  @Test public void differentRequestsDoNotMatch() {
+    Request request = new Request.Builder(URI_1).build();
+    CacheKey key = key(request);
+    assertNotMatching(key, new Request.Builder(URI_2).build());
+    assertNotMatching(key, new Request.Builder(RESOURCE_ID_1).build());
+    assertNotMatching(key, new Request.Builder(URI_1).stableKey("stable").build());
+    assertNotMatching(key, new Request.Builder(URI_1).resize(20, 10).build());
+    assertNotMatching(key, new Request.Builder(URI_1).rotate(90).build());
+    assertNotMatching(key, new Request.Builder(URI_1).resize(20, 10).centerInside().build());
+    assertNotMatching(key,
+        new Request.Builder(URI_1).transform(new TestTransformation("foo", null)).build());
+
+    Request cropped = new Request.Builder(URI_1).resize(20, 10).centerCrop().build();
+    assertNotMatching(key(cropped),
+        new Request.Builder(URI_1).resize(20, 10).centerCrop(Gravity.TOP).build());
+    Request rotated = new Request.Builder(URI_1).rotate(90, 5, 5).build();
+    assertNotMatching(key(rotated), new Request.Builder(URI_1).rotate(90, 5, 6).build());
+  }
+
+  @Test public void partsWhichAreNotInKeyStringAreIgnored() {
+    Request request = new Request.Builder(URI_1).build();
+    Request ignored = new Request.Builder(URI_1).config(Bitmap.Config.RGB_565).purgeable().build();
+    assertThat(CacheKey.hash(request)).isEqualTo(CacheKey.hash(ignored));
+    assertThat(key(request).matches(ignored)).isTrue();
+  }
+
+  @Test public void toStringIsKeyString() {
+    Request request = new Request.Builder(URI_1).resize(20, 10).build();
+    assertThat(key(request).toString()).isEqualTo(Utils.createKey(request, new StringBuilder()));
+  }
+
+  private static CacheKey key(Request request) {
+    return new CacheKey(request, CacheKey.hash(request),
+        Utils.createKey(request, new StringBuilder()));
+  }
+
+  private static void assertNotMatching(CacheKey key, Request request) {
+    assertThat(key.matches(request)).isFalse();
+    assertThat(key.hash).isNotEqualTo(CacheKey.hash(request));
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.squareup.picasso.TestUtils.URI_1;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(shadows = { Shadows.ShadowStrictBitmapFactory.class })
+public class DecodeStreamTest {
+  @Test public void failedDecodeWithoutOptionsThrowsIOException() throws Exception {
+    try {
+      BitmapHunter.decodeStream(new ByteArrayInputStream(new byte[0]),
+          new Request.Builder(URI_1).build());
+      fail("Undecodable stream should throw exception.");
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test public void incompatiblePooledBitmapDecodesIntoNewBitmap() throws Exception {
+    BitmapPool bitmapPool = new BitmapPool(1024 * 1024);
+    Bitmap pooled = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+    bitmapPool.put(pooled);
+
+    // Larger than the header, so the first decode reads past the mark.
+    Bitmap bitmap = BitmapHunter.decodeStream(new ByteArrayInputStream(new byte[4096]),
+        new Request.Builder(URI_1).build(), bitmapPool, -1, false);
+    assertThat(bitmap).isNotNull().isNotSameAs(pooled);
+    assertThat(bitmapPool.hitCount()).isEqualTo(1);
+  }
+}
@@ -20,16 +20,31 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.net.Uri;
 import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.widget.ImageView;
 import com.squareup.picasso.NetworkRequestHandler.ContentLengthException;
+import java.io.File;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
 import static android.content.Context.CONNECTIVITY_SERVICE;
 import static android.content.Intent.ACTION_AIRPLANE_MODE_CHANGED;
@@ -39,6 +54,7 @@ import static android.net.ConnectivityManager.CONNECTIVITY_ACTION;
 import static com.squareup.picasso.Dispatcher.NetworkBroadcastReceiver;
 import static com.squareup.picasso.Dispatcher.NetworkBroadcastReceiver.EXTRA_AIRPLANE_STATE;
 import static com.squareup.picasso.Picasso.LoadedFrom.MEMORY;
+import static com.squareup.picasso.Picasso.LoadedFrom.NETWORK;
 import static com.squareup.picasso.TestUtils.URI_1;
 import static com.squareup.picasso.TestUtils.URI_2;
 import static com.squareup.picasso.TestUtils.URI_KEY_1;
@@ -47,9 +63,12 @@ import static com.squareup.picasso.TestUtils.makeBitmap;
 import static com.squareup.picasso.TestUtils.mockAction;
 import static com.squareup.picasso.TestUtils.mockCallback;
 import static com.squareup.picasso.TestUtils.mockHunter;
+import static com.squareup.picasso.TestUtils.mockImageViewTarget;
+import static com.squareup.picasso.TestUtils.mockInputStream;
 import static com.squareup.picasso.TestUtils.mockNetworkInfo;
 import static com.squareup.picasso.TestUtils.mockPicasso;
 import static com.squareup.picasso.TestUtils.mockTarget;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -61,18 +80,25 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricGradleTestRunner.class)
 public class DispatcherTest {
+  private static final String RESIZED_URI_KEY_1 =
+      Utils.createKey(new Request.Builder(URI_1).resize(100, 100).build());
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
   @Mock Context context;
   @Mock ConnectivityManager connectivityManager;
   @Mock PicassoExecutorService service;
   @Mock ExecutorService serviceMock;
+  @Mock ExecutorService decodeService;
+  @Mock ExecutorService diskService;
   @Mock Handler mainThreadHandler;
   @Mock Downloader downloader;
   @Mock Cache cache;
   @Mock Stats stats;
+  @Captor ArgumentCaptor<Runnable> runnableCaptor;
   private Dispatcher dispatcher;
 
   final Bitmap bitmap1 = makeBitmap();
@@ -88,6 +114,16 @@ public class DispatcherTest {
     verify(service).shutdown();
   }
 
+  @Test public void shutdownStopsDecodeService() {
+    dispatcher.shutdown();
+    verify(decodeService).shutdown();
+  }
+
+  @Test public void shutdownStopsDiskService() {
+    dispatcher.shutdown();
+    verify(diskService).shutdown();
+  }
+
   @Test public void shutdownStopsDownloader() {
     dispatcher.shutdown();
     verify(downloader).shutdown();
@@ -105,6 +141,311 @@ public class DispatcherTest {
     verify(service).submit(any(BitmapHunter.class));
   }
 
+  @Test public void dispatchWarmStartLoadsOnDiskService() {
+    File file = new File(temporaryFolder.getRoot(), "warm");
+    WarmStart saved = new WarmStart(file, 10);
+    Request request = new Request.Builder(URI_1).resize(100, 100).build();
+    saved.record(RESIZED_URI_KEY_1, request);
+    saved.save();
+    WarmStart warmStart = new WarmStart(file, 10);
+    Picasso picasso = picassoBuilder(RuntimeEnvironment.application, dispatcher, cache, stats)
+        .warmStart(warmStart)
+        .build();
+
+    dispatcher.dispatchWarmStart(picasso);
+    verify(diskService).execute(runnableCaptor.capture());
+    assertThat(dispatcher.hunterMap).isEmpty();
+
+    runnableCaptor.getValue().run();
+    shadowOf(dispatcher.dispatcherThread.getLooper()).idle();
+    assertThat(dispatcher.hunterMap).hasSize(1);
+    BitmapHunter hunter = dispatcher.hunterMap.get(RESIZED_URI_KEY_1);
+    assertThat(hunter.getPriority()).isEqualTo(Picasso.Priority.LOW);
+    assertThat(hunter.getAction()).isInstanceOf(FetchAction.class);
+    assertThat(hunter.getAction().getNetworkPolicy()).isEqualTo(NetworkPolicy.OFFLINE.index);
+  }
+
+  @Test public void performWarmStartSaveSavesOnDiskService() {
+    File file = new File(temporaryFolder.getRoot(), "warm");
+    WarmStart warmStart = new WarmStart(file, 10);
+    warmStart.record(RESIZED_URI_KEY_1, new Request.Builder(URI_1).resize(100, 100).build());
+
+    dispatcher.performWarmStartSave(warmStart);
+    verify(diskService).execute(runnableCaptor.capture());
+    assertThat(file.exists()).isFalse();
+
+    runnableCaptor.getValue().run();
+    assertThat(file.exists()).isTrue();
+  }
+
+  @Test public void performThumbnailInvalidateHidesAndRemovesOnDiskService() {
+    ThumbnailDiskCache thumbnailCache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    thumbnailCache.set(URI_KEY_1, Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+    Dispatcher dispatcher = createDispatcher(thumbnailCache);
+
+    dispatcher.performThumbnailInvalidate(URI_1.toString());
+    verify(diskService).execute(runnableCaptor.capture());
+    assertThat(thumbnailCache.get(URI_KEY_1)).isNull();
+    assertThat(temporaryFolder.getRoot().list()).hasSize(1);
+
+    runnableCaptor.getValue().run();
+    assertThat(temporaryFolder.getRoot().list()).isEmpty();
+  }
+
+  @Test public void dispatchThumbnailWriteWritesOnDiskService() {
+    ThumbnailDiskCache thumbnailCache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    Dispatcher dispatcher = createDispatcher(thumbnailCache);
+
+    dispatcher.dispatchThumbnailWrite(URI_KEY_1,
+        Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+    verify(diskService).execute(runnableCaptor.capture());
+    assertThat(thumbnailCache.putCount()).isZero();
+
+    runnableCaptor.getValue().run();
+    assertThat(thumbnailCache.get(URI_KEY_1)).isNotNull();
+  }
+
+  @Test public void eventQueueDeliversEventsInOrder() {
+    when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(connectivityManager);
+    Dispatcher dispatcher = new Dispatcher(context, service, decodeService, diskService,
+        mainThreadHandler, downloader, cache, null, stats, new EventQueue(), null, null, null);
+    Action action = mockAction(URI_KEY_1, URI_1);
+
+    dispatcher.dispatchSubmit(action);
+    dispatcher.dispatchAirplaneModeChange(true);
+    shadowOf(dispatcher.dispatcherThread.getLooper()).idle();
+
+    assertThat(dispatcher.hunterMap).hasSize(1);
+    assertThat(dispatcher.airplaneMode).isTrue();
+    assertThat(dispatcher.events.isEmpty()).isTrue();
+  }
+
+  @Test public void performSubmitWithHigherPriorityRaisesQueuedHunter() {
+    Future future = mock(Future.class);
+    when(service.submit(any(BitmapHunter.class))).thenReturn(future);
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1, Picasso.Priority.LOW));
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1, Picasso.Priority.HIGH));
+    verify(service).raisePriority(future, Picasso.Priority.HIGH);
+  }
+
+  @Test public void performSubmitWithSamePriorityDoesNotRaiseQueuedHunter() {
+    Future future = mock(Future.class);
+    when(service.submit(any(BitmapHunter.class))).thenReturn(future);
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    verify(service, never()).raisePriority(any(Future.class), any(Picasso.Priority.class));
+  }
+
+  @Test public void performSubmitWithHigherPriorityRaisesHunterItFollows() {
+    Future future = mock(Future.class);
+    when(service.submit(any(BitmapHunter.class))).thenReturn(future);
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1, Picasso.Priority.LOW));
+    dispatcher.performSubmit(
+        mockAction(RESIZED_URI_KEY_1, new Request.Builder(URI_1).resize(100, 100).build(), null,
+            Picasso.Priority.LOW, null));
+    dispatcher.performSubmit(
+        mockAction(RESIZED_URI_KEY_1, new Request.Builder(URI_1).resize(100, 100).build(), null,
+            Picasso.Priority.HIGH, null));
+    verify(service).raisePriority(future, Picasso.Priority.HIGH);
+  }
+
+  @Test public void performSubmitWithLocalRequestQueuesHunterForDecode() {
+    Action action = mockAction(URI_KEY_1, URI_1);
+    RequestHandler requestHandler = action.getPicasso().getRequestHandlers().get(0);
+    when(requestHandler.loadsLocally()).thenReturn(true);
+    dispatcher.performSubmit(action);
+    assertThat(dispatcher.hunterMap).hasSize(1);
+    verify(decodeService).submit(any(BitmapHunter.class));
+    verify(service, never()).submit(any(BitmapHunter.class));
+  }
+
+  @Test public void performDecodeQueuesHunterForDecode() {
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap1, false, mockAction(URI_KEY_1, URI_1));
+    dispatcher.hunterMap.put(URI_KEY_1, hunter);
+    dispatcher.performDecode(hunter);
+    verify(decodeService).submit(hunter);
+    assertThat(dispatcher.hunterMap).hasSize(1);
+  }
+
+  @Test public void performDecodeRemovesHunterWithoutActions() throws Exception {
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap1, false);
+    InputStream stream = mockInputStream();
+    hunter.fetched = new RequestHandler.Result(null, stream, NETWORK, 0, 3);
+    dispatcher.hunterMap.put(URI_KEY_1, hunter);
+    dispatcher.performDecode(hunter);
+    verify(decodeService, never()).submit(hunter);
+    verify(stream).close();
+    assertThat(dispatcher.hunterMap).isEmpty();
+  }
+
+  @Test public void performDecodeSkipsIfServiceShutdown() {
+    when(decodeService.isShutdown()).thenReturn(true);
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap1, false);
+    dispatcher.performDecode(hunter);
+    verify(decodeService, never()).submit(hunter);
+  }
+
+  @Test public void performDecodeSkipsHunterCanceledWhileFetching() throws Exception {
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap1, false);
+    InputStream stream = mockInputStream();
+    hunter.fetched = new RequestHandler.Result(null, stream, NETWORK, 0, 3);
+    when(hunter.isCancelled()).thenReturn(true);
+    BitmapHunter other = mockHunter(URI_KEY_1, bitmap1, false);
+    dispatcher.hunterMap.put(URI_KEY_1, other);
+    dispatcher.performDecode(hunter);
+    verify(decodeService, never()).submit(hunter);
+    verify(stream).close();
+    assertThat(dispatcher.hunterMap.get(URI_KEY_1)).isSameAs(other);
+  }
+
+  @Test public void performSubmitWaitsForFreeHostSlot() {
+    Dispatcher dispatcher = createDispatcher(service, true, new HostScheduler(4, 1));
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    dispatcher.performSubmit(mockAction(URI_KEY_2, URI_2));
+    BitmapHunter first = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter second = dispatcher.hunterMap.get(URI_KEY_2);
+    verify(service).submit(first);
+    verify(service, never()).submit(second);
+
+    dispatcher.performDecode(first);
+    verify(service).submit(second);
+  }
+
+  @Test public void performDecodeDropsDetachedWaitingHunters() {
+    Uri uri3 = Uri.parse("http://example.com/3.png");
+    String key3 = Utils.createKey(new Request.Builder(uri3).build());
+    Dispatcher dispatcher = createDispatcher(service, true, new HostScheduler(4, 1));
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    Action canceled = mockAction(URI_KEY_2, URI_2);
+    dispatcher.performSubmit(canceled);
+    dispatcher.performSubmit(mockAction(key3, uri3));
+    BitmapHunter first = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter second = dispatcher.hunterMap.get(URI_KEY_2);
+    BitmapHunter third = dispatcher.hunterMap.get(key3);
+    dispatcher.performCancel(canceled);
+
+    dispatcher.performDecode(first);
+    verify(service).submit(third);
+    dispatcher.performDecode(third);
+    verify(service, never()).submit(second);
+    assertThat(dispatcher.hunterMap).doesNotContainKey(URI_KEY_2);
+  }
+
+  @Test public void performRetryWaitsBehindHuntersOfSameHost() {
+    Dispatcher dispatcher = createDispatcher(service, true, new HostScheduler(4, 1));
+    Action action = mockAction(URI_KEY_1, URI_1);
+    Picasso picasso = mockPicasso(new NetworkRequestHandler(downloader, stats));
+    when(action.getPicasso()).thenReturn(picasso);
+    dispatcher.performSubmit(action);
+    dispatcher.performSubmit(mockAction(URI_KEY_2, URI_2));
+    BitmapHunter first = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter second = dispatcher.hunterMap.get(URI_KEY_2);
+
+    dispatcher.performRetry(first);
+    assertThat(first.retryCount).isEqualTo(1);
+    verify(service).submit(second);
+    resubmit(dispatcher, first);
+    verify(service, times(1)).submit(first);
+  }
+
+  @Test public void performRetryFreesHostSlotWhileBackingOff() {
+    Uri otherHostUri = Uri.parse("http://example.org/1.png");
+    String otherHostKey = Utils.createKey(new Request.Builder(otherHostUri).build());
+    Dispatcher dispatcher = createDispatcher(service, true, new HostScheduler(1, 1));
+    Action action = mockAction(URI_KEY_1, URI_1);
+    Picasso picasso = mockPicasso(new NetworkRequestHandler(downloader, stats));
+    when(action.getPicasso()).thenReturn(picasso);
+    dispatcher.performSubmit(action);
+    dispatcher.performSubmit(mockAction(otherHostKey, otherHostUri));
+    BitmapHunter failed = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter waiting = dispatcher.hunterMap.get(otherHostKey);
+    verify(service, never()).submit(waiting);
+
+    dispatcher.dispatchRetry(failed);
+    shadowOf(dispatcher.dispatcherThread.getLooper()).idle();
+    verify(service).submit(waiting);
+    assertThat(dispatcher.fetchMap).doesNotContainValue(failed);
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.HUNTER_RESUBMIT, failed)).isTrue();
+    verify(service, times(1)).submit(failed);
+  }
+
+  @Test public void performResubmitDropsDetachedHunter() {
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap1, false);
+    dispatcher.hunterMap.put(URI_KEY_1, hunter);
+    dispatcher.performResubmit(hunter);
+    verify(service, never()).submit(hunter);
+    assertThat(dispatcher.hunterMap).isEmpty();
+  }
+
+  @Test public void performSubmitWithOtherVariantOfSourceJoinsFetch() {
+    Action action1 = mockAction(URI_KEY_1, URI_1);
+    Action action2 = mockAction(RESIZED_URI_KEY_1, URI_1);
+    dispatcher.performSubmit(action1);
+    dispatcher.performSubmit(action2);
+    assertThat(dispatcher.hunterMap).hasSize(2);
+    assertThat(dispatcher.fetchMap).hasSize(1);
+    assertThat(dispatcher.hunterMap.get(URI_KEY_1).followers)
+        .containsExactly(dispatcher.hunterMap.get(RESIZED_URI_KEY_1));
+    verify(service).submit(any(BitmapHunter.class));
+  }
+
+  @Test public void performSubmitWithOtherNetworkPolicyDoesNotJoinFetch() {
+    Action action1 = mockAction(URI_KEY_1, URI_1);
+    Action action2 = mockAction(RESIZED_URI_KEY_1, URI_1);
+    when(action2.getNetworkPolicy()).thenReturn(NetworkPolicy.NO_CACHE.index);
+    dispatcher.performSubmit(action1);
+    dispatcher.performSubmit(action2);
+    assertThat(dispatcher.hunterMap.get(URI_KEY_1).followers).isNull();
+    verify(service, times(2)).submit(any(BitmapHunter.class));
+  }
+
+  @Test public void performDecodeSharesFetchedBytesWithFollowers() throws Exception {
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    dispatcher.performSubmit(mockAction(RESIZED_URI_KEY_1, URI_1));
+    BitmapHunter hunter = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter follower = dispatcher.hunterMap.get(RESIZED_URI_KEY_1);
+    PooledByteArrayOutputStream bytes = new PooledByteArrayOutputStream(new ByteArrayPool(100), 3);
+    bytes.write(new byte[] { 1, 2, 3 });
+    hunter.fetchedBytes = bytes;
+    hunter.fetched = new RequestHandler.Result(null, bytes.toInputStream(), NETWORK, 0, 3);
+
+    dispatcher.performDecode(hunter);
+    assertThat(dispatcher.fetchMap).isEmpty();
+    assertThat(hunter.followers).isNull();
+    assertThat(follower.fetched.getContentLength()).isEqualTo(3);
+    assertThat(follower.fetched.getStream().read()).isEqualTo(1);
+    verify(decodeService).submit(hunter);
+    verify(decodeService).submit(follower);
+    verify(stats).dispatchFetchCoalesced();
+  }
+
+  @Test public void performErrorResubmitsFollowers() {
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    dispatcher.performSubmit(mockAction(RESIZED_URI_KEY_1, URI_1));
+    BitmapHunter hunter = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter follower = dispatcher.hunterMap.get(RESIZED_URI_KEY_1);
+
+    dispatcher.performError(hunter, false);
+    assertThat(dispatcher.hunterMap).hasSize(1);
+    assertThat(dispatcher.fetchMap).containsValue(follower);
+    verify(service).submit(follower);
+    verify(stats, never()).dispatchFetchCoalesced();
+  }
+
+  @Test public void performErrorDropsFollowersWithoutActions() {
+    Action action2 = mockAction(RESIZED_URI_KEY_1, URI_1);
+    dispatcher.performSubmit(mockAction(URI_KEY_1, URI_1));
+    dispatcher.performSubmit(action2);
+    BitmapHunter hunter = dispatcher.hunterMap.get(URI_KEY_1);
+    BitmapHunter follower = dispatcher.hunterMap.get(RESIZED_URI_KEY_1);
+    dispatcher.performCancel(action2);
+
+    dispatcher.performError(hunter, false);
+    assertThat(dispatcher.hunterMap).isEmpty();
+    assertThat(dispatcher.fetchMap).isEmpty();
+    verify(service, never()).submit(follower);
+  }
+
   @Test public void performSubmitWithTwoDifferentRequestsQueuesHunters() {
     Action action1 = mockAction(URI_KEY_1, URI_1);
     Action action2 = mockAction(URI_KEY_2, URI_2);
@@ -296,6 +637,22 @@ public class DispatcherTest {
     assertThat(dispatcher.batch).isEmpty();
   }
 
+  @Test public void performBatchCompleteWithFrameBatcherDeliversInStepWithFrames() {
+    when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(connectivityManager);
+    Dispatcher dispatcher = new Dispatcher(context, service, decodeService, diskService,
+        mainThreadHandler, downloader, cache, null, stats, null,
+        new FrameBatcher(Looper.getMainLooper()), null, null);
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap1, false);
+    dispatcher.performComplete(hunter);
+    assertThat(hunter.batchedMillis).isNotZero();
+
+    Robolectric.getForegroundThreadScheduler().pause();
+    dispatcher.performBatchComplete();
+    verify(mainThreadHandler, never()).sendMessage(any(Message.class));
+    Robolectric.getForegroundThreadScheduler().unPause();
+    verify(hunter.getPicasso()).complete(hunter);
+  }
+
   @Test public void performRetrySkipsIfHunterIsCancelled() {
     BitmapHunter hunter = mockHunter(URI_KEY_2, bitmap1, false);
     when(hunter.isCancelled()).thenReturn(true);
@@ -358,7 +715,8 @@ public class DispatcherTest {
     dispatcher.performRetry(hunter);
     assertThat(dispatcher.hunterMap).isEmpty();
     assertThat(dispatcher.failedActions).isEmpty();
-    verify(service).submit(hunter);
+    verify(service, never()).submit(hunter);
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.HUNTER_RESUBMIT, hunter)).isTrue();
   }
 
   @Test public void performRetryMarksForReplayIfSupportsReplayAndShouldNotRetry() {
@@ -379,7 +737,42 @@ public class DispatcherTest {
     dispatcher.performRetry(hunter);
     assertThat(dispatcher.hunterMap).isEmpty();
     assertThat(dispatcher.failedActions).isEmpty();
-    verify(service).submit(hunter);
+    verify(service, never()).submit(hunter);
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.HUNTER_RESUBMIT, hunter)).isTrue();
+  }
+
+  @Test public void performRetryCountsRetryOfRequestHandler() {
+    Dispatcher dispatcher = createDispatcher(service, true, null,
+        new RetryPolicy(500, 3000, 0, 0, 0, 0, SystemClock.uptimeMillis(), new Random()));
+    Action action = mockAction(URI_KEY_1, URI_1);
+    Picasso picasso = mockPicasso(new NetworkRequestHandler(downloader, stats));
+    when(action.getPicasso()).thenReturn(picasso);
+    dispatcher.performSubmit(action);
+    BitmapHunter hunter = dispatcher.hunterMap.get(URI_KEY_1);
+
+    dispatcher.performRetry(hunter);
+    assertThat(hunter.getRetryAttempts()).isEqualTo(1);
+    verify(stats).dispatchRetry(hunter.requestHandler);
+    resubmit(dispatcher, hunter);
+    verify(service, times(2)).submit(hunter);
+  }
+
+  @Test public void performRetryGivesUpWhenRetryBudgetIsSpent() {
+    Dispatcher dispatcher = createDispatcher(service, true, null,
+        new RetryPolicy(500, 3000, 1, 60000, 0, 0, SystemClock.uptimeMillis(), new Random()));
+    BitmapHunter first = mockHunter(URI_KEY_1, bitmap1, false, mockAction(URI_KEY_1, URI_1));
+    when(first.shouldRetry(anyBoolean(), any(NetworkInfo.class))).thenReturn(true);
+    Action action = mockAction(URI_KEY_2, URI_2, mockTarget());
+    BitmapHunter second = mockHunter(URI_KEY_2, bitmap2, false, action);
+    when(second.shouldRetry(anyBoolean(), any(NetworkInfo.class))).thenReturn(true);
+    when(second.supportsReplay()).thenReturn(true);
+
+    dispatcher.performRetry(first);
+    dispatcher.performRetry(second);
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.HUNTER_RESUBMIT, first)).isTrue();
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.HUNTER_RESUBMIT, second)).isFalse();
+    verify(stats).dispatchRetryThrottled();
+    assertThat(dispatcher.failedActions).hasSize(1);
   }
 
   @Test public void performRetrySkipIfServiceShutdown() {
@@ -525,6 +918,63 @@ public class DispatcherTest {
     assertThat(dispatcher.failedActions).isEmpty();
   }
 
+  @Test public void performNetworkStateChangeReplaysFailedActionsInPriorityOrderAndBatches() {
+    Dispatcher dispatcher = createPacedReplayDispatcher(1);
+    Target lowTarget = mockTarget();
+    Target highTarget = mockTarget();
+    Action low = mockAction(URI_KEY_1, URI_1, lowTarget, 0, Picasso.Priority.LOW, null);
+    Action high = mockAction(URI_KEY_2, URI_2, highTarget, 0, Picasso.Priority.HIGH, null);
+    dispatcher.failedActions.put(lowTarget, low);
+    dispatcher.failedActions.put(highTarget, high);
+
+    dispatcher.performNetworkStateChange(mockNetworkInfo(true));
+    assertThat(dispatcher.hunterMap).containsKey(URI_KEY_2).hasSize(1);
+    assertThat(dispatcher.failedActions).containsKey(lowTarget).hasSize(1);
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.REPLAY_NEXT)).isTrue();
+
+    // Connectivity changes during the replay do not speed it up.
+    dispatcher.performNetworkStateChange(mockNetworkInfo(true));
+    assertThat(dispatcher.hunterMap).hasSize(1);
+
+    dispatcher.handler.removeMessages(Dispatcher.REPLAY_NEXT);
+    dispatcher.performReplayNext();
+    assertThat(dispatcher.hunterMap).containsKey(URI_KEY_1).hasSize(2);
+    assertThat(dispatcher.failedActions).isEmpty();
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.REPLAY_NEXT)).isFalse();
+  }
+
+  @Test public void performNetworkStateChangeStopsPacedReplayWhenDisconnected() {
+    Dispatcher dispatcher = createPacedReplayDispatcher(1);
+    Target target1 = mockTarget();
+    Target target2 = mockTarget();
+    dispatcher.failedActions.put(target1, mockAction(URI_KEY_1, URI_1, target1));
+    dispatcher.failedActions.put(target2, mockAction(URI_KEY_2, URI_2, target2));
+
+    dispatcher.performNetworkStateChange(mockNetworkInfo(true));
+    dispatcher.performNetworkStateChange(mockNetworkInfo(false));
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.REPLAY_NEXT)).isFalse();
+    assertThat(dispatcher.failedActions).hasSize(1);
+  }
+
+  @Test public void performReplayNextDropsActionsWhoseTargetIsGone() {
+    Dispatcher dispatcher = createPacedReplayDispatcher(10);
+    ImageView detached = mockImageViewTarget();
+    ImageView attached = mockImageViewTarget();
+    when(attached.getWindowToken()).thenReturn(mock(IBinder.class));
+    Target canceledTarget = mockTarget();
+    Action canceled = mockAction(URI_KEY_1, URI_1, canceledTarget);
+    when(canceled.isCancelled()).thenReturn(true);
+    dispatcher.failedActions.put(canceledTarget, canceled);
+    dispatcher.failedActions.put(detached, mockAction(URI_KEY_1, URI_1, detached));
+    dispatcher.failedActions.put(attached, mockAction(URI_KEY_2, URI_2, attached));
+    dispatcher.failedActions.put("collected", mockAction(URI_KEY_1, URI_1));
+
+    dispatcher.performReplayNext();
+    assertThat(dispatcher.hunterMap).containsKey(URI_KEY_2).hasSize(1);
+    assertThat(dispatcher.failedActions).isEmpty();
+    verify(service).submit(any(BitmapHunter.class));
+  }
+
   @Test public void nullIntentOnReceiveDoesNothing() {
     Dispatcher dispatcher = mock(Dispatcher.class);
     NetworkBroadcastReceiver receiver = new NetworkBroadcastReceiver(dispatcher);
@@ -564,6 +1014,18 @@ public class DispatcherTest {
     verify(dispatcher).dispatchAirplaneModeChange(airplaneOn);
   }
 
+  /** Resubmit a hunter which backs off from a failure without waiting for its delay. */
+  private static void resubmit(Dispatcher dispatcher, BitmapHunter hunter) {
+    assertThat(dispatcher.handler.hasMessages(Dispatcher.HUNTER_RESUBMIT, hunter)).isTrue();
+    dispatcher.handler.removeMessages(Dispatcher.HUNTER_RESUBMIT, hunter);
+    dispatcher.performResubmit(hunter);
+  }
+
+  private Dispatcher createPacedReplayDispatcher(int maxReplays) {
+    return createDispatcher(service, true, null, new RetryPolicy(500, 3000, 0, 0, maxReplays,
+        1000, SystemClock.uptimeMillis(), new Random()));
+  }
+
   private Dispatcher createDispatcher() {
     return createDispatcher(service);
   }
@@ -577,9 +1039,26 @@ public class DispatcherTest {
   }
 
   private Dispatcher createDispatcher(ExecutorService service, boolean scansNetworkChanges) {
+    return createDispatcher(service, scansNetworkChanges, null);
+  }
+
+  private Dispatcher createDispatcher(ThumbnailDiskCache thumbnailCache) {
+    when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(connectivityManager);
+    return new Dispatcher(context, service, decodeService, diskService, mainThreadHandler,
+        downloader, cache, thumbnailCache, stats, null, null, null, null);
+  }
+
+  private Dispatcher createDispatcher(ExecutorService service, boolean scansNetworkChanges,
+      HostScheduler hostScheduler) {
+    return createDispatcher(service, scansNetworkChanges, hostScheduler, null);
+  }
+
+  private Dispatcher createDispatcher(ExecutorService service, boolean scansNetworkChanges,
+      HostScheduler hostScheduler, RetryPolicy retryPolicy) {
     when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(connectivityManager);
     when(context.checkCallingOrSelfPermission(anyString())).thenReturn(
         scansNetworkChanges ? PERMISSION_GRANTED : PERMISSION_DENIED);
-    return new Dispatcher(context, service, mainThreadHandler, downloader, cache, stats);
+    return new Dispatcher(context, service, decodeService, diskService, mainThreadHandler,
+        downloader, cache, null, stats, null, null, hostScheduler, retryPolicy);
   }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static junit.framework.Assert.fail;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class EncodedMemoryCacheTest {
+  @Test public void constructorDoesNotAllowZeroSize() {
+    try {
+      new EncodedMemoryCache(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void setCopiesBytes() {
+    EncodedMemoryCache cache = new EncodedMemoryCache(100);
+    byte[] buffer = new byte[] { 1, 2, 3, 4 };
+    cache.set("a", buffer, 3);
+    buffer[0] = 9;
+
+    assertThat(cache.get("a")).isEqualTo(new byte[] { 1, 2, 3 });
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+  }
+
+  @Test public void trimToSizeEvictsLeastRecentlyUsed() {
+    EncodedMemoryCache cache = new EncodedMemoryCache(10);
+    cache.set("a", new byte[4], 4);
+    cache.set("b", new byte[4], 4);
+    cache.get("a");
+    cache.trimToSize(5);
+
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.size()).isEqualTo(4);
+    assertThat(cache.maxSize()).isEqualTo(10);
+  }
+
+  @Test public void setEvictsLeastRecentlyUsed() {
+    EncodedMemoryCache cache = new EncodedMemoryCache(10);
+    cache.set("a", new byte[4], 4);
+    cache.set("b", new byte[4], 4);
+    cache.get("a");
+    cache.set("c", new byte[4], 4);
+
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isNotNull();
+    assertThat(cache.size()).isEqualTo(8);
+  }
+
+  @Test public void setReplacesPreviousValue() {
+    EncodedMemoryCache cache = new EncodedMemoryCache(10);
+    cache.set("a", new byte[4], 4);
+    cache.set("a", new byte[6], 6);
+    assertThat(cache.get("a")).hasSize(6);
+    assertThat(cache.size()).isEqualTo(6);
+  }
+
+  @Test public void setIgnoresImagesLargerThanCache() {
+    EncodedMemoryCache cache = new EncodedMemoryCache(10);
+    cache.set("a", new byte[4], 4);
+    cache.set("b", new byte[11], 11);
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.size()).isEqualTo(4);
+  }
+
+  @Test public void removeAndClear() {
+    EncodedMemoryCache cache = new EncodedMemoryCache(10);
+    cache.set("a", new byte[4], 4);
+    cache.set("b", new byte[4], 4);
+    cache.remove("a");
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.size()).isEqualTo(4);
+
+    cache.clear();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+}
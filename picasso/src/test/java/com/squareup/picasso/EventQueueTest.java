@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class EventQueueTest {
+  @Test public void onlyFirstOfferSchedulesConsumer() {
+    EventQueue queue = new EventQueue();
+    assertThat(queue.offer(1, 0, null)).isTrue();
+    assertThat(queue.offer(2, 0, null)).isFalse();
+
+    queue.drain(new RecordingConsumer(), 10);
+    assertThat(queue.offer(3, 0, null)).isTrue();
+  }
+
+  @Test public void drainHandsOverEventsInOrder() {
+    EventQueue queue = new EventQueue();
+    Object obj = new Object();
+    queue.offer(1, 10, obj);
+    queue.offer(2, 20, null);
+    RecordingConsumer consumer = new RecordingConsumer();
+
+    assertThat(queue.drain(consumer, 10)).isFalse();
+    assertThat(consumer.whats).containsExactly(1, 2);
+    assertThat(consumer.args).containsExactly(10, 20);
+    assertThat(consumer.objs.get(0)).isSameAs(obj);
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  @Test public void drainStopsAtMaxEventsAndAsksToBeScheduledAgain() {
+    EventQueue queue = new EventQueue();
+    for (int i = 0; i < 5; i++) {
+      queue.offer(i, 0, null);
+    }
+    RecordingConsumer consumer = new RecordingConsumer();
+
+    assertThat(queue.drain(consumer, 3)).isTrue();
+    assertThat(consumer.whats).containsExactly(0, 1, 2);
+    // A drain is already scheduled for the rest.
+    assertThat(queue.offer(5, 0, null)).isFalse();
+    assertThat(queue.drain(consumer, 3)).isFalse();
+    assertThat(consumer.whats).containsExactly(0, 1, 2, 3, 4, 5);
+  }
+
+  @Test public void concurrentProducersLoseNoEvents() throws InterruptedException {
+    final EventQueue queue = new EventQueue();
+    final int producers = 4;
+    final int eventsPerProducer = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      final int producer = i;
+      threads[i] = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          for (int j = 0; j < eventsPerProducer; j++) {
+            queue.offer(producer, j, null);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    RecordingConsumer consumer = new RecordingConsumer();
+    queue.drain(consumer, Integer.MAX_VALUE);
+    assertThat(consumer.whats).hasSize(producers * eventsPerProducer);
+    // Events of each producer arrive in the order it added them.
+    int[] next = new int[producers];
+    for (int i = 0; i < consumer.whats.size(); i++) {
+      int producer = consumer.whats.get(i);
+      assertThat(consumer.args.get(i)).isEqualTo(next[producer]++);
+    }
+  }
+
+  static final class RecordingConsumer implements EventQueue.Consumer {
+    final List<Integer> whats = new ArrayList<>();
+    final List<Integer> args = new ArrayList<>();
+    final List<Object> objs = new ArrayList<>();
+
+    @Override public void onEvent(int what, int arg, Object obj) {
+      whats.add(what);
+      args.add(arg);
+      objs.add(obj);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static com.squareup.picasso.ExecutorLimits.MAX_FETCH_CONCURRENCY;
+import static com.squareup.picasso.ExecutorLimits.SAMPLE_SIZE;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ExecutorLimitsTest {
+  @Test public void decodesLeaveOneCoreForTheMainThread() {
+    assertThat(new ExecutorLimits(4, 0).decodeConcurrency()).isEqualTo(3);
+    assertThat(new ExecutorLimits(1, 0).decodeConcurrency()).isEqualTo(1);
+  }
+
+  @Test public void growsOneThreadPerWindowWhileBacklogged() {
+    ExecutorLimits limits = new ExecutorLimits(2, 0);
+    int initial = limits.fetchConcurrency();
+
+    window(limits, 100, 10, true, 1000, 1000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial + 1);
+    window(limits, 100, 10, true, 2000, 2000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial + 2);
+  }
+
+  @Test public void doesNotGrowWithoutBacklog() {
+    ExecutorLimits limits = new ExecutorLimits(2, 0);
+    int initial = limits.fetchConcurrency();
+
+    window(limits, 100, 10, false, 1000, 1000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial);
+  }
+
+  @Test public void neverExceedsMaximum() {
+    ExecutorLimits limits = new ExecutorLimits(2, 0);
+    for (int i = 1; i <= 2 * MAX_FETCH_CONCURRENCY; i++) {
+      window(limits, 100, 1, true, 1000 * i, 1000 * i);
+    }
+    assertThat(limits.fetchConcurrency()).isEqualTo(MAX_FETCH_CONCURRENCY);
+  }
+
+  @Test public void shrinksToCoresWhenHuntersAreCpuBound() {
+    ExecutorLimits limits = new ExecutorLimits(2, 0);
+
+    window(limits, 10, 10, true, 1000, 1000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(2);
+  }
+
+  @Test public void stopsGrowingOnceThroughputIsFlat() {
+    ExecutorLimits limits = new ExecutorLimits(2, 0);
+    int initial = limits.fetchConcurrency();
+
+    window(limits, 100, 10, true, 1000, 1000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial + 1);
+    // One more thread brought no more bytes per second.
+    window(limits, 100, 10, true, 1000, 2000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial);
+    window(limits, 100, 10, true, 1000, 3000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial);
+  }
+
+  @Test public void networkChangeLiftsSaturation() {
+    ExecutorLimits limits = new ExecutorLimits(2, 0);
+    int initial = limits.fetchConcurrency();
+    window(limits, 100, 10, true, 1000, 1000);
+    window(limits, 100, 10, true, 1000, 2000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial);
+
+    limits.networkChanged();
+    window(limits, 100, 10, true, 1000, 3000);
+    assertThat(limits.fetchConcurrency()).isEqualTo(initial + 1);
+  }
+
+  private static void window(ExecutorLimits limits, long wallMillis, long cpuMillis,
+      boolean backlogged, long bytes, long endMillis) {
+    limits.bytesDownloaded(bytes);
+    for (int i = 0; i < SAMPLE_SIZE; i++) {
+      limits.hunterFinished(wallMillis, cpuMillis, backlogged, endMillis);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.util.Scheduler;
+
+import static com.squareup.picasso.FrameBatcher.DEFAULT_FRAME_MILLIS;
+import static com.squareup.picasso.FrameBatcher.MAX_FRAME_MILLIS;
+import static com.squareup.picasso.TestUtils.URI_KEY_1;
+import static com.squareup.picasso.TestUtils.makeBitmap;
+import static com.squareup.picasso.TestUtils.mockHunter;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class FrameBatcherTest {
+  private Scheduler scheduler;
+  private Picasso picasso;
+  private FrameBatcher batcher;
+
+  @Before public void setUp() {
+    scheduler = Robolectric.getForegroundThreadScheduler();
+    scheduler.pause();
+    picasso = mock(Picasso.class);
+    batcher = new FrameBatcher(Looper.getMainLooper());
+  }
+
+  @After public void tearDown() {
+    scheduler.unPause();
+  }
+
+  @Test public void smallBatchIsDeliveredOnNextFrame() {
+    List<BitmapHunter> batch = hunters(3);
+    batcher.enqueue(batch);
+    verify(picasso, times(0)).complete(any(BitmapHunter.class));
+
+    scheduler.runOneTask();
+    InOrder inOrder = inOrder(picasso);
+    for (BitmapHunter hunter : batch) {
+      inOrder.verify(picasso).complete(hunter);
+    }
+    assertThat(batcher.pendingCount()).isZero();
+    assertThat(scheduler.size()).isZero();
+  }
+
+  @Test public void largeBatchIsSpreadOverFrames() {
+    completeTakes(5);
+    List<BitmapHunter> batch = hunters(5);
+    batcher.enqueue(batch);
+
+    scheduler.runOneTask();
+    verify(picasso, times(2)).complete(any(BitmapHunter.class));
+    assertThat(batcher.pendingCount()).isEqualTo(3);
+    assertThat(scheduler.size()).isEqualTo(1);
+
+    while (scheduler.size() > 0) {
+      scheduler.runOneTask();
+    }
+    InOrder inOrder = inOrder(picasso);
+    for (BitmapHunter hunter : batch) {
+      inOrder.verify(picasso).complete(hunter);
+    }
+    assertThat(batcher.pendingCount()).isZero();
+  }
+
+  @Test public void deliversAtLeastOneHunterPerFrame() {
+    completeTakes(100);
+    batcher.enqueue(hunters(2));
+
+    scheduler.runOneTask();
+    verify(picasso, times(1)).complete(any(BitmapHunter.class));
+    scheduler.runOneTask();
+    verify(picasso, times(2)).complete(any(BitmapHunter.class));
+  }
+
+  @Test public void batchDelayFollowsFrameTime() {
+    assertThat(batcher.batchDelayMillis()).isEqualTo(DEFAULT_FRAME_MILLIS);
+
+    completeTakes(40);
+    batcher.enqueue(hunters(10));
+    while (scheduler.size() > 0) {
+      scheduler.runOneTask();
+    }
+    assertThat(batcher.batchDelayMillis()).isGreaterThan(DEFAULT_FRAME_MILLIS);
+    assertThat(batcher.batchDelayMillis()).isLessThanOrEqualTo(40);
+
+    completeTakes(1000);
+    batcher.enqueue(hunters(20));
+    while (scheduler.size() > 0) {
+      scheduler.runOneTask();
+    }
+    assertThat(batcher.batchDelayMillis()).isLessThanOrEqualTo(MAX_FRAME_MILLIS);
+  }
+
+  private void completeTakes(final long millis) {
+    doAnswer(new Answer<Void>() {
+      @Override public Void answer(InvocationOnMock invocation) throws Throwable {
+        SystemClock.sleep(millis);
+        return null;
+      }
+    }).when(picasso).complete(any(BitmapHunter.class));
+  }
+
+  private List<BitmapHunter> hunters(int count) {
+    List<BitmapHunter> hunters = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      BitmapHunter hunter = mockHunter(URI_KEY_1 + i, makeBitmap(), false);
+      when(hunter.getPicasso()).thenReturn(picasso);
+      hunters.add(hunter);
+    }
+    return hunters;
+  }
+}
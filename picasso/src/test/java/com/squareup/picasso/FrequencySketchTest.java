@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class FrequencySketchTest {
+  @Test public void incrementCountsAccesses() {
+    FrequencySketch sketch = new FrequencySketch();
+    sketch.increment("a");
+    sketch.increment("a");
+    sketch.increment("b");
+
+    assertThat(sketch.frequency("a")).isEqualTo(2);
+    assertThat(sketch.frequency("b")).isEqualTo(1);
+    assertThat(sketch.frequency("c")).isZero();
+  }
+
+  @Test public void frequencyIsCapped() {
+    FrequencySketch sketch = new FrequencySketch();
+    for (int i = 0; i < 100; i++) {
+      sketch.increment("a");
+    }
+    assertThat(sketch.frequency("a")).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+  }
+
+  @Test public void resetHalvesFrequencies() {
+    FrequencySketch sketch = new FrequencySketch();
+    for (int i = 0; i < 6; i++) {
+      sketch.increment("a");
+    }
+    sketch.increment("b");
+    sketch.reset();
+
+    assertThat(sketch.frequency("a")).isEqualTo(3);
+    assertThat(sketch.frequency("b")).isZero();
+  }
+
+  @Test public void frequenciesAgeOut() {
+    FrequencySketch sketch = new FrequencySketch();
+    for (int i = 0; i < 10; i++) {
+      sketch.increment("old");
+    }
+    // Ten times the minimum capacity of distinct increments triggers a reset.
+    for (int i = 0; i < 640; i++) {
+      sketch.increment("key" + i);
+    }
+    assertThat(sketch.frequency("old")).isLessThan(10);
+  }
+
+  @Test public void growingForgetsFrequencies() {
+    FrequencySketch sketch = new FrequencySketch();
+    sketch.increment("a");
+    sketch.ensureCapacity(1000);
+
+    assertThat(sketch.frequency("a")).isZero();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static com.squareup.picasso.Picasso.Priority.HIGH;
+import static com.squareup.picasso.Picasso.Priority.LOW;
+import static com.squareup.picasso.Picasso.Priority.NORMAL;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class HostSchedulerTest {
+  @Test public void limitsHuntersPerHost() {
+    HostScheduler scheduler = new HostScheduler(4, 2);
+    BitmapHunter a1 = hunter("a.com", NORMAL);
+    BitmapHunter a2 = hunter("a.com", NORMAL);
+    BitmapHunter a3 = hunter("a.com", NORMAL);
+    BitmapHunter b1 = hunter("b.com", NORMAL);
+    assertThat(scheduler.tryAcquire(a1, 0)).isTrue();
+    assertThat(scheduler.tryAcquire(a2, 0)).isTrue();
+    assertThat(scheduler.tryAcquire(a3, 0)).isFalse();
+    assertThat(scheduler.tryAcquire(b1, 0)).isTrue();
+    assertThat(scheduler.poll(0)).isNull();
+
+    assertThat(scheduler.release(a1, 0, false)).isTrue();
+    assertThat(scheduler.poll(0)).isSameAs(a3);
+    assertThat(scheduler.poll(0)).isNull();
+  }
+
+  @Test public void hostsWithWaitingHuntersTakeTurns() {
+    HostScheduler scheduler = new HostScheduler(2, 2);
+    BitmapHunter a1 = hunter("a.com", NORMAL);
+    BitmapHunter a2 = hunter("a.com", NORMAL);
+    BitmapHunter a3 = hunter("a.com", NORMAL);
+    BitmapHunter a4 = hunter("a.com", NORMAL);
+    BitmapHunter b1 = hunter("b.com", NORMAL);
+    BitmapHunter b2 = hunter("b.com", NORMAL);
+    scheduler.tryAcquire(a1, 0);
+    scheduler.tryAcquire(a2, 0);
+    assertThat(scheduler.tryAcquire(a3, 0)).isFalse();
+    assertThat(scheduler.tryAcquire(a4, 0)).isFalse();
+    assertThat(scheduler.tryAcquire(b1, 0)).isFalse();
+    assertThat(scheduler.tryAcquire(b2, 0)).isFalse();
+
+    scheduler.release(a1, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(a3);
+    scheduler.release(a2, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(b1);
+    scheduler.release(a3, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(a4);
+    scheduler.release(b1, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(b2);
+  }
+
+  @Test public void waitingHunterOfHighestPriorityGoesFirst() {
+    HostScheduler scheduler = new HostScheduler(1, 1);
+    BitmapHunter running = hunter("a.com", NORMAL);
+    BitmapHunter low = hunter("a.com", LOW);
+    BitmapHunter high = hunter("a.com", HIGH);
+    BitmapHunter normal = hunter("a.com", NORMAL);
+    scheduler.tryAcquire(running, 0);
+    scheduler.tryAcquire(low, 0);
+    scheduler.tryAcquire(high, 0);
+    scheduler.tryAcquire(normal, 0);
+
+    scheduler.release(running, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(high);
+    scheduler.release(high, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(normal);
+    scheduler.release(normal, 0, false);
+    assertThat(scheduler.poll(0)).isSameAs(low);
+  }
+
+  @Test public void releaseOfHunterWithoutSlotDoesNothing() {
+    HostScheduler scheduler = new HostScheduler(1, 1);
+    BitmapHunter running = hunter("a.com", NORMAL);
+    BitmapHunter waiting = hunter("a.com", NORMAL);
+    scheduler.tryAcquire(running, 0);
+    scheduler.tryAcquire(waiting, 0);
+    assertThat(scheduler.release(waiting, 0, false)).isFalse();
+    assertThat(scheduler.poll(0)).isNull();
+    assertThat(scheduler.release(running, 0, false)).isTrue();
+    assertThat(scheduler.release(running, 0, false)).isFalse();
+  }
+
+  @Test public void snapshotHasQueueDepthAndLatencyPerHost() {
+    HostScheduler scheduler = new HostScheduler(2, 1);
+    assertThat(scheduler.createSnapshot()).isEmpty();
+    BitmapHunter a1 = hunter("a.com", NORMAL);
+    BitmapHunter a2 = hunter("a.com", NORMAL);
+    BitmapHunter a3 = hunter("a.com", NORMAL);
+    BitmapHunter b1 = hunter("b.com", NORMAL);
+    scheduler.tryAcquire(a1, 100);
+    scheduler.tryAcquire(a2, 100);
+    scheduler.tryAcquire(a3, 100);
+    scheduler.tryAcquire(b1, 100);
+    scheduler.release(a1, 400, true);
+    scheduler.poll(400);
+    scheduler.release(a2, 500, true);
+    scheduler.release(b1, 150, false);
+
+    Map<String, StatsSnapshot.HostStats> snapshot = scheduler.createSnapshot();
+    assertThat(snapshot.keySet()).containsExactly("a.com", "b.com");
+    StatsSnapshot.HostStats a = snapshot.get("a.com");
+    assertThat(a.inFlightCount).isEqualTo(0);
+    assertThat(a.queuedCount).isEqualTo(1);
+    assertThat(a.fetchCount).isEqualTo(2);
+    assertThat(a.averageFetchLatency).isEqualTo(200);
+    assertThat(a.maxFetchLatency).isEqualTo(300);
+    StatsSnapshot.HostStats b = snapshot.get("b.com");
+    assertThat(b.inFlightCount).isEqualTo(0);
+    assertThat(b.queuedCount).isEqualTo(0);
+    assertThat(b.fetchCount).isEqualTo(0);
+  }
+
+  private static BitmapHunter hunter(String host, Picasso.Priority priority) {
+    BitmapHunter hunter = mock(BitmapHunter.class);
+    Request data = new Request.Builder(Uri.parse("http://" + host + "/image.png")).build();
+    when(hunter.getData()).thenReturn(data);
+    when(hunter.getPriority()).thenReturn(priority);
+    return hunter;
+  }
+}
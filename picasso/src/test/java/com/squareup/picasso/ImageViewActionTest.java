@@ -31,6 +31,7 @@ import static com.squareup.picasso.TestUtils.URI_KEY_1;
 import static com.squareup.picasso.TestUtils.makeBitmap;
 import static com.squareup.picasso.TestUtils.mockCallback;
 import static com.squareup.picasso.TestUtils.mockImageViewTarget;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -82,8 +83,11 @@ public class ImageViewActionTest {
   public void invokesTargetAndCallbackSuccessIfTargetIsNotNull() throws Exception {
     Bitmap bitmap = makeBitmap();
     Picasso picasso =
-        new Picasso(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE, null, IDENTITY,
-            null, mock(Stats.class), Bitmap.Config.ARGB_8888, false, false);
+        picassoBuilder(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE,
+            mock(Stats.class))
+            .requestTransformer(IDENTITY)
+            .defaultBitmapConfig(Bitmap.Config.ARGB_8888)
+            .build();
     ImageView target = mockImageViewTarget();
     Callback callback = mockCallback();
     ImageViewAction request =
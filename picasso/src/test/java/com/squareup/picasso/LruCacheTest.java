@@ -26,6 +26,9 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricGradleTestRunner;
 
 import static android.graphics.Bitmap.Config.ALPHA_8;
+import static com.squareup.picasso.TestUtils.URI_1;
+import static com.squareup.picasso.TestUtils.URI_2;
+import static com.squareup.picasso.Utils.createKey;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.fail;
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -118,6 +121,22 @@ public class LruCacheTest {
     }
   }
 
+  @Test public void trimToSizeEvictsLeastRecentlyUsed() {
+    LruCache cache = new LruCache(3);
+    cache.set("a", A);
+    cache.set("b", B);
+    cache.set("c", C);
+    cache.get("a");
+    cache.trimToSize(1);
+
+    assertThat(cache.get("a")).isSameAs(A);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isNull();
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.maxSize()).isEqualTo(3);
+    assertThat(cache.evictionCount()).isEqualTo(2);
+  }
+
   @Test public void evictionWithSingletonCache() {
     LruCache cache = new LruCache(1);
     cache.set("a", A);
@@ -177,6 +196,31 @@ public class LruCacheTest {
     assertThat(cache.size()).isZero();
   }
 
+  @Test public void uriKeysFollowEvictions() {
+    LruCache cache = new LruCache(2);
+    cache.set("Hello\nAlice!", A);
+    cache.set("Hello\nAlice!", B);
+    cache.set("World\nBob!", C);
+    assertThat(cache.uriKeys.get("Hello")).containsOnly("Hello\nAlice!");
+
+    cache.set("World\nEve!", D);
+    assertThat(cache.uriKeys).hasSize(1);
+    assertThat(cache.uriKeys.get("World")).containsOnly("World\nBob!", "World\nEve!");
+
+    cache.clearKeyUri("World");
+    assertThat(cache.map).isEmpty();
+    assertThat(cache.uriKeys).isEmpty();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test public void evictAllClearsUriKeys() {
+    LruCache cache = new LruCache(4);
+    cache.set("Hello\nAlice!", A);
+    cache.set("No separator", B);
+    cache.evictAll();
+    assertThat(cache.uriKeys).isEmpty();
+  }
+
   @Test public void overMaxSizeDoesNotClear() {
     LruCache cache = new LruCache(16);
     Bitmap size4 = Bitmap.createBitmap(2, 2, ALPHA_8);
@@ -196,6 +240,63 @@ public class LruCacheTest {
     assertEquals(cache.size(), 16);
   }
 
+  @Test public void getLargerVariantReturnsSmallestDerivableVariant() {
+    LruCache cache = new LruCache(10000);
+    Bitmap whole = Bitmap.createBitmap(80, 60, ALPHA_8);
+    Bitmap stretched = Bitmap.createBitmap(40, 30, ALPHA_8);
+    Bitmap inside = Bitmap.createBitmap(20, 15, ALPHA_8);
+    Bitmap cropped = Bitmap.createBitmap(12, 12, ALPHA_8);
+    cache.set(createKey(new Request.Builder(URI_1).build()), whole);
+    cache.set(createKey(new Request.Builder(URI_1).resize(40, 30).build()), stretched);
+    cache.set(createKey(new Request.Builder(URI_1).resize(20, 20).centerInside().build()), inside);
+    cache.set(createKey(new Request.Builder(URI_1).resize(12, 12).centerCrop().build()), cropped);
+
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10)))
+        .isSameAs(inside);
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(30, 10)))
+        .isSameAs(stretched);
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(30, 10).centerCrop()))
+        .isSameAs(whole);
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(100, 10)))
+        .isNull();
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_2).resize(10, 10)))
+        .isNull();
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThat(cache.missCount()).isEqualTo(0);
+  }
+
+  @Test public void getLargerVariantSkipsStretchedVariantForOtherShapes() {
+    LruCache cache = new LruCache(10000);
+    Bitmap stretched = Bitmap.createBitmap(40, 30, ALPHA_8);
+    cache.set(createKey(new Request.Builder(URI_1).resize(40, 30).build()), stretched);
+
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10)))
+        .isSameAs(stretched);
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 0)))
+        .isNull();
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10).centerInside()))
+        .isNull();
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10).rotate(90)))
+        .isNull();
+  }
+
+  @Test public void getLargerVariantRequiresSizeAndConfig() {
+    LruCache cache = new LruCache(10000);
+    Bitmap whole = Bitmap.createBitmap(80, 60, ALPHA_8);
+    cache.set(createKey(new Request.Builder(URI_1).build()), whole);
+
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).rotate(90))).isNull();
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10)
+        .config(Bitmap.Config.ARGB_8888))).isNull();
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10)
+        .config(ALPHA_8))).isSameAs(whole);
+  }
+
+  private static Bitmap getLargerVariant(LruCache cache, Request.Builder builder) {
+    Request request = builder.build();
+    return cache.getLargerVariant(createKey(request), request);
+  }
+
   private void assertHit(LruCache cache, String key, Bitmap value) {
     assertThat(cache.get(key)).isEqualTo(value);
     expectedHitCount++;
@@ -25,6 +25,7 @@ import java.io.InputStream;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.robolectric.RobolectricGradleTestRunner;
 
@@ -36,6 +37,9 @@ import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Assertions.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -129,6 +133,53 @@ public class NetworkRequestHandlerTest {
     verifyZeroInteractions(stats);
   }
 
+  @Test public void cancelableDownloaderReceivesCancellation() throws Exception {
+    Downloader.Cancelable cancelable = mock(Downloader.Cancelable.class);
+    Response response = new Response(new ByteArrayInputStream(new byte[0]), false, 0);
+    Downloader.Cancellation cancellation = new Downloader.Cancellation();
+    when(cancelable.load(URI_1, 0, cancellation)).thenReturn(response);
+    networkHandler = new NetworkRequestHandler(cancelable, stats);
+    Action action = TestUtils.mockAction(URI_KEY_1, URI_1);
+    networkHandler.load(action.getRequest(), 0, cancellation);
+    verify(cancelable).load(URI_1, 0, cancellation);
+    verify(cancelable, never()).load(any(Uri.class), anyInt());
+  }
+
+  @Test public void enqueuePassesResultToCallback() throws Exception {
+    Downloader.Async async = mock(Downloader.Async.class);
+    networkHandler = new NetworkRequestHandler(async, stats);
+    assertThat(networkHandler.loadsAsynchronously()).isTrue();
+    NetworkRequestHandler.Callback callback = mock(NetworkRequestHandler.Callback.class);
+    Action action = TestUtils.mockAction(URI_KEY_1, URI_1);
+    Downloader.Cancellation cancellation = new Downloader.Cancellation();
+    networkHandler.enqueue(action.getRequest(), cancellation, callback);
+
+    ArgumentCaptor<Downloader.Callback> captor = ArgumentCaptor.forClass(Downloader.Callback.class);
+    verify(async).enqueue(eq(URI_1), eq(0), eq(cancellation), captor.capture());
+    InputStream stream = mockInputStream();
+    captor.getValue().onResponse(new Response(stream, false, 1024));
+    ArgumentCaptor<RequestHandler.Result> result =
+        ArgumentCaptor.forClass(RequestHandler.Result.class);
+    verify(callback).onResult(result.capture());
+    assertThat(result.getValue().getStream()).isSameAs(stream);
+    assertThat(result.getValue().getContentLength()).isEqualTo(1024);
+    verify(stats).dispatchDownloadFinished(1024);
+  }
+
+  @Test public void enqueuePassesInvalidResponseAsFailure() throws Exception {
+    Downloader.Async async = mock(Downloader.Async.class);
+    networkHandler = new NetworkRequestHandler(async, stats);
+    NetworkRequestHandler.Callback callback = mock(NetworkRequestHandler.Callback.class);
+    Action action = TestUtils.mockAction(URI_KEY_1, URI_1);
+    networkHandler.enqueue(action.getRequest(), new Downloader.Cancellation(), callback);
+
+    ArgumentCaptor<Downloader.Callback> captor = ArgumentCaptor.forClass(Downloader.Callback.class);
+    verify(async).enqueue(eq(URI_1), eq(0), any(Downloader.Cancellation.class), captor.capture());
+    captor.getValue().onResponse(new Response(mockInputStream(), true, 0));
+    verify(callback).onFailure(any(NetworkRequestHandler.ContentLengthException.class));
+    verify(callback, never()).onResult(any(RequestHandler.Result.class));
+  }
+
   @Test public void downloaderInputStreamNotDecoded() throws Exception {
     final InputStream is = new ByteArrayInputStream(new byte[] { 'a' });
     Downloader bitmapDownloader = new Downloader() {
@@ -16,10 +16,15 @@
 package com.squareup.picasso;
 
 import android.net.Uri;
+import android.support.annotation.NonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
 import okhttp3.OkHttpClient;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 import okio.Okio;
 import org.junit.Before;
 import org.junit.Rule;
@@ -29,6 +34,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.annotation.Config;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
@@ -118,6 +125,70 @@ public class OkHttp3DownloaderTest {
     }
   }
 
+  @Test public void canceledLoadDoesNotExecute() throws Exception {
+    Downloader.Cancellation cancellation = new Downloader.Cancellation();
+    cancellation.cancel();
+    try {
+      downloader.load(uri, 0, cancellation);
+      fail("Expected IOException.");
+    } catch (IOException expected) {
+    }
+    assertThat(server.getRequestCount()).isZero();
+  }
+
+  @Test public void cancelAbortsResponseBody() throws Exception {
+    server.enqueue(new MockResponse()
+        .setBody(new Buffer().write(new byte[1024]))
+        .throttleBody(64, 100, MILLISECONDS));
+
+    Downloader.Cancellation cancellation = new Downloader.Cancellation();
+    Downloader.Response response = downloader.load(uri, 0, cancellation);
+    InputStream stream = response.getInputStream();
+    assertThat(stream.read(new byte[64])).isGreaterThan(0);
+    cancellation.cancel();
+    try {
+      Okio.buffer(Okio.source(stream)).readByteArray();
+      fail("Expected IOException.");
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test public void enqueuePassesResponseToCallback() throws Exception {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingCallback callback = new RecordingCallback();
+    downloader.enqueue(uri, 0, new Downloader.Cancellation(), callback);
+    Downloader.Response response = callback.await();
+    assertThat(response.cached).isFalse();
+    assertThat(Okio.buffer(Okio.source(response.getInputStream())).readUtf8()).isEqualTo("Hi");
+  }
+
+  @Test public void enqueuePassesResponseExceptionToCallback() throws Exception {
+    server.enqueue(new MockResponse().setStatus("HTTP/1.1 401 Not Authorized"));
+
+    RecordingCallback callback = new RecordingCallback();
+    downloader.enqueue(uri, 0, new Downloader.Cancellation(), callback);
+    try {
+      callback.await();
+      fail("Expected ResponseException.");
+    } catch (Downloader.ResponseException e) {
+      assertThat(e).hasMessage("401 Not Authorized");
+    }
+  }
+
+  @Test public void canceledEnqueueFails() throws Exception {
+    Downloader.Cancellation cancellation = new Downloader.Cancellation();
+    cancellation.cancel();
+
+    RecordingCallback callback = new RecordingCallback();
+    downloader.enqueue(uri, 0, cancellation, callback);
+    try {
+      callback.await();
+      fail("Expected IOException.");
+    } catch (IOException expected) {
+    }
+  }
+
   @Test public void shutdownClosesCacheIfNotShared() throws Exception {
     OkHttp3Downloader downloader = new OkHttp3Downloader(temporaryFolder.getRoot());
     okhttp3.Cache cache = downloader.getCache();
@@ -131,4 +202,28 @@ public class OkHttp3DownloaderTest {
     new OkHttp3Downloader(client).shutdown();
     assertThat(cache.isClosed()).isFalse();
   }
+
+  private static final class RecordingCallback implements Downloader.Callback {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Downloader.Response response;
+    private IOException failure;
+
+    @Override public void onResponse(@NonNull Downloader.Response response) {
+      this.response = response;
+      done.countDown();
+    }
+
+    @Override public void onFailure(@NonNull IOException e) {
+      this.failure = e;
+      done.countDown();
+    }
+
+    Downloader.Response await() throws Exception {
+      assertThat(done.await(10, SECONDS)).isTrue();
+      if (failure != null) {
+        throw failure;
+      }
+      return response;
+    }
+  }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static com.squareup.picasso.BitmapHunter.forRequest;
+import static com.squareup.picasso.Picasso.Priority.HIGH;
+import static com.squareup.picasso.Picasso.Priority.LOW;
+import static com.squareup.picasso.Picasso.Priority.NORMAL;
+import static com.squareup.picasso.PicassoExecutorService.PRIORITY_AGING_MILLIS;
+import static com.squareup.picasso.TestUtils.URI_1;
+import static com.squareup.picasso.TestUtils.URI_KEY_1;
+import static com.squareup.picasso.TestUtils.mockAction;
+import static com.squareup.picasso.TestUtils.mockPicasso;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class PicassoExecutorServiceTest {
+  @Mock Dispatcher dispatcher;
+  @Mock Cache cache;
+  @Mock Stats stats;
+  @Mock Downloader downloader;
+
+  private final CountDownLatch busy = new CountDownLatch(1);
+  private PicassoExecutorService service;
+
+  @Before public void setUp() {
+    initMocks(this);
+    service = new PicassoExecutorService(1);
+    // Keep the only thread busy so that submitted hunters stay queued.
+    service.execute(new Runnable() {
+      @Override public void run() {
+        try {
+          busy.await();
+        } catch (InterruptedException ignored) {
+        }
+      }
+    });
+  }
+
+  @After public void tearDown() {
+    busy.countDown();
+    service.shutdownNow();
+  }
+
+  @Test public void ordersByPriorityThenSubmission() {
+    BitmapHunter low = hunter(LOW);
+    BitmapHunter high1 = hunter(HIGH);
+    BitmapHunter normal = hunter(NORMAL);
+    BitmapHunter high2 = hunter(HIGH);
+    service.submit(low);
+    service.submit(high1);
+    service.submit(normal);
+    service.submit(high2);
+
+    assertThat(queued()).containsExactly(high1, high2, normal, low);
+  }
+
+  @Test public void waitingHuntersAgeAheadOfNewerHigherPriorityHunters() {
+    BitmapHunter low = hunter(LOW);
+    BitmapHunter high = hunter(HIGH);
+    service.submit(low);
+    SystemClock.sleep(2 * PRIORITY_AGING_MILLIS + 1);
+    service.submit(high);
+
+    assertThat(queued()).containsExactly(low, high);
+  }
+
+  @Test public void raisePriorityMovesQueuedHunterForward() {
+    BitmapHunter normal1 = hunter(NORMAL);
+    BitmapHunter normal2 = hunter(NORMAL);
+    BitmapHunter low = hunter(LOW);
+    service.submit(normal1);
+    service.submit(normal2);
+    Future<?> future = service.submit(low);
+
+    assertThat(service.raisePriority(future, HIGH)).isTrue();
+    assertThat(queued()).containsExactly(low, normal1, normal2);
+  }
+
+  @Test public void raisePriorityKeepsCreditForWaiting() {
+    BitmapHunter low = hunter(LOW);
+    BitmapHunter high = hunter(HIGH);
+    Future<?> future = service.submit(low);
+    SystemClock.sleep(PRIORITY_AGING_MILLIS / 2);
+    service.submit(high);
+
+    assertThat(service.raisePriority(future, HIGH)).isTrue();
+    assertThat(queued()).containsExactly(low, high);
+  }
+
+  @Test public void raisePriorityIgnoresLowerPriorityAndHuntersWhichLeftTheQueue() {
+    Future<?> future = service.submit(hunter(NORMAL));
+    assertThat(service.raisePriority(future, LOW)).isFalse();
+    assertThat(service.raisePriority(future, NORMAL)).isFalse();
+
+    queued();
+    assertThat(service.raisePriority(future, HIGH)).isFalse();
+    assertThat(service.getQueue()).isEmpty();
+  }
+
+  private BitmapHunter hunter(Picasso.Priority priority) {
+    Action action = mockAction(URI_KEY_1, URI_1, priority);
+    return forRequest(mockPicasso(new NetworkRequestHandler(downloader, stats)), dispatcher,
+        cache, stats, action);
+  }
+
+  /** Removes the queued hunters in the order they would run. */
+  private List<BitmapHunter> queued() {
+    List<BitmapHunter> hunters = new ArrayList<>();
+    Runnable task;
+    while ((task = service.getQueue().poll()) != null) {
+      hunters.add(((PicassoExecutorService.PicassoFutureTask) task).hunter);
+    }
+    return hunters;
+  }
+}
@@ -15,9 +15,11 @@
  */
 package com.squareup.picasso;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.widget.ImageView;
 import android.widget.RemoteViews;
 import java.io.File;
@@ -31,12 +33,19 @@ import org.mockito.Mock;
 import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
 import static android.graphics.Bitmap.Config.ARGB_8888;
 import static com.squareup.picasso.Picasso.Listener;
 import static com.squareup.picasso.Picasso.LoadedFrom.MEMORY;
 import static com.squareup.picasso.RemoteViewsAction.RemoteViewsTarget;
 import static com.squareup.picasso.TestUtils.URI_1;
 import static com.squareup.picasso.TestUtils.URI_KEY_1;
+import static com.squareup.picasso.TestUtils.URI_KEY_2;
 import static com.squareup.picasso.TestUtils.makeBitmap;
 import static com.squareup.picasso.TestUtils.mockAction;
 import static com.squareup.picasso.TestUtils.mockCanceledAction;
@@ -44,16 +53,21 @@ import static com.squareup.picasso.TestUtils.mockDeferredRequestCreator;
 import static com.squareup.picasso.TestUtils.mockHunter;
 import static com.squareup.picasso.TestUtils.mockImageViewTarget;
 import static com.squareup.picasso.TestUtils.mockTarget;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Assertions.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 @RunWith(RobolectricGradleTestRunner.class)
@@ -73,8 +87,11 @@ public class PicassoTest {
 
   @Before public void setUp() {
     initMocks(this);
-    picasso = new Picasso(context, dispatcher, cache, listener, transformer, null, stats, ARGB_8888,
-        false, false);
+    picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .listener(listener)
+        .requestTransformer(transformer)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
   }
 
   @Test public void submitWithNullTargetInvokesDispatcher() {
@@ -149,6 +166,17 @@ public class PicassoTest {
     verify(action).complete(bitmap, MEMORY);
   }
 
+  @Test public void completeRecordsDeliveryLatencyOfBatchedHunters() {
+    BitmapHunter batched = mockHunter(URI_KEY_1, bitmap, false);
+    batched.batchedMillis = SystemClock.uptimeMillis() - 50;
+    picasso.complete(batched);
+    verify(stats).dispatchBatchDelivered(50);
+
+    BitmapHunter direct = mockHunter(URI_KEY_2, bitmap, false);
+    picasso.complete(direct);
+    verify(stats, times(1)).dispatchBatchDelivered(anyLong());
+  }
+
   @Test public void completeWithReplayDoesNotRemove() {
     Action action = mockAction(URI_KEY_1, URI_1, mockImageViewTarget());
     when(action.willReplay()).thenReturn(true);
@@ -337,6 +365,97 @@ public class PicassoTest {
     assertThat(picasso.shutdown).isTrue();
   }
 
+  @Test public void shutdownUnregistersMemoryCallbacks() {
+    verify(context).registerComponentCallbacks(any(ComponentCallbacks2.class));
+    picasso.shutdown();
+    verify(context).unregisterComponentCallbacks(any(ComponentCallbacks2.class));
+  }
+
+  @Test public void completeRecordsDisplayedRequestsForWarmStart() {
+    WarmStart warmStart = new WarmStart(new File("unused"), 10);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .warmStart(warmStart)
+        .listener(listener)
+        .requestTransformer(transformer)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Action action = mockAction(URI_KEY_1, URI_1, mockImageViewTarget());
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap, false);
+    when(hunter.getAction()).thenReturn(action);
+    when(hunter.getLoadedFrom()).thenReturn(MEMORY);
+
+    picasso.complete(hunter);
+    verify(dispatcher).dispatchWarmStartSave(warmStart);
+    // Uses before the next save do not schedule another one.
+    picasso.recordUse(URI_KEY_1, action.getRequest());
+    verify(dispatcher).dispatchWarmStartSave(warmStart);
+  }
+
+  @Test public void completeDoesNotRecordFetchesForWarmStart() {
+    WarmStart warmStart = new WarmStart(new File("unused"), 10);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .warmStart(warmStart)
+        .listener(listener)
+        .requestTransformer(transformer)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    Request request = new Request.Builder(URI_1).build();
+    Action action = new FetchAction(picasso, request, 0, 0, null, URI_KEY_1, null);
+    BitmapHunter hunter = mockHunter(URI_KEY_1, bitmap, false);
+    when(hunter.getAction()).thenReturn(action);
+    when(hunter.getLoadedFrom()).thenReturn(MEMORY);
+
+    picasso.complete(hunter);
+    verify(dispatcher, never()).dispatchWarmStartSave(warmStart);
+  }
+
+  @Test public void trimMemoryShrinksCachesInProportionToLevel() {
+    BitmapHunter.BYTE_ARRAY_POOL.clear();
+    BitmapPool bitmapPool = new BitmapPool(100);
+    EncodedMemoryCache encodedCache = new EncodedMemoryCache(100);
+    encodedCache.set("a", new byte[40], 40);
+    encodedCache.set("b", new byte[40], 40);
+    Cache cache = mock(Cache.class, withSettings().extraInterfaces(Cache.Trimmable.class));
+    when(cache.maxSize()).thenReturn(1000);
+    when(cache.size()).thenReturn(800, 500);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats)
+        .bitmapPool(bitmapPool)
+        .encodedCache(encodedCache)
+        .listener(listener)
+        .requestTransformer(transformer)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
+    picasso.trimMemory(TRIM_MEMORY_UI_HIDDEN);
+
+    verify((Cache.Trimmable) cache).trimToSize(500);
+    assertThat(encodedCache.size()).isEqualTo(40);
+    verify(stats).dispatchMemoryTrimmed(300 + 40);
+  }
+
+  @Test public void trimMemoryClearsCacheWhenLikelyToBeKilled() {
+    Cache cache = mock(Cache.class, withSettings().extraInterfaces(Cache.Trimmable.class));
+    when(cache.maxSize()).thenReturn(1000);
+    Picasso picasso = picassoBuilder(context, dispatcher, cache, stats).build();
+    picasso.trimMemory(TRIM_MEMORY_COMPLETE);
+    verify((Cache.Trimmable) cache).trimToSize(0);
+  }
+
+  @Test public void trimMemoryClearsCacheWhichCannotTrim() {
+    when(cache.maxSize()).thenReturn(1000);
+    picasso.trimMemory(TRIM_MEMORY_UI_HIDDEN);
+    verify(cache).clear();
+  }
+
+  @Test public void retainedPercentDecreasesWithLevel() {
+    assertThat(Picasso.retainedPercent(0)).isEqualTo(100);
+    assertThat(Picasso.retainedPercent(TRIM_MEMORY_RUNNING_MODERATE)).isEqualTo(75);
+    assertThat(Picasso.retainedPercent(TRIM_MEMORY_RUNNING_LOW)).isEqualTo(50);
+    assertThat(Picasso.retainedPercent(TRIM_MEMORY_RUNNING_CRITICAL)).isEqualTo(25);
+    assertThat(Picasso.retainedPercent(TRIM_MEMORY_UI_HIDDEN)).isEqualTo(50);
+    assertThat(Picasso.retainedPercent(TRIM_MEMORY_BACKGROUND)).isEqualTo(25);
+    assertThat(Picasso.retainedPercent(TRIM_MEMORY_COMPLETE)).isEqualTo(0);
+  }
+
   @Test public void shutdownTwice() {
     picasso.shutdown();
     picasso.shutdown();
@@ -414,6 +533,16 @@ public class PicassoTest {
     assertThat(Picasso.with(RuntimeEnvironment.application)).isSameAs(picasso);
   }
 
+  @Test public void encodedMemoryCacheIsOffByDefault() {
+    Picasso picasso = new Picasso.Builder(RuntimeEnvironment.application).build();
+    assertThat(picasso.encodedCache).isNull();
+
+    Picasso withEncodedCache = new Picasso.Builder(RuntimeEnvironment.application)
+        .encodedMemoryCacheSize(1024)
+        .build();
+    assertThat(withEncodedCache.encodedCache.maxSize()).isEqualTo(1024);
+  }
+
   @Test public void shutdownClearsDeferredRequests() {
     DeferredRequestCreator deferredRequestCreator = mockDeferredRequestCreator();
     ImageView target = mockImageViewTarget();
@@ -541,6 +670,68 @@ public class PicassoTest {
     }
   }
 
+  @Test public void builderInvalidNetworkConcurrency() {
+    try {
+      new Picasso.Builder(context).networkConcurrency(0, 1);
+      fail("Zero max requests should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).networkConcurrency(4, 0);
+      fail("Zero max requests per host should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).networkConcurrency(4, 5);
+      fail("More requests per host than in total should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void builderInvalidRetryBackoff() {
+    try {
+      new Picasso.Builder(context).retryBackoff(0, 1, SECONDS);
+      fail("Zero initial delay should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).retryBackoff(2, 1, SECONDS);
+      fail("Max delay below initial delay should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).retryBackoff(1, 2, null);
+      fail("Null unit should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void builderInvalidRetryBudget() {
+    try {
+      new Picasso.Builder(context).retryBudget(0, 1, SECONDS);
+      fail("Zero max retries should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).retryBudget(10, 0, SECONDS);
+      fail("Zero period should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void builderInvalidReplayPacing() {
+    try {
+      new Picasso.Builder(context).replayPacing(0, 1, SECONDS);
+      fail("Zero max requests should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).replayPacing(4, 0, SECONDS);
+      fail("Zero interval should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   @Test public void builderWithoutRequestHandler() {
     Picasso picasso = new Picasso.Builder(RuntimeEnvironment.application).build();
     assertThat(picasso.getRequestHandlers()).isNotEmpty().doesNotContain(requestHandler);
@@ -565,6 +756,28 @@ public class PicassoTest {
     assertThat(picasso.areIndicatorsEnabled()).isTrue();
   }
 
+  @Test public void builderAdaptiveConcurrencySizesFetchStageOfBlockingDownloader() {
+    Picasso picasso = new Picasso.Builder(RuntimeEnvironment.application)
+        .downloader(downloader)
+        .adaptiveConcurrencyEnabled(true)
+        .build();
+    assertThat(((PicassoExecutorService) picasso.dispatcher.service).limits)
+        .isSameAs(picasso.executorLimits);
+    assertThat(picasso.getSnapshot().fetchConcurrency).isGreaterThan(0);
+  }
+
+  @Test public void builderAdaptiveConcurrencySkipsFetchStageOfAsyncDownloader() {
+    Picasso picasso = new Picasso.Builder(RuntimeEnvironment.application)
+        .downloader(mock(Downloader.Async.class))
+        .adaptiveConcurrencyEnabled(true)
+        .build();
+    assertThat(((PicassoExecutorService) picasso.dispatcher.service).limits).isNull();
+    assertThat(picasso.executorLimits).isNotNull();
+    StatsSnapshot snapshot = picasso.getSnapshot();
+    assertThat(snapshot.fetchConcurrency).isEqualTo(0);
+    assertThat(snapshot.decodeConcurrency).isGreaterThan(0);
+  }
+
   @Test public void invalidateString() {
     picasso.invalidate("http://example.com");
     verify(cache).clearKeyUri("http://example.com");
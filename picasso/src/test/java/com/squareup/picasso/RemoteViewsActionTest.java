@@ -31,6 +31,7 @@ import static com.squareup.picasso.TestUtils.URI_KEY_1;
 import static com.squareup.picasso.TestUtils.makeBitmap;
 import static com.squareup.picasso.TestUtils.mockCallback;
 import static com.squareup.picasso.TestUtils.mockImageViewTarget;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -95,8 +96,11 @@ import static org.mockito.Mockito.when;
   }
 
   private Picasso createPicasso() {
-    return new Picasso(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE, null,
-        IDENTITY, null, mock(Stats.class), ARGB_8888, false, false);
+    return picassoBuilder(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE,
+        mock(Stats.class))
+        .requestTransformer(IDENTITY)
+        .defaultBitmapConfig(ARGB_8888)
+        .build();
   }
 
   static class TestableRemoteViewsAction extends RemoteViewsAction {
@@ -53,6 +53,7 @@ import static com.squareup.picasso.TestUtils.mockImageViewTarget;
 import static com.squareup.picasso.TestUtils.mockNotification;
 import static com.squareup.picasso.TestUtils.mockRemoteViews;
 import static com.squareup.picasso.TestUtils.mockTarget;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -267,8 +268,11 @@ public class RequestCreatorTest {
   @Test
   public void intoImageViewWithQuickMemoryCacheCheckDoesNotSubmit() {
     Picasso picasso =
-        spy(new Picasso(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE, null,
-            IDENTITY, null, mock(Stats.class), ARGB_8888, false, false));
+        spy(picassoBuilder(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE,
+            mock(Stats.class))
+            .requestTransformer(IDENTITY)
+            .defaultBitmapConfig(ARGB_8888)
+            .build());
     doReturn(bitmap).when(picasso).quickMemoryCacheCheck(URI_KEY_1);
     ImageView target = mockImageViewTarget();
     Callback callback = mockCallback();
@@ -282,8 +286,11 @@ public class RequestCreatorTest {
   @Test
   public void intoImageViewSetsPlaceholderDrawable() {
     Picasso picasso =
-        spy(new Picasso(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE, null,
-            IDENTITY, null, mock(Stats.class), ARGB_8888, false, false));
+        spy(picassoBuilder(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE,
+            mock(Stats.class))
+            .requestTransformer(IDENTITY)
+            .defaultBitmapConfig(ARGB_8888)
+            .build());
     ImageView target = mockImageViewTarget();
     Drawable placeHolderDrawable = mock(Drawable.class);
     new RequestCreator(picasso, URI_1, 0).placeholder(placeHolderDrawable).into(target);
@@ -295,8 +302,11 @@ public class RequestCreatorTest {
   @Test
   public void intoImageViewNoPlaceholderDrawable() {
     Picasso picasso =
-        spy(new Picasso(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE, null, IDENTITY,
-            null, mock(Stats.class), ARGB_8888, false, false));
+        spy(picassoBuilder(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE,
+            mock(Stats.class))
+            .requestTransformer(IDENTITY)
+            .defaultBitmapConfig(ARGB_8888)
+            .build());
     ImageView target = mockImageViewTarget();
     new RequestCreator(picasso, URI_1, 0).noPlaceholder().into(target);
     verifyNoMoreInteractions(target);
@@ -307,8 +317,11 @@ public class RequestCreatorTest {
   @Test
   public void intoImageViewSetsPlaceholderWithResourceId() {
     Picasso picasso =
-        spy(new Picasso(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE, null, IDENTITY,
-            null, mock(Stats.class), ARGB_8888, false, false));
+        spy(picassoBuilder(RuntimeEnvironment.application, mock(Dispatcher.class), Cache.NONE,
+            mock(Stats.class))
+            .requestTransformer(IDENTITY)
+            .defaultBitmapConfig(ARGB_8888)
+            .build());
     ImageView target = mockImageViewTarget();
     new RequestCreator(picasso, URI_1, 0).placeholder(android.R.drawable.picture_frame).into(target);
     ArgumentCaptor<Drawable> drawableCaptor = ArgumentCaptor.forClass(Drawable.class);
@@ -20,11 +20,16 @@ import android.graphics.BitmapFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
 
+import static android.graphics.Bitmap.Config.ARGB_8888;
 import static android.graphics.Bitmap.Config.RGB_565;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR2;
+import static android.os.Build.VERSION_CODES.KITKAT;
 import static com.squareup.picasso.RequestHandler.calculateInSampleSize;
 import static com.squareup.picasso.RequestHandler.createBitmapOptions;
 import static com.squareup.picasso.RequestHandler.requiresInSampleSize;
+import static com.squareup.picasso.RequestHandler.setInBitmap;
 import static com.squareup.picasso.TestUtils.URI_1;
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -120,4 +125,63 @@ public class RequestHandlerTest {
     assertThat(configOptions.inPurgeable).isFalse();
     assertThat(configOptions.inInputShareable).isFalse();
   }
+
+  @Test public void mutableAndInJustDecodeBoundsIfReusingBitmaps() {
+    final Request request = new Request.Builder(URI_1).build();
+    final BitmapFactory.Options options = createBitmapOptions(request, new BitmapPool(100));
+    assertThat(options).isNotNull();
+    assertThat(options.inJustDecodeBounds).isTrue();
+    assertThat(options.inMutable).isTrue();
+  }
+
+  @Test public void doesNotReuseBitmapsIfPurgeable() {
+    final Request request = new Request.Builder(URI_1).purgeable().build();
+    final BitmapFactory.Options options = createBitmapOptions(request, new BitmapPool(100));
+    assertThat(options.inJustDecodeBounds).isFalse();
+    assertThat(options.inMutable).isFalse();
+  }
+
+  @Config(sdk = KITKAT)
+  @Test public void setInBitmapUsesSampledSize() {
+    BitmapPool pool = new BitmapPool(1000);
+    Bitmap bitmap = Bitmap.createBitmap(10, 10, ARGB_8888);
+    pool.put(bitmap);
+    final Request request = new Request.Builder(URI_1).build();
+    final BitmapFactory.Options options = createBitmapOptions(request, pool);
+    options.outWidth = 40;
+    options.outHeight = 40;
+    options.inSampleSize = 4;
+    setInBitmap(options, pool);
+    assertThat(options.inBitmap).isSameAs(bitmap);
+  }
+
+  @Config(sdk = JELLY_BEAN_MR2)
+  @Test public void setInBitmapOnlyReusesForUnsampledJpegOrPngBeforeKitKat() {
+    BitmapPool pool = new BitmapPool(10000);
+    Bitmap bitmap = Bitmap.createBitmap(40, 40, ARGB_8888);
+    pool.put(bitmap);
+    final Request request = new Request.Builder(URI_1).build();
+
+    BitmapFactory.Options sampled = createBitmapOptions(request, pool);
+    sampled.outWidth = 160;
+    sampled.outHeight = 160;
+    sampled.outMimeType = "image/jpeg";
+    sampled.inSampleSize = 4;
+    setInBitmap(sampled, pool);
+    assertThat(sampled.inBitmap).isNull();
+
+    BitmapFactory.Options webp = createBitmapOptions(request, pool);
+    webp.outWidth = 40;
+    webp.outHeight = 40;
+    webp.outMimeType = "image/webp";
+    setInBitmap(webp, pool);
+    assertThat(webp.inBitmap).isNull();
+
+    BitmapFactory.Options jpeg = createBitmapOptions(request, pool);
+    jpeg.outWidth = 40;
+    jpeg.outHeight = 40;
+    jpeg.outMimeType = "image/jpeg";
+    setInBitmap(jpeg, pool);
+    assertThat(jpeg.inBitmap).isSameAs(bitmap);
+  }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+  @Test public void delayDoublesUpToMax() {
+    RetryPolicy policy = new RetryPolicy(500, 3000, 0, 0, 0, 0, 0, new FixedRandom(1));
+    assertThat(policy.delayMillis(0)).isEqualTo(500);
+    assertThat(policy.delayMillis(1)).isEqualTo(1000);
+    assertThat(policy.delayMillis(2)).isEqualTo(2000);
+    assertThat(policy.delayMillis(3)).isEqualTo(3000);
+    assertThat(policy.delayMillis(100)).isEqualTo(3000);
+  }
+
+  @Test public void jitterKeepsAtLeastHalfOfDelay() {
+    RetryPolicy policy = new RetryPolicy(500, 3000, 0, 0, 0, 0, 0, new FixedRandom(0));
+    assertThat(policy.delayMillis(0)).isEqualTo(250);
+    assertThat(policy.delayMillis(1)).isEqualTo(500);
+
+    RetryPolicy random = new RetryPolicy(500, 3000, 0, 0, 0, 0, 0, new Random(42));
+    for (int i = 0; i < 100; i++) {
+      assertThat(random.delayMillis(2)).isGreaterThanOrEqualTo(1000).isLessThanOrEqualTo(2000);
+    }
+  }
+
+  @Test public void unlimitedWithoutBudget() {
+    RetryPolicy policy = new RetryPolicy(500, 3000, 0, 0, 0, 0, 0, new Random());
+    for (int i = 0; i < 1000; i++) {
+      assertThat(policy.tryAcquire(0)).isTrue();
+    }
+  }
+
+  @Test public void budgetLimitsRetriesAndRefillsOverPeriod() {
+    RetryPolicy policy = new RetryPolicy(500, 3000, 2, 1000, 0, 0, 0, new Random());
+    assertThat(policy.tryAcquire(0)).isTrue();
+    assertThat(policy.tryAcquire(0)).isTrue();
+    assertThat(policy.tryAcquire(0)).isFalse();
+
+    // One retry refills every half period.
+    assertThat(policy.tryAcquire(250)).isFalse();
+    assertThat(policy.tryAcquire(500)).isTrue();
+    assertThat(policy.tryAcquire(500)).isFalse();
+
+    // Never more than the budget, however long it was unused.
+    assertThat(policy.tryAcquire(60000)).isTrue();
+    assertThat(policy.tryAcquire(60000)).isTrue();
+    assertThat(policy.tryAcquire(60000)).isFalse();
+  }
+
+  private static final class FixedRandom extends Random {
+    private final double value;
+
+    FixedRandom(double value) {
+      this.value = value;
+    }
+
+    @Override public double nextDouble() {
+      return value;
+    }
+  }
+}
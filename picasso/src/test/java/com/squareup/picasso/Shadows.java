@@ -3,8 +3,11 @@ package com.squareup.picasso;
 import android.content.ContentResolver;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Rect;
 import android.net.Network;
 import android.provider.MediaStore;
+import java.io.IOException;
+import java.io.InputStream;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 
@@ -32,6 +35,37 @@ final class Shadows {
     }
   }
 
+  /**
+   * Reads all of a stream and decodes it as a 20x20 JPEG like a real decoder, or fails to decode
+   * it if it is empty. Rejects every bitmap to decode into, as if it turned out incompatible.
+   */
+  @Implements(BitmapFactory.class)
+  public static class ShadowStrictBitmapFactory {
+
+    @Implementation
+    public static Bitmap decodeStream(InputStream is, Rect outPadding,
+        BitmapFactory.Options opts) {
+      if (opts != null && opts.inJustDecodeBounds) {
+        opts.outWidth = 20;
+        opts.outHeight = 20;
+        opts.outMimeType = "image/jpeg";
+        return null;
+      }
+      int length = 0;
+      try {
+        while (is.read() != -1) {
+          length++;
+        }
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      if (opts != null && opts.inBitmap != null) {
+        throw new IllegalArgumentException("Problem decoding into existing bitmap");
+      }
+      return length > 0 ? makeBitmap(20, 20) : null;
+    }
+  }
+
   /**
    * Here because https://github.com/robolectric/robolectric/issues/2223
    */
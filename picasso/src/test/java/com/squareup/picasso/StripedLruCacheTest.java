@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static android.graphics.Bitmap.Config.ALPHA_8;
+import static junit.framework.Assert.fail;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class StripedLruCacheTest {
+  // The use of ALPHA_8 simplifies the size math in tests since only one byte is used per-pixel.
+  private final Bitmap A = Bitmap.createBitmap(1, 1, ALPHA_8);
+  private final Bitmap B = Bitmap.createBitmap(1, 1, ALPHA_8);
+  private final Bitmap C = Bitmap.createBitmap(1, 1, ALPHA_8);
+
+  @Test public void constructorDoesNotAllowZeroStripes() {
+    try {
+      new StripedLruCache(4, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void constructorDoesNotAllowSegmentsWithoutSize() {
+    try {
+      new StripedLruCache(3, 4);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void maxSizeIsSplitAcrossSegments() {
+    StripedLruCache cache = new StripedLruCache(16, 4);
+    assertThat(cache.stripeCount()).isEqualTo(4);
+    assertThat(cache.maxSize()).isEqualTo(16);
+    for (LruCache segment : cache.segments) {
+      assertThat(segment.maxSize()).isEqualTo(4);
+    }
+  }
+
+  @Test public void variantsOfSameUriShareSegment() {
+    StripedLruCache cache = new StripedLruCache(16, 4);
+    LruCache segment = cache.segmentFor("Hello");
+    assertThat(cache.segmentFor("Hello\nresize:10x10\n")).isSameAs(segment);
+    assertThat(cache.segmentFor("Hello\nrotation:90\n")).isSameAs(segment);
+  }
+
+  @Test public void getAndSetAggregateStatistics() {
+    StripedLruCache cache = new StripedLruCache(16, 4);
+    cache.set("a", A);
+    cache.set("b", B);
+    assertThat(cache.get("a")).isSameAs(A);
+    assertThat(cache.get("b")).isSameAs(B);
+    assertThat(cache.get("c")).isNull();
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.putCount()).isEqualTo(2);
+    assertThat(cache.hitCount()).isEqualTo(2);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.evictionCount()).isZero();
+  }
+
+  @Test public void trimToSizeSplitsAcrossSegments() {
+    StripedLruCache cache = new StripedLruCache(4, 2);
+    cache.set("Hello\nAlice!", A);
+    cache.set("Hello\nBob!", B);
+    cache.trimToSize(2);
+
+    assertThat(cache.segmentFor("Hello").map).hasSize(1).containsKey("Hello\nBob!");
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test public void segmentsEvictIndependently() {
+    StripedLruCache cache = new StripedLruCache(2, 2);
+    LruCache segment = cache.segmentFor("Hello");
+    cache.set("Hello\nAlice!", A);
+    cache.set("Hello\nBob!", B);
+
+    assertThat(segment.map).hasSize(1).containsKey("Hello\nBob!");
+    assertThat(cache.evictionCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test public void clearKeyUri() {
+    StripedLruCache cache = new StripedLruCache(16, 4);
+    cache.set("Hello\nAlice!", A);
+    cache.set("Hello\nBob!", B);
+    cache.set("Hellos\nWorld!", C);
+
+    cache.clearKeyUri("Hello");
+    assertThat(cache.get("Hello\nAlice!")).isNull();
+    assertThat(cache.get("Hello\nBob!")).isNull();
+    assertThat(cache.get("Hellos\nWorld!")).isSameAs(C);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test public void clear() {
+    StripedLruCache cache = new StripedLruCache(16, 4);
+    cache.set("a", A);
+    cache.set("b", B);
+    cache.set("c", C);
+    cache.clear();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test public void throwsWithNullKey() {
+    StripedLruCache cache = new StripedLruCache(4);
+    try {
+      cache.get(null);
+      fail("Expected NullPointerException");
+    } catch (NullPointerException expected) {
+    }
+  }
+}
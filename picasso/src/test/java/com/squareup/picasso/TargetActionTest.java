@@ -30,6 +30,7 @@ import static com.squareup.picasso.TestUtils.RESOURCE_ID_1;
 import static com.squareup.picasso.TestUtils.URI_KEY_1;
 import static com.squareup.picasso.TestUtils.makeBitmap;
 import static com.squareup.picasso.TestUtils.mockTarget;
+import static com.squareup.picasso.TestUtils.picassoBuilder;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -73,8 +74,10 @@ public class TargetActionTest {
     Target target = mockTarget();
     Context context = mock(Context.class);
     Picasso picasso =
-        new Picasso(context, mock(Dispatcher.class), Cache.NONE, null, IDENTITY, null,
-            mock(Stats.class), ARGB_8888, false, false);
+        picassoBuilder(context, mock(Dispatcher.class), Cache.NONE, mock(Stats.class))
+            .requestTransformer(IDENTITY)
+            .defaultBitmapConfig(ARGB_8888)
+            .build();
     Resources res = mock(Resources.class);
     TargetAction request =
         new TargetAction(picasso, target, null, 0, 0, null, URI_KEY_1, null, RESOURCE_ID_1);
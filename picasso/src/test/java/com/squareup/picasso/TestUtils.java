@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.List;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -261,6 +262,95 @@ class TestUtils {
     return picasso;
   }
 
+  /**
+   * Returns a builder for a real {@link Picasso} which uses the given collaborators and leaves every
+   * optional one unset.
+   */
+  static PicassoBuilder picassoBuilder(Context context, Dispatcher dispatcher, Cache cache,
+      Stats stats) {
+    return new PicassoBuilder(context, dispatcher, cache, stats);
+  }
+
+  static final class PicassoBuilder {
+    private final Context context;
+    private final Dispatcher dispatcher;
+    private final Cache cache;
+    private final Stats stats;
+    private BitmapPool bitmapPool;
+    private EncodedMemoryCache encodedCache;
+    private ThumbnailDiskCache thumbnailCache;
+    private WarmStart warmStart;
+    private TransformationLimiter transformationLimiter;
+    private Picasso.Listener listener;
+    private Picasso.RequestTransformer requestTransformer;
+    private List<RequestHandler> extraRequestHandlers;
+    private Bitmap.Config defaultBitmapConfig;
+    private boolean automaticBitmapConfig;
+
+    PicassoBuilder(Context context, Dispatcher dispatcher, Cache cache, Stats stats) {
+      this.context = context;
+      this.dispatcher = dispatcher;
+      this.cache = cache;
+      this.stats = stats;
+    }
+
+    PicassoBuilder bitmapPool(BitmapPool bitmapPool) {
+      this.bitmapPool = bitmapPool;
+      return this;
+    }
+
+    PicassoBuilder encodedCache(EncodedMemoryCache encodedCache) {
+      this.encodedCache = encodedCache;
+      return this;
+    }
+
+    PicassoBuilder thumbnailCache(ThumbnailDiskCache thumbnailCache) {
+      this.thumbnailCache = thumbnailCache;
+      return this;
+    }
+
+    PicassoBuilder warmStart(WarmStart warmStart) {
+      this.warmStart = warmStart;
+      return this;
+    }
+
+    PicassoBuilder transformationLimiter(TransformationLimiter transformationLimiter) {
+      this.transformationLimiter = transformationLimiter;
+      return this;
+    }
+
+    PicassoBuilder listener(Picasso.Listener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    PicassoBuilder requestTransformer(Picasso.RequestTransformer requestTransformer) {
+      this.requestTransformer = requestTransformer;
+      return this;
+    }
+
+    PicassoBuilder extraRequestHandlers(List<RequestHandler> extraRequestHandlers) {
+      this.extraRequestHandlers = extraRequestHandlers;
+      return this;
+    }
+
+    PicassoBuilder defaultBitmapConfig(Bitmap.Config defaultBitmapConfig) {
+      this.defaultBitmapConfig = defaultBitmapConfig;
+      return this;
+    }
+
+    PicassoBuilder automaticBitmapConfig() {
+      this.automaticBitmapConfig = true;
+      return this;
+    }
+
+    Picasso build() {
+      return new Picasso(context, dispatcher, cache, bitmapPool, encodedCache, thumbnailCache,
+          warmStart, transformationLimiter, null, listener, requestTransformer, extraRequestHandlers, stats,
+          defaultBitmapConfig, automaticBitmapConfig, false, false);
+    }
+  }
+
   static Bitmap makeBitmap() {
     return makeBitmap(10, 10);
   }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static junit.framework.Assert.fail;
+import static org.fest.assertions.api.ANDROID.assertThat;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ThumbnailDiskCacheTest {
+  private static final String KEY_1 = "http://example.com/1.png\nresize:20x10";
+  private static final String KEY_1_ROTATED = "http://example.com/1.png\nrotation:90";
+  private static final String KEY_2 = "http://example.com/2.png\nresize:20x10";
+  // Header plus the pixels of a 20x10 ARGB_8888 bitmap.
+  private static final int ENTRY_SIZE = 20 + 20 * 10 * 4;
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test public void constructorDoesNotAllowZeroSize() {
+    try {
+      new ThumbnailDiskCache(temporaryFolder.getRoot(), 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void setThenGetRestoresBitmap() {
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    Bitmap bitmap = Bitmap.createBitmap(20, 10, ARGB_8888);
+    bitmap.setPixel(3, 4, Color.RED);
+    cache.set(KEY_1, bitmap);
+
+    Bitmap cached = cache.get(KEY_1);
+    assertThat(cached).hasWidth(20).hasHeight(10);
+    assertThat(cached.getConfig()).isEqualTo(ARGB_8888);
+    assertThat(cached.getPixel(3, 4)).isEqualTo(Color.RED);
+    assertThat(cache.get(KEY_2)).isNull();
+    assertThat(cache.size()).isEqualTo(ENTRY_SIZE);
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.putCount()).isEqualTo(1);
+  }
+
+  @Test public void setEvictsLeastRecentlyUsed() {
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 2 * ENTRY_SIZE);
+    cache.set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.set(KEY_2, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.get(KEY_1);
+    cache.set(KEY_1_ROTATED, Bitmap.createBitmap(20, 10, ARGB_8888));
+
+    assertThat(cache.get(KEY_1)).isNotNull();
+    assertThat(cache.get(KEY_2)).isNull();
+    assertThat(cache.get(KEY_1_ROTATED)).isNotNull();
+    assertThat(cache.size()).isEqualTo(2 * ENTRY_SIZE);
+    assertThat(temporaryFolder.getRoot().list()).hasSize(2);
+  }
+
+  @Test public void setIgnoresBitmapLargerThanMaxSize() {
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), ENTRY_SIZE - 1);
+    cache.set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+
+    assertThat(cache.get(KEY_1)).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test public void removeDeletesEveryVariantOfSource() {
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    cache.set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.set(KEY_1_ROTATED, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.set(KEY_2, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.remove("http://example.com/1.png");
+
+    assertThat(cache.get(KEY_1)).isNull();
+    assertThat(cache.get(KEY_1_ROTATED)).isNull();
+    assertThat(cache.get(KEY_2)).isNotNull();
+    assertThat(cache.size()).isEqualTo(ENTRY_SIZE);
+    assertThat(temporaryFolder.getRoot().list()).hasSize(1);
+  }
+
+  @Test public void hideMissesWithoutDeletingUntilRemove() {
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    cache.set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.set(KEY_2, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.hide("http://example.com/1.png");
+
+    assertThat(cache.get(KEY_1)).isNull();
+    assertThat(cache.get(KEY_2)).isNotNull();
+    cache.set(KEY_1_ROTATED, Bitmap.createBitmap(20, 10, ARGB_8888));
+    assertThat(temporaryFolder.getRoot().list()).hasSize(2);
+
+    cache.remove("http://example.com/1.png");
+    assertThat(temporaryFolder.getRoot().list()).hasSize(1);
+    cache.set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+    assertThat(cache.get(KEY_1)).isNotNull();
+  }
+
+  @Test public void indexesFilesFromPreviousInstance() {
+    new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000)
+        .set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    assertThat(cache.get(KEY_1)).hasWidth(20).hasHeight(10);
+    assertThat(cache.size()).isEqualTo(ENTRY_SIZE);
+  }
+
+  @Test public void corruptFileIsMissAndDeleted() throws Exception {
+    File file = new File(temporaryFolder.getRoot(), ThumbnailDiskCache.fileName(KEY_1));
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[] { 1, 2, 3 });
+    out.close();
+
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    assertThat(cache.get(KEY_1)).isNull();
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test public void clearDeletesAllFiles() {
+    ThumbnailDiskCache cache = new ThumbnailDiskCache(temporaryFolder.getRoot(), 10000);
+    cache.set(KEY_1, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.set(KEY_2, Bitmap.createBitmap(20, 10, ARGB_8888));
+    cache.clear();
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(temporaryFolder.getRoot().list()).isEmpty();
+  }
+}
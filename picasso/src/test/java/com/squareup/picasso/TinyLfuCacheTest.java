@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static android.graphics.Bitmap.Config.ALPHA_8;
+import static com.squareup.picasso.TestUtils.URI_1;
+import static com.squareup.picasso.TestUtils.URI_2;
+import static com.squareup.picasso.Utils.createKey;
+import static junit.framework.Assert.fail;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class TinyLfuCacheTest {
+  // The use of ALPHA_8 simplifies the size math in tests since only one byte is used per-pixel.
+  private final Bitmap A = Bitmap.createBitmap(1, 1, ALPHA_8);
+  private final Bitmap B = Bitmap.createBitmap(1, 1, ALPHA_8);
+
+  @Test public void constructorDoesNotAllowZeroSize() {
+    try {
+      new TinyLfuCache(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void getAndSetCountStatistics() {
+    TinyLfuCache cache = new TinyLfuCache(10);
+    cache.set("a", A);
+    cache.set("b", B);
+    assertThat(cache.get("a")).isSameAs(A);
+    assertThat(cache.get("b")).isSameAs(B);
+    assertThat(cache.get("c")).isNull();
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.putCount()).isEqualTo(2);
+    assertThat(cache.hitCount()).isEqualTo(2);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.evictionCount()).isZero();
+  }
+
+  @Test public void replacingValueUpdatesSize() {
+    TinyLfuCache cache = new TinyLfuCache(10);
+    cache.set("a", A);
+    Bitmap larger = Bitmap.createBitmap(2, 2, ALPHA_8);
+    cache.set("a", larger);
+
+    assertThat(cache.get("a")).isSameAs(larger);
+    assertThat(cache.size()).isEqualTo(4);
+  }
+
+  @Test public void valueLargerThanCacheIsNotStored() {
+    TinyLfuCache cache = new TinyLfuCache(3);
+    cache.set("a", Bitmap.createBitmap(2, 2, ALPHA_8));
+
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test public void neverExceedsMaxSize() {
+    TinyLfuCache cache = new TinyLfuCache(10);
+    for (int i = 0; i < 50; i++) {
+      cache.set("key" + i, Bitmap.createBitmap(1, 1 + i % 3, ALPHA_8));
+      assertThat(cache.size()).isLessThanOrEqualTo(10);
+    }
+    assertThat(cache.evictionCount()).isGreaterThan(0);
+  }
+
+  @Test public void scanDoesNotEvictFrequentlyUsedValues() {
+    TinyLfuCache tinyLfu = new TinyLfuCache(10);
+    LruCache lru = new LruCache(10);
+    for (Cache cache : new Cache[] { tinyLfu, lru }) {
+      for (int i = 0; i < 9; i++) {
+        String key = "hot" + i;
+        cache.get(key);
+        cache.set(key, Bitmap.createBitmap(1, 1, ALPHA_8));
+        cache.get(key);
+        cache.get(key);
+      }
+      for (int i = 0; i < 100; i++) {
+        String key = "scan" + i;
+        if (cache.get(key) == null) {
+          cache.set(key, Bitmap.createBitmap(1, 1, ALPHA_8));
+        }
+      }
+    }
+
+    for (int i = 0; i < 9; i++) {
+      assertThat(tinyLfu.get("hot" + i)).isNotNull();
+      assertThat(lru.get("hot" + i)).isNull();
+    }
+    assertThat(tinyLfu.rejectionCount()).isGreaterThan(0);
+  }
+
+  @Test public void frequentlyRequestedValueIsAdmitted() {
+    TinyLfuCache cache = new TinyLfuCache(10);
+    for (int i = 0; i < 10; i++) {
+      cache.set("old" + i, Bitmap.createBitmap(1, 1, ALPHA_8));
+    }
+    for (int i = 0; i < 5; i++) {
+      cache.get("popular");
+    }
+    cache.set("popular", A);
+    // Push it out of the window.
+    cache.set("new", B);
+
+    assertThat(cache.get("popular")).isSameAs(A);
+    assertThat(cache.size()).isEqualTo(10);
+  }
+
+  @Test public void clearKeyUriRemovesAllVariants() {
+    TinyLfuCache cache = new TinyLfuCache(10);
+    cache.set("Hello\nAlice!", A);
+    cache.set("Hello\nBob!", B);
+    cache.set("Hello World\nBob!", Bitmap.createBitmap(1, 1, ALPHA_8));
+    cache.clearKeyUri("Hello");
+
+    assertThat(cache.get("Hello\nAlice!")).isNull();
+    assertThat(cache.get("Hello\nBob!")).isNull();
+    assertThat(cache.get("Hello World\nBob!")).isNotNull();
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test public void uriKeysFollowEvictions() {
+    TinyLfuCache cache = new TinyLfuCache(2);
+    cache.set("Hello\nAlice!", A);
+    cache.set("Hello\nAlice!", B);
+    cache.set("World\nBob!", Bitmap.createBitmap(1, 1, ALPHA_8));
+    assertThat(cache.uriKeys.get("Hello")).containsOnly("Hello\nAlice!");
+
+    cache.set("World\nEve!", Bitmap.createBitmap(1, 1, ALPHA_8));
+    assertThat(cache.uriKeys.get("World")).containsOnly("World\nEve!");
+    assertThat(cache.uriKeys.get("Hello")).containsOnly("Hello\nAlice!");
+
+    cache.clearKeyUri("World");
+    cache.clearKeyUri("Hello");
+    assertThat(cache.uriKeys).isEmpty();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test public void getLargerVariantReturnsSmallestDerivableVariant() {
+    TinyLfuCache cache = new TinyLfuCache(10000);
+    Bitmap whole = Bitmap.createBitmap(80, 60, ALPHA_8);
+    Bitmap inside = Bitmap.createBitmap(20, 15, ALPHA_8);
+    cache.set(createKey(new Request.Builder(URI_1).build()), whole);
+    cache.set(createKey(new Request.Builder(URI_1).resize(20, 20).centerInside().build()), inside);
+
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(10, 10)))
+        .isSameAs(inside);
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(30, 10).centerCrop()))
+        .isSameAs(whole);
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_1).resize(100, 10))).isNull();
+    assertThat(getLargerVariant(cache, new Request.Builder(URI_2).resize(10, 10))).isNull();
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThat(cache.missCount()).isEqualTo(0);
+  }
+
+  @Test public void trimToSizeEvictsProbationBeforeProtected() {
+    TinyLfuCache cache = new TinyLfuCache(20);
+    for (int i = 0; i < 6; i++) {
+      cache.set("key" + i, Bitmap.createBitmap(1, 1, ALPHA_8));
+    }
+    // The window holds two values, so the first four are on probation until hit again.
+    cache.get("key0");
+    cache.trimToSize(3);
+
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get("key0")).isNotNull();
+    assertThat(cache.get("key4")).isNotNull();
+    assertThat(cache.get("key5")).isNotNull();
+    assertThat(cache.maxSize()).isEqualTo(20);
+  }
+
+  @Test public void clearRemovesEverything() {
+    TinyLfuCache cache = new TinyLfuCache(10);
+    cache.set("a", A);
+    cache.set("b", B);
+    cache.get("a");
+    cache.clear();
+
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.size()).isZero();
+  }
+
+  private static Bitmap getLargerVariant(TinyLfuCache cache, Request.Builder builder) {
+    Request request = builder.build();
+    return cache.getLargerVariant(createKey(request), request);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class TransformationLimiterTest {
+  @Test public void admitsUpToMaxConcurrent() throws Exception {
+    TransformationLimiter limiter = new TransformationLimiter(cache(100, 0), 2);
+    limiter.acquire(1);
+    limiter.acquire(1);
+    assertThat(limiter.running()).isEqualTo(2);
+
+    CountDownLatch acquired = acquireAsync(limiter, 1);
+    assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+    limiter.release(1);
+    assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(limiter.running()).isEqualTo(2);
+  }
+
+  @Test public void boundsMemoryByCacheHeadroom() throws Exception {
+    TransformationLimiter limiter = new TransformationLimiter(cache(100, 40), 4);
+    limiter.acquire(50);
+
+    CountDownLatch acquired = acquireAsync(limiter, 20);
+    assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+    limiter.release(50);
+    assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test public void fullCacheStillLeavesQuarterOfMaxSize() throws Exception {
+    TransformationLimiter limiter = new TransformationLimiter(cache(100, 100), 4);
+    limiter.acquire(10);
+    limiter.acquire(15);
+    assertThat(limiter.running()).isEqualTo(2);
+  }
+
+  @Test public void alwaysAdmitsSingleTransformation() throws Exception {
+    TransformationLimiter limiter = new TransformationLimiter(cache(100, 100), 4);
+    limiter.acquire(1000);
+    assertThat(limiter.running()).isEqualTo(1);
+  }
+
+  @Test public void disabledCacheOnlyBoundsConcurrency() throws Exception {
+    TransformationLimiter limiter = new TransformationLimiter(Cache.NONE, 2);
+    limiter.acquire(1000);
+    limiter.acquire(1000);
+    assertThat(limiter.running()).isEqualTo(2);
+  }
+
+  private static Cache cache(int maxSize, int size) {
+    Cache cache = mock(Cache.class);
+    when(cache.maxSize()).thenReturn(maxSize);
+    when(cache.size()).thenReturn(size);
+    return cache;
+  }
+
+  private static CountDownLatch acquireAsync(final TransformationLimiter limiter,
+      final long bytes) {
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          limiter.acquire(bytes);
+          acquired.countDown();
+        } catch (InterruptedException ignored) {
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return acquired;
+  }
+}
@@ -16,8 +16,10 @@
 package com.squareup.picasso;
 
 import android.content.res.Resources;
+import android.graphics.BitmapFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricGradleTestRunner;
@@ -28,6 +30,8 @@ import static com.squareup.picasso.TestUtils.RESOURCE_TYPE_URI;
 import static com.squareup.picasso.TestUtils.URI_1;
 import static com.squareup.picasso.TestUtils.mockPackageResourceContext;
 import static com.squareup.picasso.Utils.createKey;
+import static com.squareup.picasso.Utils.decodeWebPBounds;
+import static com.squareup.picasso.Utils.isJpegFile;
 import static com.squareup.picasso.Utils.isWebPFile;
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -80,6 +84,72 @@ public class UtilsTest {
     assertThat(isWebPFile(new ByteArrayInputStream("RIFFxxWEBP".getBytes("US-ASCII")))).isFalse();
   }
 
+  @Test public void detectedJpegFile() throws Exception {
+    assertThat(isJpegFile(new ByteArrayInputStream(new byte[] { -1, -40, -1, -32 }))).isTrue();
+    assertThat(isJpegFile(new ByteArrayInputStream(new byte[] { -1, -40, -1 }))).isTrue();
+    assertThat(isJpegFile(new ByteArrayInputStream(new byte[] { -1, -40 }))).isFalse();
+    assertThat(isJpegFile(new ByteArrayInputStream(new byte[] { -119, 80, 78, 71 }))).isFalse();
+  }
+
+  @Test public void decodesLossyWebPBounds() throws Exception {
+    byte[] header = webPHeader("VP8 ");
+    header[26] = (byte) 0x80; // 640
+    header[27] = (byte) 0x02;
+    header[28] = (byte) 0xe0; // 480
+    header[29] = (byte) 0x01;
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    assertThat(decodeWebPBounds(new ByteArrayInputStream(header), options)).isTrue();
+    assertThat(options.outWidth).isEqualTo(640);
+    assertThat(options.outHeight).isEqualTo(480);
+  }
+
+  @Test public void decodesLosslessWebPBounds() throws Exception {
+    byte[] header = webPHeader("VP8L");
+    header[20] = 0x2f;
+    header[21] = 0x63; // (100 - 1) | (50 - 1) << 14
+    header[22] = 0x40;
+    header[23] = 0x0c;
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    assertThat(decodeWebPBounds(new ByteArrayInputStream(header), options)).isTrue();
+    assertThat(options.outWidth).isEqualTo(100);
+    assertThat(options.outHeight).isEqualTo(50);
+  }
+
+  @Test public void decodesExtendedWebPBounds() throws Exception {
+    byte[] header = webPHeader("VP8X");
+    header[24] = (byte) 0xcf; // 2000 - 1
+    header[25] = 0x07;
+    header[27] = (byte) 0xe7; // 1000 - 1
+    header[28] = 0x03;
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    assertThat(decodeWebPBounds(new ByteArrayInputStream(header), options)).isTrue();
+    assertThat(options.outWidth).isEqualTo(2000);
+    assertThat(options.outHeight).isEqualTo(1000);
+  }
+
+  @Test public void unknownOrTruncatedWebPBoundsAreNotDecoded() throws Exception {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    assertThat(decodeWebPBounds(new ByteArrayInputStream(webPHeader("ABCD")), options)).isFalse();
+    byte[] truncated = Arrays.copyOf(webPHeader("VP8 "), 20);
+    assertThat(decodeWebPBounds(new ByteArrayInputStream(truncated), options)).isFalse();
+    assertThat(options.outWidth).isEqualTo(0);
+  }
+
+  private static byte[] webPHeader(String chunk) throws Exception {
+    byte[] header = new byte[30];
+    System.arraycopy(("RIFFxxxxWEBP" + chunk).getBytes("US-ASCII"), 0, header, 0, 16);
+    return header;
+  }
+
+  @Test public void matchingRequestsShareKeyInstance() throws Exception {
+    Request request = new Request.Builder(URI_1).resize(20, 10).build();
+    Request same = new Request.Builder(URI_1).resize(20, 10).build();
+    Request other = new Request.Builder(URI_1).resize(10, 20).build();
+    String key = createKey(request);
+    assertThat(createKey(same)).isSameAs(key);
+    assertThat(createKey(other)).isNotEqualTo(key);
+  }
+
   @Test public void ensureBuilderIsCleared() throws Exception {
     Request request1 = new Request.Builder(RESOURCE_ID_URI).build();
     Request request2 = new Request.Builder(URI_1).build();
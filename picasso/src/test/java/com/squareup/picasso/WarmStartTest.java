@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import android.view.Gravity;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+
+import static android.graphics.Bitmap.Config.RGB_565;
+import static com.squareup.picasso.Picasso.Priority.LOW;
+import static com.squareup.picasso.TestUtils.URI_1;
+import static com.squareup.picasso.TestUtils.URI_2;
+import static com.squareup.picasso.Utils.createKey;
+import static junit.framework.Assert.fail;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class WarmStartTest {
+  private static final Uri URI_3 = Uri.parse("http://example.com/3.png");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test public void constructorDoesNotAllowZeroRequests() {
+    try {
+      new WarmStart(new File(temporaryFolder.getRoot(), "warm"), 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void loadWithoutFileReturnsNothing() {
+    WarmStart warmStart = new WarmStart(new File(temporaryFolder.getRoot(), "warm"), 10);
+    assertThat(warmStart.load()).isEmpty();
+  }
+
+  @Test public void loadCorruptFileReturnsNothing() throws Exception {
+    File file = temporaryFolder.newFile("warm");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[] { 0, 0, 0, 1, 0, 0, 0, 5, 0 });
+    out.close();
+
+    assertThat(new WarmStart(file, 10).load()).isEmpty();
+  }
+
+  @Test public void recordReturnsTrueOnlyForFirstChangeSinceSave() {
+    WarmStart warmStart = new WarmStart(new File(temporaryFolder.getRoot(), "warm"), 10);
+    Request request = new Request.Builder(URI_1).build();
+
+    assertThat(warmStart.record(createKey(request), request)).isTrue();
+    assertThat(warmStart.record(createKey(request), request)).isFalse();
+    warmStart.save();
+    assertThat(warmStart.record(createKey(request), request)).isTrue();
+  }
+
+  @Test public void recordIgnoresRequestsWhichCannotBeRebuilt() {
+    WarmStart warmStart = new WarmStart(new File(temporaryFolder.getRoot(), "warm"), 10);
+    Request transformed = new Request.Builder(URI_1).transform(new TestTransformation("test"))
+        .build();
+    Request pivoted = new Request.Builder(URI_1).rotate(90, 10, 10).build();
+    Request resource = new Request.Builder(
+        Uri.parse("android.resource://com.example/drawable/icon")).build();
+
+    assertThat(warmStart.record(createKey(transformed), transformed)).isFalse();
+    assertThat(warmStart.record(createKey(pivoted), pivoted)).isFalse();
+    assertThat(warmStart.record(createKey(resource), resource)).isFalse();
+  }
+
+  @Test public void saveThenLoadRestoresRequests() {
+    File file = new File(temporaryFolder.getRoot(), "warm");
+    WarmStart warmStart = new WarmStart(file, 10);
+    Request request = new Request.Builder(URI_1)
+        .stableKey("stable")
+        .resize(20, 10)
+        .centerCrop(Gravity.TOP)
+        .onlyScaleDown()
+        .rotate(90)
+        .config(RGB_565)
+        .purgeable()
+        .build();
+    warmStart.record(createKey(request), request);
+    warmStart.save();
+
+    List<Request> loaded = new WarmStart(file, 10).load();
+    assertThat(loaded).hasSize(1);
+    Request restored = loaded.get(0);
+    assertThat(createKey(restored)).isEqualTo(createKey(request));
+    assertThat(restored.uri).isEqualTo(URI_1);
+    assertThat(restored.centerCropGravity).isEqualTo(Gravity.TOP);
+    assertThat(restored.config).isEqualTo(RGB_565);
+    assertThat(restored.purgeable).isTrue();
+    assertThat(restored.priority).isEqualTo(LOW);
+  }
+
+  @Test public void saveKeepsMostUsedRequests() {
+    File file = new File(temporaryFolder.getRoot(), "warm");
+    WarmStart warmStart = new WarmStart(file, 2);
+    Request once = new Request.Builder(URI_1).build();
+    Request thrice = new Request.Builder(URI_2).build();
+    Request twice = new Request.Builder(URI_3).build();
+    warmStart.record(createKey(once), once);
+    for (int i = 0; i < 3; i++) {
+      warmStart.record(createKey(thrice), thrice);
+    }
+    for (int i = 0; i < 2; i++) {
+      warmStart.record(createKey(twice), twice);
+    }
+    warmStart.save();
+
+    List<Request> loaded = new WarmStart(file, 2).load();
+    assertThat(loaded).hasSize(2);
+    assertThat(loaded.get(0).uri).isEqualTo(URI_2);
+    assertThat(loaded.get(1).uri).isEqualTo(URI_3);
+  }
+
+  @Test public void loadHalvesEarlierCounts() {
+    File file = new File(temporaryFolder.getRoot(), "warm");
+    WarmStart first = new WarmStart(file, 1);
+    Request old = new Request.Builder(URI_1).build();
+    for (int i = 0; i < 4; i++) {
+      first.record(createKey(old), old);
+    }
+    first.save();
+
+    WarmStart second = new WarmStart(file, 1);
+    second.load();
+    Request recent = new Request.Builder(URI_2).build();
+    for (int i = 0; i < 3; i++) {
+      second.record(createKey(recent), recent);
+    }
+    second.save();
+
+    List<Request> loaded = new WarmStart(file, 1).load();
+    assertThat(loaded).hasSize(1);
+    assertThat(loaded.get(0).uri).isEqualTo(URI_2);
+  }
+}